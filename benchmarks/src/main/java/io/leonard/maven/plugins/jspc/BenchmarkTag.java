@@ -0,0 +1,39 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.IOException;
+
+import jakarta.servlet.jsp.JspException;
+import jakarta.servlet.jsp.tagext.TagSupport;
+
+/**
+ * Tag handler and EL functions of the custom tld of the webapps written by
+ * {@link WebappGenerator}.
+ */
+public class BenchmarkTag extends TagSupport {
+
+  private static final long serialVersionUID = 1L;
+
+  private String value;
+
+  public void setValue(String value) {
+    this.value = value;
+  }
+
+  @Override
+  public int doStartTag() throws JspException {
+    try {
+      pageContext.getOut().write(value == null ? "" : value);
+    } catch (IOException e) {
+      throw new JspException(e);
+    }
+    return SKIP_BODY;
+  }
+
+  public static String repeat(String value, int count) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      result.append(value);
+    }
+    return result.toString();
+  }
+}
@@ -0,0 +1,136 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.jasper.JasperException;
+import org.apache.jasper.JspCompilationContext;
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * A webapp compiled as {@link JspcMojo} does: the top JspC scans the tlds once,
+ * then each worker has its own JspC sharing the servlet context, the tlds, the
+ * tag files and the class lookups of the top one.
+ */
+public class BenchmarkWebapp implements Closeable {
+
+  private static final String[] INCLUDES = { "**/*.jsp", "**/*.jspx", "**/*.jspf" };
+
+  private final File webappDirectory;
+
+  private final File outputDirectory;
+
+  private final String compilerClass;
+
+  private final ClasspathIndex classpathIndex;
+
+  private final ClassFileCache resourcesCache;
+
+  private final BenchmarkJspC topJspC;
+
+  private final List<String> jsps;
+
+  /**
+   * @param webappDirectory the sources of the webapp
+   * @param outputDirectory where the jsps are generated and compiled
+   * @param compilerClass   the Jasper compiler used by the workers
+   */
+  public BenchmarkWebapp(File webappDirectory, File outputDirectory, String compilerClass)
+      throws IOException, JasperException {
+    if (!webappDirectory.isDirectory()) {
+      throw new FileNotFoundException(webappDirectory.getAbsolutePath());
+    }
+    this.webappDirectory = webappDirectory;
+    this.outputDirectory = outputDirectory;
+    this.compilerClass = compilerClass;
+    topJspC = newJspC();
+    topJspC.initClassLoader();
+    classpathIndex = ClasspathIndex.build(topJspC.getLoader());
+    resourcesCache = new ClassFileCache(64 * 1024L * 1024L, Arrays.asList("org.apache.jsp"), classpathIndex);
+    topJspC.setClasspathIndex(classpathIndex);
+    topJspC.setResourcesCache(resourcesCache);
+    topJspC.initServletContext();
+    jsps = scanJsps();
+  }
+
+  /**
+   * @return the JspC of a new worker, which declares its jsps in an in memory
+   *         web.xml fragment
+   */
+  public BenchmarkJspC newWorkerJspC() throws IOException {
+    BenchmarkJspC jspc = newJspC();
+    jspc.setClasspathIndex(classpathIndex);
+    jspc.setResourcesCache(resourcesCache);
+    jspc.setWebXmlMappings(new WebXmlMappings(), 0);
+    jspc.initContext(topJspC);
+    return jspc;
+  }
+
+  /**
+   * @return the uris of the jsps of the webapp, in the order of the mojo
+   */
+  public List<String> getJsps() {
+    return jsps;
+  }
+
+  /**
+   * @return a new queue of all the jsps of the webapp, to share between workers
+   */
+  public Queue<String> newJspQueue() {
+    return new ConcurrentLinkedQueue<>(jsps);
+  }
+
+  public ClassLoader getLoader() {
+    return topJspC.getLoader();
+  }
+
+  public ClassFileCache getResourcesCache() {
+    return resourcesCache;
+  }
+
+  @Override
+  public void close() throws IOException {
+    classpathIndex.close();
+  }
+
+  private BenchmarkJspC newJspC() {
+    BenchmarkJspC jspc = new BenchmarkJspC();
+    jspc.setUriroot(webappDirectory.getAbsolutePath());
+    jspc.setOutputDir(outputDirectory.getAbsolutePath());
+    jspc.setCompile(true);
+    jspc.setSmapSuppressed(false);
+    jspc.setSmapDumped(true);
+    jspc.setcompilerClass(compilerClass);
+    jspc.setSourcesInMemory(true);
+    return jspc;
+  }
+
+  private List<String> scanJsps() {
+    DirectoryScanner scanner = new DirectoryScanner();
+    scanner.setBasedir(webappDirectory);
+    scanner.setIncludes(INCLUDES);
+    scanner.addDefaultExcludes();
+    scanner.setCaseSensitive(false);
+    scanner.scan();
+    List<String> result = new ArrayList<>();
+    for (String jspFile : scanner.getIncludedFiles()) {
+      result.add("/" + jspFile.replace(File.separatorChar, '/'));
+    }
+    return result;
+  }
+
+  /**
+   * Gives the benchmarks the compilation context of a jsp, set up as
+   * {@link JspCContextAccessor#processFile(String)} does.
+   */
+  public static class BenchmarkJspC extends JspCContextAccessor {
+
+    public JspCompilationContext newCompilationContext(String jspUri) {
+      JspCompilationContext clctxt = new JspCompilationContext(jspUri, this, context, null, rctxt);
+      clctxt.setClassLoader(loader);
+      clctxt.setClassPath(classPath);
+      return clctxt;
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.*;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.monitor.logging.DefaultLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.logging.Logger;
+import org.codehaus.plexus.logging.console.ConsoleLogger;
+import org.w3c.dom.*;
+
+/**
+ * Creates the compile mojo of a project outside of Maven, with the default
+ * values of its parameters read from the descriptor of the plugin, so that the
+ * benchmarks run the mojo as a build with an empty configuration does.
+ */
+public class JspcMojoFactory {
+
+  private static final String PLUGIN_DESCRIPTOR = "/META-INF/maven/plugin.xml";
+
+  private final Map<String, String> defaultValues = new LinkedHashMap<>();
+
+  private final Map<String, String> implementations = new HashMap<>();
+
+  public JspcMojoFactory() throws Exception {
+    Document descriptor;
+    try (InputStream in = JspcMojo.class.getResourceAsStream(PLUGIN_DESCRIPTOR)) {
+      if (in == null) {
+        throw new IOException(PLUGIN_DESCRIPTOR + " not found");
+      }
+      descriptor = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+    }
+    NodeList mojos = descriptor.getElementsByTagName("mojo");
+    for (int i = 0; i < mojos.getLength(); i++) {
+      Element mojo = (Element) mojos.item(i);
+      if (!"compile".equals(mojo.getElementsByTagName("goal").item(0).getTextContent())) {
+        continue;
+      }
+      NodeList parameters = ((Element) mojo.getElementsByTagName("configuration").item(0)).getChildNodes();
+      for (int j = 0; j < parameters.getLength(); j++) {
+        if (parameters.item(j) instanceof Element) {
+          Element parameter = (Element) parameters.item(j);
+          implementations.put(parameter.getTagName(), parameter.getAttribute("implementation"));
+          if (parameter.hasAttribute("default-value")) {
+            defaultValues.put(parameter.getTagName(), parameter.getAttribute("default-value"));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @param basedir    the directory of the project, with the webapp in
+   *                   src/main/webapp and the build in target
+   * @param parameters the configuration of the plugin, the other parameters keep
+   *                   their default value
+   * @return the mojo, which only logs the warnings and errors
+   */
+  public JspcMojo newMojo(File basedir, Map<String, Object> parameters) throws Exception {
+    MavenProject project = new MavenProject();
+    project.setFile(new File(basedir, "pom.xml"));
+    Build build = new Build();
+    build.setDirectory(new File(basedir, "target").getPath());
+    build.setOutputDirectory(new File(basedir, "target/classes").getPath());
+    project.setBuild(build);
+
+    JspcMojo mojo = new JspcMojo();
+    mojo.setLog(new DefaultLog(new ConsoleLogger(Logger.LEVEL_WARN, "jspc")));
+    setParameter(mojo, "project", project);
+    for (Map.Entry<String, String> defaultValue : defaultValues.entrySet()) {
+      if (!defaultValue.getKey().equals("project") && !parameters.containsKey(defaultValue.getKey())) {
+        setParameter(mojo, defaultValue.getKey(), convert(defaultValue.getKey(),
+            evaluate(defaultValue.getValue(), project)));
+      }
+    }
+    for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+      setParameter(mojo, parameter.getKey(), parameter.getValue());
+    }
+    return mojo;
+  }
+
+  private static String evaluate(String value, MavenProject project) {
+    return value.replace("${basedir}", project.getBasedir().getPath())
+        .replace("${project.build.directory}", project.getBuild().getDirectory())
+        .replace("${project.build.outputDirectory}", project.getBuild().getOutputDirectory());
+  }
+
+  private Object convert(String name, String value) {
+    switch (implementations.get(name)) {
+    case "int":
+      return Integer.valueOf(value);
+    case "boolean":
+      return Boolean.valueOf(value);
+    case "java.io.File":
+      return new File(value);
+    case "java.lang.String[]":
+      return Arrays.stream(value.split(",")).map(String::trim).map(pattern -> pattern.replace("\\/", "/"))
+          .toArray(String[]::new);
+    default:
+      return value;
+    }
+  }
+
+  /**
+   * Set a parameter of the mojo, as Maven does from the configuration of the
+   * plugin.
+   */
+  static void setParameter(JspcMojo mojo, String name, Object value) throws ReflectiveOperationException {
+    Field field = JspcMojo.class.getDeclaredField(name);
+    field.setAccessible(true);
+    field.set(mojo, value);
+  }
+}
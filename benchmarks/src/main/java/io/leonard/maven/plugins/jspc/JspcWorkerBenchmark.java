@@ -0,0 +1,61 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * One worker compiling all the jsps of the webapp, as {@link JspcMojo} does
+ * with threads=1. The tag files are compiled by the first invocation only, as
+ * they are once per build.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class JspcWorkerBenchmark {
+
+  @Param({ "org.apache.jasper.compiler.JDTCompiler", "org.apache.jasper.compiler.JspcMojoJDTCompiler",
+      "org.apache.jasper.compiler.ParallelJDTCompiler" })
+  public String compilerClass;
+
+  @Param("../src/test/resources/unit/project_many_jsp/src/main/webapp")
+  public String webapp;
+
+  private Path outputDirectory;
+
+  private BenchmarkWebapp benchmarkWebapp;
+
+  private JspcWorker worker;
+
+  @Setup
+  public void initWebapp() throws Exception {
+    outputDirectory = Files.createTempDirectory("jspc-benchmark");
+    benchmarkWebapp = new BenchmarkWebapp(new File(webapp), outputDirectory.toFile(), compilerClass);
+  }
+
+  @Setup(Level.Invocation)
+  public void initWorker() throws Exception {
+    JspCContextAccessor jspc = benchmarkWebapp.newWorkerJspC();
+    jspc.setForceCompile(true);
+    worker = new JspcWorker(jspc, benchmarkWebapp.newJspQueue());
+  }
+
+  @Benchmark
+  public String call() throws Exception {
+    return worker.call();
+  }
+
+  @TearDown
+  public void deleteOutputDirectory() throws IOException {
+    benchmarkWebapp.close();
+    FileUtils.deleteDirectory(outputDirectory.toFile());
+  }
+}
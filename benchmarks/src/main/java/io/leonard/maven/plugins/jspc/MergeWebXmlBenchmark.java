@@ -0,0 +1,81 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Merge of the declarations of the compiled jsps in the web.xml of the webapp,
+ * without validation of the merged web.xml.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MergeWebXmlBenchmark {
+
+  private static final int WORKERS = 4;
+
+  @Param({ "100", "10000" })
+  public int jsps;
+
+  @Param("../src/test/resources/unit/project_many_jsp/src/main/webapp")
+  public String webapp;
+
+  private Path outputDirectory;
+
+  private JspcMojo mojo;
+
+  @Setup
+  public void initMojo() throws Exception {
+    outputDirectory = Files.createTempDirectory("jspc-benchmark");
+    MavenProject project = new MavenProject();
+    project.setFile(outputDirectory.resolve("pom.xml").toFile());
+    mojo = new JspcMojo();
+    setParameter("project", project);
+    setParameter("mergeFragment", true);
+    setParameter("webAppSourceDirectory", webapp);
+    setParameter("webXml", new File(webapp, "WEB-INF/web.xml").getPath());
+    setParameter("webXmlFragment", outputDirectory.resolve("webfrag.xml").toString());
+    setParameter("webXmlMappings", newWebXmlMappings());
+  }
+
+  @Benchmark
+  public void mergeWebXml() throws Exception {
+    mojo.mergeWebXml();
+  }
+
+  @TearDown
+  public void deleteOutputDirectory() throws IOException {
+    FileUtils.deleteDirectory(outputDirectory.toFile());
+  }
+
+  /**
+   * @return the declarations of the jsps, shared by the workers, in the layout
+   *         of JspC
+   */
+  private WebXmlMappings newWebXmlMappings() {
+    WebXmlMappings webXmlMappings = new WebXmlMappings();
+    for (int index = 0; index < jsps; index++) {
+      String servletName = "org.apache.jsp.jsp._" + index + "_jsp";
+      webXmlMappings.add(index % WORKERS,
+          "\n    <servlet>\n        <servlet-name>" + servletName + "</servlet-name>\n        <servlet-class>"
+              + servletName + "</servlet-class>\n    </servlet>\n",
+          "\n    <servlet-mapping>\n        <servlet-name>" + servletName
+              + "</servlet-name>\n        <url-pattern>/jsp/" + index + ".jsp</url-pattern>\n    </servlet-mapping>\n");
+    }
+    return webXmlMappings;
+  }
+
+  private void setParameter(String name, Object value) throws ReflectiveOperationException {
+    JspcMojoFactory.setParameter(mojo, name, value);
+  }
+}
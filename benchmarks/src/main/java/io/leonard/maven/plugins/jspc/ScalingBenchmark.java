@@ -0,0 +1,173 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Runs the mojo on a webapp written by {@link WebappGenerator} with each
+ * compiler class and each number of threads, and prints the scaling curve of
+ * each compiler class: the time of a clean build, the speedup and the efficiency
+ * compared to the smallest number of threads, and the peak of the used heap.
+ * <p>
+ * The arguments are name=value pairs:
+ * <ul>
+ * <li>project: directory of the generated project, target/scaling-project by
+ * default. The webapp is generated when the directory does not exist.</li>
+ * <li>jsps, includeChains, includeDepth, tagFiles: the size of the generated
+ * webapp, 2000, 20, 8 and 10 by default</li>
+ * <li>threads: the numbers of threads, 1,2,4,8,16 by default. "auto" is measured
+ * after the numbers, its efficiency is compared to the available
+ * processors.</li>
+ * <li>compilers: the compiler classes, the three of the plugin by default</li>
+ * <li>warmups, runs: the builds of each configuration which are not measured,
+ * 1 by default, then the builds which are, 3 by default. The median time and
+ * the highest peak of the measured builds are reported.</li>
+ * <li>report: the csv file where the results are also written,
+ * target/scaling.csv by default</li>
+ * </ul>
+ * The builds run in this JVM, so the peak heap depends on its heap settings:
+ * give the same -Xms and -Xmx to runs that are compared.
+ */
+public class ScalingBenchmark {
+
+  private static final long HEAP_SAMPLING_MILLIS = 10;
+
+  private final Map<String, String> arguments = new HashMap<>();
+
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+  public ScalingBenchmark(String[] args) {
+    for (String arg : args) {
+      int equals = arg.indexOf('=');
+      if (equals < 0) {
+        throw new IllegalArgumentException("Arguments must be name=value pairs: " + arg);
+      }
+      arguments.put(arg.substring(0, equals), arg.substring(equals + 1));
+    }
+  }
+
+  public void run() throws Exception {
+    File project = new File(argument("project", "target/scaling-project"));
+    if (!project.exists()) {
+      new WebappGenerator(intArgument("jsps", 2000), intArgument("includeChains", 20),
+          intArgument("includeDepth", 8), intArgument("tagFiles", 10)).generate(project);
+    }
+    List<String> threadCounts = Arrays.stream(argument("threads", "1,2,4,8,16").split(",")).map(String::trim)
+        .sorted(Comparator.comparing((String threads) -> "auto".equals(threads))
+            .thenComparingInt(ScalingBenchmark::toThreadCount))
+        .collect(Collectors.toList());
+    String[] compilerClasses = argument("compilers", "org.apache.jasper.compiler.JDTCompiler,"
+        + "org.apache.jasper.compiler.JspcMojoJDTCompiler,org.apache.jasper.compiler.ParallelJDTCompiler").split(",");
+    int warmups = intArgument("warmups", 1);
+    int runs = intArgument("runs", 3);
+    File report = new File(argument("report", "target/scaling.csv"));
+
+    JspcMojoFactory mojoFactory = new JspcMojoFactory();
+    List<String> lines = new ArrayList<>();
+    lines.add("compilerClass,threads,timeMillis,speedup,efficiency,peakHeapBytes");
+    System.out.println("Webapp: " + new File(project, "src/main/webapp").getAbsolutePath());
+    System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors() + ", max heap: "
+        + toMegabytes(Runtime.getRuntime().maxMemory()) + " MB");
+    for (String compilerClass : compilerClasses) {
+      compilerClass = compilerClass.trim();
+      System.out.println();
+      System.out.println(compilerClass);
+      System.out.println(String.format("%8s %10s %8s %10s %14s", "threads", "time (ms)", "speedup", "efficiency",
+          "peak heap (MB)"));
+      long baseTime = 0;
+      for (String threads : threadCounts) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("compilerClass", compilerClass);
+        parameters.put("threads", threads);
+        long[] times = new long[runs];
+        long peakHeap = 0;
+        for (int run = -warmups; run < runs; run++) {
+          long[] result = build(mojoFactory, project, parameters);
+          if (run >= 0) {
+            times[run] = result[0];
+            peakHeap = Math.max(peakHeap, result[1]);
+          }
+        }
+        Arrays.sort(times);
+        long time = times[runs / 2];
+        if (baseTime == 0) {
+          baseTime = time;
+        }
+        double speedup = (double) baseTime / time;
+        double efficiency = speedup * toThreadCount(threadCounts.get(0)) / toThreadCount(threads);
+        System.out.println(String.format(Locale.ROOT, "%8s %10d %8.2f %10.2f %14d", threads, time, speedup,
+            efficiency, toMegabytes(peakHeap)));
+        lines.add(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%d", compilerClass, threads, time, speedup,
+            efficiency, peakHeap));
+      }
+    }
+    report.getAbsoluteFile().getParentFile().mkdirs();
+    Files.write(report.toPath(), lines, StandardCharsets.UTF_8);
+    System.out.println();
+    System.out.println("Results written in " + report.getAbsolutePath());
+  }
+
+  /**
+   * Run a clean build of the project.
+   *
+   * @return the time of the build in milliseconds and the peak of the used heap
+   *         in bytes
+   */
+  private long[] build(JspcMojoFactory mojoFactory, File project, Map<String, Object> parameters)
+      throws Exception {
+    FileUtils.deleteDirectory(new File(project, "target"));
+    JspcMojo mojo = mojoFactory.newMojo(project, parameters);
+    System.gc();
+    AtomicLong peakHeap = new AtomicLong(memory.getHeapMemoryUsage().getUsed());
+    Thread sampler = new Thread(() -> {
+      while (!Thread.currentThread().isInterrupted()) {
+        peakHeap.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+        try {
+          Thread.sleep(HEAP_SAMPLING_MILLIS);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }, "heap-sampler");
+    sampler.setDaemon(true);
+    sampler.start();
+    long start = System.nanoTime();
+    try {
+      mojo.execute();
+    } finally {
+      sampler.interrupt();
+      sampler.join();
+    }
+    long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    return new long[] { time, Math.max(peakHeap.get(), memory.getHeapMemoryUsage().getUsed()) };
+  }
+
+  private String argument(String name, String defaultValue) {
+    return arguments.getOrDefault(name, defaultValue);
+  }
+
+  private int intArgument(String name, int defaultValue) {
+    return arguments.containsKey(name) ? Integer.parseInt(arguments.get(name)) : defaultValue;
+  }
+
+  private static int toThreadCount(String threads) {
+    return "auto".equals(threads) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+  }
+
+  private static long toMegabytes(long bytes) {
+    return bytes / (1024 * 1024);
+  }
+
+  public static void main(String[] args) throws Exception {
+    new ScalingBenchmark(args).run();
+  }
+}
@@ -0,0 +1,234 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Writes a synthetic webapp, in src/main/webapp of a project directory, which
+ * uses what the jsps of real webapps use:
+ * <ul>
+ * <li>directories of 100 jsps with imports and scriptlets</li>
+ * <li>chains of static includes, each jsp includes one of them</li>
+ * <li>tag files, called from the jsps and from each other</li>
+ * <li>the core and functions tags of JSTL</li>
+ * <li>a custom tld with a tag handler, an EL function and a tag file</li>
+ * </ul>
+ * The fragments of the include chains are valid jsps, since the mojo compiles
+ * them too.
+ */
+public class WebappGenerator {
+
+  private static final String CUSTOM_TLD_URI = "http://jspc.leonard.io/benchmark";
+
+  private static final int JSPS_PER_DIRECTORY = 100;
+
+  private final int jsps;
+
+  private final int includeChains;
+
+  private final int includeDepth;
+
+  private final int tagFiles;
+
+  /**
+   * @param jsps          number of jsps, without the fragments
+   * @param includeChains number of chains of static includes
+   * @param includeDepth  number of fragments of each chain
+   * @param tagFiles      number of tag files in WEB-INF/tags
+   */
+  public WebappGenerator(int jsps, int includeChains, int includeDepth, int tagFiles) {
+    this.jsps = jsps;
+    this.includeChains = includeChains;
+    this.includeDepth = includeDepth;
+    this.tagFiles = tagFiles;
+  }
+
+  /**
+   * @param projectDirectory the directory of the project, the webapp is written
+   *                         in its src/main/webapp directory
+   * @return the directory of the webapp
+   */
+  public File generate(File projectDirectory) throws IOException {
+    File webappDirectory = new File(projectDirectory, "src/main/webapp");
+    write(new File(webappDirectory, "WEB-INF/web.xml"), webXml());
+    write(new File(webappDirectory, "WEB-INF/tlds/benchmark.tld"), customTld());
+    write(new File(webappDirectory, "WEB-INF/tags/custom/box.tag"), boxTag());
+    for (int tag = 0; tag < tagFiles; tag++) {
+      write(new File(webappDirectory, "WEB-INF/tags/layout" + tag + ".tag"), layoutTag(tag));
+    }
+    for (int chain = 0; chain < includeChains; chain++) {
+      for (int level = 0; level < includeDepth; level++) {
+        write(new File(webappDirectory, fragmentPath(chain, level)), fragment(chain, level));
+      }
+    }
+    for (int jsp = 0; jsp < jsps; jsp++) {
+      write(new File(webappDirectory, String.format("pages/d%03d/page%05d.jsp", jsp / JSPS_PER_DIRECTORY, jsp)),
+          jsp(jsp));
+    }
+    return webappDirectory;
+  }
+
+  private String webXml() {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<web-app xmlns=\"https://jakarta.ee/xml/ns/jakartaee\"\n"
+        + "         xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+        + "         xsi:schemaLocation=\"https://jakarta.ee/xml/ns/jakartaee https://jakarta.ee/xml/ns/jakartaee/web-app_6_0.xsd\"\n"
+        + "         version=\"6.0\">\n"
+        + "  <display-name>Synthetic webapp of " + jsps + " jsps</display-name>\n"
+        + "</web-app>\n";
+  }
+
+  private String customTld() {
+    return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+        + "<taglib xmlns=\"https://jakarta.ee/xml/ns/jakartaee\"\n"
+        + "        xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n"
+        + "        xsi:schemaLocation=\"https://jakarta.ee/xml/ns/jakartaee https://jakarta.ee/xml/ns/jakartaee/web-jsptaglibrary_3_0.xsd\"\n"
+        + "        version=\"3.0\">\n"
+        + "  <tlib-version>1.0</tlib-version>\n"
+        + "  <short-name>b</short-name>\n"
+        + "  <uri>" + CUSTOM_TLD_URI + "</uri>\n"
+        + "  <tag>\n"
+        + "    <name>value</name>\n"
+        + "    <tag-class>" + BenchmarkTag.class.getName() + "</tag-class>\n"
+        + "    <body-content>empty</body-content>\n"
+        + "    <attribute>\n"
+        + "      <name>value</name>\n"
+        + "      <required>true</required>\n"
+        + "      <rtexprvalue>true</rtexprvalue>\n"
+        + "    </attribute>\n"
+        + "  </tag>\n"
+        + "  <tag-file>\n"
+        + "    <name>box</name>\n"
+        + "    <path>/WEB-INF/tags/custom/box.tag</path>\n"
+        + "  </tag-file>\n"
+        + "  <function>\n"
+        + "    <name>repeat</name>\n"
+        + "    <function-class>" + BenchmarkTag.class.getName() + "</function-class>\n"
+        + "    <function-signature>java.lang.String repeat(java.lang.String, int)</function-signature>\n"
+        + "  </function>\n"
+        + "</taglib>\n";
+  }
+
+  private String boxTag() {
+    return "<%@ tag body-content=\"scriptless\" %>\n"
+        + "<%@ attribute name=\"label\" required=\"true\" %>\n"
+        + "<%@ taglib uri=\"jakarta.tags.core\" prefix=\"c\" %>\n"
+        + "<div class=\"box\"><span><c:out value=\"${label}\"/></span><jsp:doBody/></div>\n";
+  }
+
+  private String layoutTag(int tag) {
+    StringBuilder result = new StringBuilder();
+    result.append("<%@ tag body-content=\"scriptless\" %>\n");
+    result.append("<%@ attribute name=\"title\" required=\"true\" %>\n");
+    result.append("<%@ taglib uri=\"jakarta.tags.core\" prefix=\"c\" %>\n");
+    result.append("<%@ taglib uri=\"jakarta.tags.functions\" prefix=\"fn\" %>\n");
+    result.append("<%@ taglib tagdir=\"/WEB-INF/tags\" prefix=\"t\" %>\n");
+    result.append("<div class=\"layout").append(tag).append("\">\n");
+    result.append("  <h1><c:out value=\"${fn:toUpperCase(title)}\"/></h1>\n");
+    if (tag + 1 < tagFiles && tag % 2 == 0) {
+      // half of the layouts are nested in the next one
+      result.append("  <t:layout").append(tag + 1).append(" title=\"${title}\"><jsp:doBody/></t:layout")
+          .append(tag + 1).append(">\n");
+    } else {
+      result.append("  <jsp:doBody/>\n");
+    }
+    result.append("</div>\n");
+    return result.toString();
+  }
+
+  private static String fragmentPath(int chain, int level) {
+    return "WEB-INF/jspf/chain" + chain + "/level" + level + ".jspf";
+  }
+
+  private String fragment(int chain, int level) {
+    StringBuilder result = new StringBuilder();
+    result.append("<%@ taglib uri=\"jakarta.tags.core\" prefix=\"c\" %>\n");
+    result.append("<%\n");
+    result.append("  String chain").append(chain).append("Level").append(level).append(" = \"chain ").append(chain)
+        .append(" level ").append(level).append("\";\n");
+    result.append("%>\n");
+    result.append("<div class=\"level").append(level).append("\"><%= chain").append(chain).append("Level")
+        .append(level).append(" %>\n");
+    result.append("  <c:if test=\"${not empty param.debug}\">level ").append(level).append("</c:if>\n");
+    if (level + 1 < includeDepth) {
+      result.append("  <%@ include file=\"/").append(fragmentPath(chain, level + 1)).append("\" %>\n");
+    }
+    result.append("</div>\n");
+    return result.toString();
+  }
+
+  private String jsp(int jsp) {
+    StringBuilder result = new StringBuilder();
+    result.append("<%@ page contentType=\"text/html; charset=UTF-8\" import=\"java.util.*,java.text.*\" %>\n");
+    result.append("<%@ taglib uri=\"jakarta.tags.core\" prefix=\"c\" %>\n");
+    result.append("<%@ taglib uri=\"jakarta.tags.functions\" prefix=\"fn\" %>\n");
+    result.append("<%@ taglib uri=\"").append(CUSTOM_TLD_URI).append("\" prefix=\"b\" %>\n");
+    result.append("<%@ taglib tagdir=\"/WEB-INF/tags\" prefix=\"t\" %>\n");
+    result.append("<%\n");
+    result.append("  List<String> items = new ArrayList<>();\n");
+    result.append("  for (int i = 0; i < ").append(10 + jsp % 10).append("; i++) {\n");
+    result.append("    items.add(\"item \" + i);\n");
+    result.append("  }\n");
+    result.append("  pageContext.setAttribute(\"items\", items);\n");
+    result.append("  pageContext.setAttribute(\"today\", new SimpleDateFormat(\"yyyy-MM-dd\").format(new Date()));\n");
+    result.append("%>\n");
+    result.append("<html>\n");
+    result.append("<head><title>Page ").append(jsp).append("</title></head>\n");
+    result.append("<body>\n");
+    if (includeChains > 0 && includeDepth > 0) {
+      result.append("<%@ include file=\"/").append(fragmentPath(jsp % includeChains, 0)).append("\" %>\n");
+    }
+    // the body of a tag file is scriptless
+    result.append("<b:value value=\"<%= String.valueOf(items.size()) %>\"/> items\n");
+    String layout = tagFiles > 0 ? "t:layout" + (jsp % tagFiles) : null;
+    if (layout != null) {
+      result.append("<").append(layout).append(" title=\"Page ").append(jsp).append("\">\n");
+    }
+    result.append("  <p>${today} ${b:repeat('-', 3)}</p>\n");
+    result.append("  <b:box label=\"Items of page ").append(jsp).append("\">\n");
+    result.append("    <c:forEach var=\"item\" items=\"${items}\" varStatus=\"status\">\n");
+    result.append("      <c:if test=\"${status.index % 2 == 0}\">\n");
+    result.append("        <b:value value=\"${fn:toUpperCase(item)}\"/>\n");
+    result.append("      </c:if>\n");
+    result.append("      <c:choose>\n");
+    result.append("        <c:when test=\"${fn:length(item) > 6}\">long</c:when>\n");
+    result.append("        <c:otherwise><c:out value=\"${item}\"/></c:otherwise>\n");
+    result.append("      </c:choose>\n");
+    result.append("    </c:forEach>\n");
+    result.append("  </b:box>\n");
+    result.append("  <c:set var=\"count\" value=\"${fn:length(items)}\"/>\n");
+    result.append("  ${count} items\n");
+    if (layout != null) {
+      result.append("</").append(layout).append(">\n");
+    }
+    result.append("</body>\n");
+    result.append("</html>\n");
+    return result.toString();
+  }
+
+  private static void write(File file, String content) throws IOException {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Usage: WebappGenerator &lt;project directory&gt; [jsps] [include chains]
+   * [include depth] [tag files]
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: WebappGenerator <project directory> [jsps] [include chains] [include depth]"
+          + " [tag files]");
+      System.exit(1);
+    }
+    WebappGenerator generator = new WebappGenerator(intArgument(args, 1, 2000), intArgument(args, 2, 20),
+        intArgument(args, 3, 8), intArgument(args, 4, 10));
+    System.out.println("Webapp written in " + generator.generate(new File(args[0])));
+  }
+
+  private static int intArgument(String[] args, int index, int defaultValue) {
+    return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+  }
+}
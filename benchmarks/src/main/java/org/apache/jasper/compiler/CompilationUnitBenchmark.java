@@ -0,0 +1,76 @@
+package org.apache.jasper.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import io.leonard.maven.plugins.jspc.BenchmarkWebapp;
+import io.leonard.maven.plugins.jspc.BenchmarkWebapp.BenchmarkJspC;
+import org.apache.jasper.JspCompilationContext;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Reading of the java source of a generated servlet by JDT, from its java file
+ * as "org.apache.jasper.compiler.ParallelJDTCompiler" does when the sources are
+ * kept, or from memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompilationUnitBenchmark {
+
+  private final Log log = LogFactory.getLog(CompilationUnitBenchmark.class);
+
+  @Param("../src/test/resources/unit/project_many_jsp/src/main/webapp")
+  public String webapp;
+
+  @Param("/jsp/01.jsp")
+  public String jsp;
+
+  private Path outputDirectory;
+
+  private ParallelJDTCompiler.JspCompilationUnit fileCompilationUnit;
+
+  private ParallelJDTCompiler.JspCompilationUnit memoryCompilationUnit;
+
+  @Setup
+  public void generateJava() throws Exception {
+    outputDirectory = Files.createTempDirectory("jspc-benchmark");
+    try (BenchmarkWebapp benchmarkWebapp = new BenchmarkWebapp(new File(webapp), outputDirectory.toFile(),
+        JDTCompiler.class.getName())) {
+      BenchmarkJspC jspc = benchmarkWebapp.newWorkerJspC();
+      JspCompilationContext clctxt = jspc.newCompilationContext(jsp);
+      Compiler compiler = clctxt.createCompiler();
+      compiler.errDispatcher = new ErrorDispatcher(true);
+      compiler.generateJava();
+      String sourceFile = clctxt.getServletJavaFileName();
+      String className = clctxt.getFQCN();
+      fileCompilationUnit = new ParallelJDTCompiler.JspCompilationUnit(sourceFile, className, "UTF-8", null, log);
+      memoryCompilationUnit = new ParallelJDTCompiler.JspCompilationUnit(sourceFile, className, "UTF-8",
+          fileCompilationUnit.getContents(), log);
+    }
+  }
+
+  @Benchmark
+  public char[] getContentsFromFile() {
+    return fileCompilationUnit.getContents();
+  }
+
+  @Benchmark
+  public char[] getContentsFromMemory() {
+    return memoryCompilationUnit.getContents();
+  }
+
+  @TearDown
+  public void deleteOutputDirectory() throws IOException {
+    FileUtils.deleteDirectory(outputDirectory.toFile());
+  }
+}
@@ -0,0 +1,76 @@
+package org.apache.jasper.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.leonard.maven.plugins.jspc.BenchmarkWebapp;
+import io.leonard.maven.plugins.jspc.BenchmarkWebapp.BenchmarkJspC;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compilation of the java source of a single jsp, generated once, with the
+ * class lookups of the previous invocations cached. The lookup environment of
+ * "org.apache.jasper.compiler.ParallelJDTCompiler" is reset before each
+ * invocation since the jsp cannot be compiled twice in the same environment:
+ * {@link io.leonard.maven.plugins.jspc.JspcWorkerBenchmark} measures how it is
+ * shared by the jsps of a worker.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GenerateClassBenchmark {
+
+  @Param({ "org.apache.jasper.compiler.JDTCompiler", "org.apache.jasper.compiler.JspcMojoJDTCompiler",
+      "org.apache.jasper.compiler.ParallelJDTCompiler" })
+  public String compilerClass;
+
+  @Param("../src/test/resources/unit/project_many_jsp/src/main/webapp")
+  public String webapp;
+
+  @Param("/jsp/01.jsp")
+  public String jsp;
+
+  private Path outputDirectory;
+
+  private BenchmarkWebapp benchmarkWebapp;
+
+  private BenchmarkJspC jspc;
+
+  private Compiler compiler;
+
+  private Map<String, SmapStratum> smaps;
+
+  @Setup
+  public void generateJava() throws Exception {
+    outputDirectory = Files.createTempDirectory("jspc-benchmark");
+    benchmarkWebapp = new BenchmarkWebapp(new File(webapp), outputDirectory.toFile(), compilerClass);
+    jspc = benchmarkWebapp.newWorkerJspC();
+    compiler = jspc.newCompilationContext(jsp).createCompiler();
+    compiler.errDispatcher = new ErrorDispatcher(true);
+    smaps = compiler.generateJava();
+  }
+
+  @Setup(Level.Invocation)
+  public void resetCompilerSession() {
+    jspc.getCompilerSession().reset();
+  }
+
+  @Benchmark
+  public void generateClass() throws Exception {
+    compiler.generateClass(smaps);
+  }
+
+  @TearDown
+  public void deleteOutputDirectory() throws IOException {
+    benchmarkWebapp.close();
+    FileUtils.deleteDirectory(outputDirectory.toFile());
+  }
+}
@@ -0,0 +1,99 @@
+package org.apache.jasper.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import io.leonard.maven.plugins.jspc.BenchmarkWebapp;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.codehaus.plexus.util.FileUtils;
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.env.INameEnvironment;
+import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The lookups JDT does while compiling a generated servlet, through the
+ * {@link ParallelJDTCompiler.JspNameEnvironment} and the class file cache
+ * shared by the workers. The imports of a jsp make JDT look for each simple name
+ * in each imported package, so the missing types and the packages which are
+ * classes are as frequent as the found types.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NameEnvironmentBenchmark {
+
+  private static final char[][] JAVA = CharOperation.splitOn('.', "java".toCharArray());
+
+  private static final char[][] JAKARTA_SERVLET_JSP = CharOperation.splitOn('.', "jakarta.servlet.jsp".toCharArray());
+
+  private static final char[][] STRING = CharOperation.splitOn('.', "java.lang.String".toCharArray());
+
+  private static final char[][] HTTP_JSP_BASE = CharOperation.splitOn('.',
+      "org.apache.jasper.runtime.HttpJspBase".toCharArray());
+
+  private static final char[][] SERVLET_PACKAGE = CharOperation.splitOn('.', "org.apache.jsp.jsp".toCharArray());
+
+  private final Log log = LogFactory.getLog(NameEnvironmentBenchmark.class);
+
+  @Param("../src/test/resources/unit/project_many_jsp/src/main/webapp")
+  public String webapp;
+
+  private Path outputDirectory;
+
+  private BenchmarkWebapp benchmarkWebapp;
+
+  private INameEnvironment env;
+
+  @Setup
+  public void initNameEnvironment() throws Exception {
+    outputDirectory = Files.createTempDirectory("jspc-benchmark");
+    benchmarkWebapp = new BenchmarkWebapp(new File(webapp), outputDirectory.toFile(),
+        ParallelJDTCompiler.class.getName());
+    String targetClassName = "org.apache.jsp.jsp._01_jsp";
+    ParallelJDTCompiler.JspCompilationUnit compilationUnit = new ParallelJDTCompiler.JspCompilationUnit(
+        "_01_jsp.java", targetClassName, "UTF-8", new char[0], log);
+    env = new ParallelJDTCompiler.JspNameEnvironment(Collections.singletonMap(targetClassName, compilationUnit),
+        benchmarkWebapp.getLoader(), benchmarkWebapp.getResourcesCache(), log);
+  }
+
+  @Benchmark
+  public NameEnvironmentAnswer findJdkType() {
+    return env.findType(STRING);
+  }
+
+  @Benchmark
+  public NameEnvironmentAnswer findClasspathType() {
+    return env.findType(HTTP_JSP_BASE);
+  }
+
+  @Benchmark
+  public NameEnvironmentAnswer findMissingType() {
+    // String looked up in the package of the servlet
+    return env.findType("String".toCharArray(), SERVLET_PACKAGE);
+  }
+
+  @Benchmark
+  public boolean isPackage() {
+    return env.isPackage(JAVA, "util".toCharArray());
+  }
+
+  @Benchmark
+  public boolean isPackageOfClass() {
+    return env.isPackage(JAKARTA_SERVLET_JSP, "PageContext".toCharArray());
+  }
+
+  @TearDown
+  public void deleteOutputDirectory() throws IOException {
+    benchmarkWebapp.close();
+    FileUtils.deleteDirectory(outputDirectory.toFile());
+  }
+}
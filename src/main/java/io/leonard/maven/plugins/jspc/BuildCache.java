@@ -0,0 +1,314 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.jasper.JasperException;
+import org.apache.jasper.compiler.ErrorDispatcher;
+import org.apache.jasper.compiler.JspUtil;
+
+/**
+ * Cache of compiled jsps shared between builds, possibly between several
+ * checkouts or machines when the directory is on a shared mount.
+ * <p>
+ * An entry is a zip file named after a hash of the jsp uri, of the jsp source
+ * and of a fingerprint of everything else the compilation depends on (options,
+ * web.xml, content of the classpath). It contains the files generated for the
+ * jsp and for the tag files it uses (classes, smaps) plus a manifest listing the
+ * files of the webapp the jsp depends on (static includes, tag files, tlds) with
+ * a hash of their content. An entry is only restored if none of them changed.
+ * <p>
+ * Entries are written in a temporary file then atomically renamed, so that
+ * concurrent builds only ever see complete entries.
+ */
+public class BuildCache {
+
+  private static final String MANIFEST = "META-INF/jspc-cache.txt";
+  private static final String SERVLET = "servlet";
+  private static final String DEPENDENCY = "dependency";
+  private static final String ENTRY_EXTENSION = ".zip";
+  // default of Options#getGeneratedTagFilePackageName, the plugin does not change it
+  private static final String TAG_FILE_PACKAGE = "org.apache.jsp.tag";
+
+  private final File directory;
+  private final String fingerprint;
+  private final File webAppSourceDirectory;
+  private final File outputDirectory;
+  private final Map<String, String> fileHashes = new ConcurrentHashMap<>();
+
+  /**
+   * @param directory             root directory of the cache
+   * @param fingerprint           fingerprint of the options, web.xml and classpath
+   *                              of the build
+   * @param webAppSourceDirectory root directory of the webapp
+   * @param outputDirectory       directory where the jsps are compiled
+   */
+  public BuildCache(File directory, String fingerprint, File webAppSourceDirectory, File outputDirectory) {
+    this.directory = directory;
+    this.fingerprint = fingerprint;
+    this.webAppSourceDirectory = webAppSourceDirectory;
+    this.outputDirectory = outputDirectory;
+  }
+
+  /**
+   * Copy the files generated for a jsp by a previous build into the output
+   * directory.
+   *
+   * @param jspUri uri of the jsp
+   * @return the restored jsp, or null if the cache has no valid entry for it
+   * @throws IOException if the files cannot be written in the output directory
+   */
+  public CompiledJsp restore(String jspUri) throws IOException {
+    File entry = getEntry(jspUri);
+    if (!entry.isFile()) {
+      return null;
+    }
+    Map<String, byte[]> files = new LinkedHashMap<>();
+    String servletName = null;
+    Map<String, Long> dependencies = new LinkedHashMap<>();
+    try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(entry.toPath()))) {
+      ZipEntry zipEntry;
+      while ((zipEntry = zip.getNextEntry()) != null) {
+        if (!MANIFEST.equals(zipEntry.getName())) {
+          files.put(zipEntry.getName(), zip.readAllBytes());
+          continue;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+          String[] fields = line.split("\t");
+          if (SERVLET.equals(fields[0])) {
+            servletName = fields[1];
+          } else if (DEPENDENCY.equals(fields[0])) {
+            if (!fields[2].equals(hashWebAppFile(fields[1]))) {
+              return null;
+            }
+            dependencies.put(fields[1], new File(webAppSourceDirectory, fields[1]).lastModified());
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // a corrupted entry is only a cache miss, it will be replaced
+      return null;
+    }
+    if (servletName == null || !isClassName(servletName)) {
+      return null;
+    }
+
+    // the entries may come from a shared directory, nothing is written out of
+    // the output directory
+    Path root = outputDirectory.toPath().toAbsolutePath().normalize();
+    Map<Path, byte[]> targets = new LinkedHashMap<>();
+    Path classFile = null;
+    for (Map.Entry<String, byte[]> file : files.entrySet()) {
+      Path target = root.resolve(file.getKey()).normalize();
+      if (!target.startsWith(root) || target.equals(root)) {
+        return null;
+      }
+      targets.put(target, file.getValue());
+      if (file.getKey().equals(servletName.replace('.', '/') + ".class")) {
+        classFile = target;
+      }
+    }
+    if (classFile == null) {
+      return null;
+    }
+    for (Map.Entry<Path, byte[]> target : targets.entrySet()) {
+      Files.createDirectories(target.getKey().getParent());
+      Files.write(target.getKey(), target.getValue());
+    }
+    long lastModified = new File(webAppSourceDirectory, jspUri).lastModified();
+    return new CompiledJsp(jspUri, servletName, classFile.toString(), lastModified, dependencies);
+  }
+
+  /**
+   * Add a jsp compiled by this build to the cache, replacing a previous entry.
+   *
+   * @param jsp the compiled jsp
+   * @throws IOException if the entry cannot be written
+   */
+  public void store(CompiledJsp jsp) throws IOException {
+    StringBuilder manifest = new StringBuilder();
+    manifest.append(SERVLET).append('\t').append(jsp.getServletName()).append('\n');
+    List<String> classes = new ArrayList<>();
+    classes.add(jsp.getServletName());
+    for (String path : jsp.getDependencies().keySet()) {
+      if (path.startsWith("/")) {
+        manifest.append(DEPENDENCY).append('\t').append(path).append('\t').append(hashWebAppFile(path)).append('\n');
+      }
+      String tagClass = getTagHandlerClassName(path);
+      if (tagClass != null) {
+        classes.add(tagClass);
+      }
+    }
+
+    File entry = getEntry(jsp.getJspUri());
+    Files.createDirectories(entry.getParentFile().toPath());
+    Path tmp = Files.createTempFile(entry.getParentFile().toPath(), entry.getName(), ".tmp");
+    try {
+      try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(tmp))) {
+        zip.putNextEntry(new ZipEntry(MANIFEST));
+        zip.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+        for (String className : classes) {
+          addGeneratedFiles(zip, className);
+        }
+      }
+      Files.move(tmp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * Add the class file of a class, of its inner classes and their smap and java
+   * source if they exist.
+   */
+  private void addGeneratedFiles(ZipOutputStream zip, String className) throws IOException {
+    Path root = outputDirectory.toPath();
+    for (Path file : getGeneratedFiles(outputDirectory, className)) {
+      zip.putNextEntry(new ZipEntry(root.relativize(file).toString().replace(File.separatorChar, '/')));
+      Files.copy(file, zip);
+      zip.closeEntry();
+    }
+  }
+
+  /**
+   * @param outputDirectory directory where the jsps are compiled
+   * @param className       name of a generated class
+   * @return the class file of the class, of its inner classes and their smap and
+   *         java source if they exist
+   * @throws IOException if the package directory cannot be read
+   */
+  static List<Path> getGeneratedFiles(File outputDirectory, String className) throws IOException {
+    String relativePath = className.replace('.', '/');
+    int slash = relativePath.lastIndexOf('/');
+    String packagePath = slash < 0 ? "" : relativePath.substring(0, slash + 1);
+    String simpleName = relativePath.substring(slash + 1);
+    Path packageDir = new File(outputDirectory, packagePath).toPath();
+    List<Path> generatedFiles = new ArrayList<>();
+    if (!Files.isDirectory(packageDir)) {
+      return generatedFiles;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(packageDir,
+        path -> path.getFileName().toString().startsWith(simpleName + ".")
+            || path.getFileName().toString().startsWith(simpleName + "$"))) {
+      files.forEach(generatedFiles::add);
+    }
+    return generatedFiles;
+  }
+
+  private File getEntry(String jspUri) throws IOException {
+    String hash = BuildState.fingerprint(fingerprint, jspUri, hashWebAppFile(jspUri));
+    return new File(new File(directory, hash.substring(0, 2)), hash + ENTRY_EXTENSION);
+  }
+
+  private String hashWebAppFile(String path) {
+    return fileHashes.computeIfAbsent(path, p -> {
+      try {
+        return hash(new File(webAppSourceDirectory, p));
+      } catch (IOException e) {
+        return "";
+      }
+    });
+  }
+
+  private static boolean isClassName(String name) {
+    for (String part : name.split("\\.", -1)) {
+      if (part.isEmpty() || !Character.isJavaIdentifierStart(part.charAt(0))
+          || !part.chars().allMatch(Character::isJavaIdentifierPart)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param path a dependency of a jsp
+   * @return the name of the class generated for the dependency if it is a tag
+   *         file, null otherwise
+   */
+  static String getTagHandlerClassName(String path) {
+    if (!path.endsWith(".tag") && !path.endsWith(".tagx")) {
+      return null;
+    }
+    // tag files found in jars are reported as jar:file:/...!/META-INF/tags/...
+    int jarSeparator = path.lastIndexOf("!/");
+    String tagPath = jarSeparator < 0 ? path : path.substring(jarSeparator + 1);
+    try {
+      return JspUtil.getTagHandlerClassName(tagPath, TAG_FILE_PACKAGE, null, new ErrorDispatcher(true));
+    } catch (JasperException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Fingerprint of the content of the classpath: unlike
+   * {@link BuildState#fingerprintClasspath(List, Collection)} it does not depend
+   * on where the files are, so that it is the same for every checkout of a
+   * project.
+   *
+   * @param urls          the classpath
+   * @param excludedPaths files and packages generated by the plugin, relative to
+   *                      the directories of the classpath, which are ignored
+   * @param fileHashes    the hashes of the files computed by previous builds
+   * @return the fingerprint
+   * @throws IOException if a file of the classpath cannot be read
+   */
+  public static String fingerprintClasspath(List<URL> urls, Collection<String> excludedPaths,
+      FileHashIndex fileHashes) throws IOException {
+    StringBuilder classpath = new StringBuilder();
+    for (URL url : urls) {
+      File file = BuildState.toFile(url);
+      if (file.isFile()) {
+        classpath.append(file.getName()).append(':').append(fileHashes.hash(file.toPath())).append('\n');
+      } else if (file.isDirectory()) {
+        Path root = file.toPath();
+        for (Path child : BuildState.listFiles(root, excludedPaths)) {
+          String relativePath = root.relativize(child).toString().replace(File.separatorChar, '/');
+          classpath.append(relativePath).append(':').append(fileHashes.hash(child)).append('\n');
+        }
+      }
+    }
+    return BuildState.fingerprint(classpath.toString());
+  }
+
+  /**
+   * @param file a file
+   * @return an hexadecimal SHA-256 digest of the content of the file, empty if
+   *         the file does not exist
+   * @throws IOException if the file cannot be read
+   */
+  public static String hash(File file) throws IOException {
+    return file.isFile() ? hash(file.toPath()) : "";
+  }
+
+  private static String hash(Path file) throws IOException {
+    MessageDigest digest = BuildState.sha256();
+    try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+      in.transferTo(OutputStream.nullOutputStream());
+    }
+    return BuildState.toHex(digest.digest());
+  }
+}
@@ -0,0 +1,262 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * State kept between two builds when the incremental mode is active: the
+ * dependency graph of every compiled jsp plus a fingerprint of the plugin
+ * configuration and of the classpath. If one of the fingerprints changes, every
+ * jsp is compiled again.
+ * <p>
+ * The state is stored as a tab separated text file:
+ *
+ * <pre>
+ * options    &lt;fingerprint&gt;
+ * classpath  &lt;fingerprint&gt;
+ * jsp        &lt;jspUri&gt; &lt;lastModified&gt; &lt;servletName&gt; &lt;classFile&gt;
+ * dependency &lt;path&gt; &lt;lastModified&gt;
+ * </pre>
+ *
+ * where the dependency lines belong to the jsp line above them.
+ */
+public class BuildState {
+
+  private static final String HEADER = "# jspc-maven-plugin build state, do not edit";
+  private static final String OPTIONS = "options";
+  private static final String CLASSPATH = "classpath";
+  private static final String JSP = "jsp";
+  private static final String DEPENDENCY = "dependency";
+
+  private final String optionsFingerprint;
+  private final String classpathFingerprint;
+  private final Map<String, CompiledJsp> jsps = new LinkedHashMap<>();
+
+  public BuildState(String optionsFingerprint, String classpathFingerprint) {
+    this.optionsFingerprint = optionsFingerprint;
+    this.classpathFingerprint = classpathFingerprint;
+  }
+
+  public String getOptionsFingerprint() {
+    return optionsFingerprint;
+  }
+
+  public String getClasspathFingerprint() {
+    return classpathFingerprint;
+  }
+
+  /**
+   * @param other the state of the previous build
+   * @return true if jsps compiled during the other build may be reused by this one
+   */
+  public boolean isCompatibleWith(BuildState other) {
+    return optionsFingerprint.equals(other.optionsFingerprint)
+        && classpathFingerprint.equals(other.classpathFingerprint);
+  }
+
+  public CompiledJsp getJsp(String jspUri) {
+    return jsps.get(jspUri);
+  }
+
+  public Collection<CompiledJsp> getJsps() {
+    return jsps.values();
+  }
+
+  public void addJsp(CompiledJsp jsp) {
+    jsps.put(jsp.getJspUri(), jsp);
+  }
+
+  /**
+   * @param file the file where a previous build saved its state
+   * @return the state read from the file, or null if the file does not exist or
+   *         cannot be read
+   */
+  public static BuildState load(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String optionsFingerprint = null;
+      String classpathFingerprint = null;
+      List<CompiledJsp> jsps = new ArrayList<>();
+      String jspUri = null;
+      long lastModified = 0;
+      String servletName = null;
+      String classFile = null;
+      Map<String, Long> dependencies = new LinkedHashMap<>();
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split("\t");
+        if (OPTIONS.equals(fields[0])) {
+          optionsFingerprint = fields[1];
+        } else if (CLASSPATH.equals(fields[0])) {
+          classpathFingerprint = fields[1];
+        } else if (JSP.equals(fields[0])) {
+          if (jspUri != null) {
+            jsps.add(new CompiledJsp(jspUri, servletName, classFile, lastModified, dependencies));
+          }
+          jspUri = fields[1];
+          lastModified = Long.parseLong(fields[2]);
+          servletName = fields[3];
+          classFile = fields[4];
+          dependencies.clear();
+        } else if (DEPENDENCY.equals(fields[0])) {
+          dependencies.put(fields[1], Long.valueOf(fields[2]));
+        }
+      }
+      if (jspUri != null) {
+        jsps.add(new CompiledJsp(jspUri, servletName, classFile, lastModified, dependencies));
+      }
+      if (optionsFingerprint == null || classpathFingerprint == null) {
+        return null;
+      }
+      BuildState state = new BuildState(optionsFingerprint, classpathFingerprint);
+      jsps.forEach(state::addJsp);
+      return state;
+    } catch (IOException | RuntimeException e) {
+      // a corrupted state only means a full build
+      return null;
+    }
+  }
+
+  /**
+   * Write the state in a temporary file first so that an interrupted build never
+   * leaves a truncated state behind.
+   *
+   * @param file the file where to save the state
+   * @throws IOException if the state cannot be written
+   */
+  public void save(File file) throws IOException {
+    Path target = file.toPath();
+    Files.createDirectories(target.getParent());
+    Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      writer.write(HEADER);
+      writer.newLine();
+      writeLine(writer, OPTIONS, optionsFingerprint);
+      writeLine(writer, CLASSPATH, classpathFingerprint);
+      for (CompiledJsp jsp : jsps.values()) {
+        writeLine(writer, JSP, jsp.getJspUri(), String.valueOf(jsp.getLastModified()), jsp.getServletName(),
+            jsp.getClassFile());
+        for (Map.Entry<String, Long> dependency : jsp.getDependencies().entrySet()) {
+          writeLine(writer, DEPENDENCY, dependency.getKey(), String.valueOf(dependency.getValue()));
+        }
+      }
+    }
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeLine(BufferedWriter writer, String... fields) throws IOException {
+    writer.write(String.join("\t", fields));
+    writer.newLine();
+  }
+
+  /**
+   * Fingerprint of the classpath used to compile the jsps. Jars are identified by
+   * their path, size and last modification time, and so are the files of the
+   * directories, except the ones written by the plugin itself since the
+   * generated classes are usually written inside of them.
+   *
+   * @param urls          the classpath
+   * @param excludedPaths files and packages generated by the plugin, relative to
+   *                      the directories of the classpath, which are ignored
+   * @return the fingerprint
+   * @throws IOException if a directory of the classpath cannot be read
+   */
+  public static String fingerprintClasspath(List<URL> urls, Collection<String> excludedPaths) throws IOException {
+    StringBuilder classpath = new StringBuilder();
+    for (URL url : urls) {
+      File file = toFile(url);
+      classpath.append(file.getPath());
+      if (file.isFile()) {
+        classpath.append(':').append(file.length()).append(':').append(file.lastModified());
+      }
+      classpath.append('\n');
+      if (file.isDirectory()) {
+        for (Path child : listFiles(file.toPath(), excludedPaths)) {
+          File childFile = child.toFile();
+          classpath.append(file.toPath().relativize(child)).append(':').append(childFile.length()).append(':')
+              .append(childFile.lastModified()).append('\n');
+        }
+      }
+    }
+    return fingerprint(classpath.toString());
+  }
+
+  static File toFile(URL url) {
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return new File(url.getFile());
+    }
+  }
+
+  /**
+   * @param root          a directory of the classpath
+   * @param excludedPaths files and packages relative to the directory
+   * @return the files of the directory which are not excluded, sorted
+   * @throws IOException if the directory cannot be read
+   */
+  static List<Path> listFiles(Path root, Collection<String> excludedPaths) throws IOException {
+    try (Stream<Path> walk = Files.walk(root)) {
+      return walk.filter(Files::isRegularFile)
+          .filter(child -> !isExcluded(root.relativize(child).toString().replace(File.separatorChar, '/'),
+              excludedPaths))
+          .sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static boolean isExcluded(String relativePath, Collection<String> excludedPaths) {
+    return excludedPaths.stream()
+        .anyMatch(excluded -> relativePath.equals(excluded) || relativePath.startsWith(excluded + "/"));
+  }
+
+  /**
+   * @param values the values to fingerprint
+   * @return an hexadecimal SHA-256 digest of the values
+   */
+  public static String fingerprint(String... values) {
+    MessageDigest digest = sha256();
+    for (String value : values) {
+      digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    return toHex(digest.digest());
+  }
+
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+}
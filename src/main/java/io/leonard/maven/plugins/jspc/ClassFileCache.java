@@ -0,0 +1,293 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException;
+
+/**
+ * Class files read by the compilers, shared by all the threads of a build so
+ * that each class of the classpath is read and decoded only once instead of once
+ * per jsp.
+ * <p>
+ * The cache is bounded by the total size of the class files it holds. When it
+ * is full, the least recently used classes are evicted. The names which are not
+ * classes are remembered too, since the compilers look up many of them (imports
+ * on demand, simple names tried as packages) and each miss walks every jar of the
+ * classpath. The classes generated during the build (jsps and tag files) are
+ * never cached since they may be compiled after their first lookup.
+ */
+public class ClassFileCache {
+
+  private final long maxSize;
+  private final Collection<String> excludedPackages;
+  private final ClasspathIndex classpathIndex;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong size = new AtomicLong();
+  private final AtomicLong clock = new AtomicLong();
+  private final Set<String> existingClasses = ConcurrentHashMap.newKeySet();
+  private final Set<String> missingClasses = ConcurrentHashMap.newKeySet();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * @param maxSize          maximum total size in bytes of the cached class files
+   * @param excludedPackages packages of the generated classes, which are not
+   *                         cached
+   */
+  public ClassFileCache(long maxSize, Collection<String> excludedPackages) {
+    this(maxSize, excludedPackages, null);
+  }
+
+  /**
+   * @param maxSize          maximum total size in bytes of the cached class files
+   * @param excludedPackages packages of the generated classes, which are not
+   *                         cached
+   * @param classpathIndex   index of the classpath, used before asking the class
+   *                         loader, may be null
+   */
+  public ClassFileCache(long maxSize, Collection<String> excludedPackages, ClasspathIndex classpathIndex) {
+    this.maxSize = maxSize;
+    this.excludedPackages = excludedPackages;
+    this.classpathIndex = classpathIndex;
+  }
+
+  /**
+   * @param className   binary name of the class
+   * @param classLoader the class loader used when the class is not in the cache
+   * @return the decoded class file, or null if the class loader does not know the
+   *         class
+   * @throws IOException          if the class file cannot be read
+   * @throws ClassFormatException if the class file cannot be decoded
+   */
+  public ClassFileReader getClassFile(String className, ClassLoader classLoader)
+      throws IOException, ClassFormatException {
+    return getClassFile(className, classLoader, null);
+  }
+
+  /**
+   * Same as {@link #getClassFile(String, ClassLoader)}, recorded as a
+   * {@link ClassLookupEvent} of the jsp.
+   *
+   * @param jspUri the jsp or tag file being compiled, or null if several are
+   *               compiled together
+   */
+  public ClassFileReader getClassFile(String className, ClassLoader classLoader, String jspUri)
+      throws IOException, ClassFormatException {
+    ClassLookupEvent event = new ClassLookupEvent();
+    event.begin();
+    ClassFileReader classFile = lookupClassFile(className, classLoader, event);
+    if (event.shouldCommit()) {
+      event.jsp = jspUri;
+      event.className = className;
+      event.classFile = true;
+      event.found = classFile != null;
+      event.commit();
+    }
+    return classFile;
+  }
+
+  private ClassFileReader lookupClassFile(String className, ClassLoader classLoader, ClassLookupEvent event)
+      throws IOException, ClassFormatException {
+    Entry entry = entries.get(className);
+    if (entry != null) {
+      entry.lastAccess = clock.incrementAndGet();
+      hit(event);
+      return entry.classFile;
+    }
+    if (missingClasses.contains(className)) {
+      hit(event);
+      return null;
+    }
+
+    boolean cacheable = isCacheable(className);
+    if (cacheable && classpathIndex != null && classpathIndex.isMissingClass(className)) {
+      hit(event);
+      missingClasses.add(className);
+      return null;
+    }
+
+    misses.increment();
+    byte[] classBytes = cacheable && classpathIndex != null ? classpathIndex.readClass(className) : null;
+    if (classBytes == null) {
+      try (InputStream is = classLoader.getResourceAsStream(toResourceName(className))) {
+        if (is == null) {
+          if (cacheable) {
+            missingClasses.add(className);
+          }
+          return null;
+        }
+        classBytes = is.readAllBytes();
+      }
+    }
+    ClassFileReader classFile = new ClassFileReader(classBytes, className.toCharArray(), true);
+    if (cacheable && classBytes.length <= maxSize) {
+      Entry previous = entries.putIfAbsent(className,
+          new Entry(className, classFile, classBytes.length, clock.incrementAndGet()));
+      if (previous == null && size.addAndGet(classBytes.length) > maxSize) {
+        evict();
+      }
+    }
+    return classFile;
+  }
+
+  /**
+   * Same as {@link #getClassFile(String, ClassLoader)} != null, without reading
+   * the class file.
+   *
+   * @param className   binary name of the class
+   * @param classLoader the class loader used when the class is not in the cache
+   * @return true if the class loader knows the class
+   */
+  public boolean isClass(String className, ClassLoader classLoader) {
+    return isClass(className, classLoader, null);
+  }
+
+  /**
+   * Same as {@link #isClass(String, ClassLoader)}, recorded as a
+   * {@link ClassLookupEvent} of the jsp.
+   *
+   * @param jspUri the jsp or tag file being compiled, or null if several are
+   *               compiled together
+   */
+  public boolean isClass(String className, ClassLoader classLoader, String jspUri) {
+    ClassLookupEvent event = new ClassLookupEvent();
+    event.begin();
+    boolean exists = lookupClass(className, classLoader, event);
+    if (event.shouldCommit()) {
+      event.jsp = jspUri;
+      event.className = className;
+      event.found = exists;
+      event.commit();
+    }
+    return exists;
+  }
+
+  private boolean lookupClass(String className, ClassLoader classLoader, ClassLookupEvent event) {
+    if (entries.containsKey(className) || existingClasses.contains(className)) {
+      hit(event);
+      return true;
+    }
+    if (missingClasses.contains(className)) {
+      hit(event);
+      return false;
+    }
+
+    boolean cacheable = isCacheable(className);
+    if (cacheable && classpathIndex != null) {
+      if (classpathIndex.containsClass(className)) {
+        hit(event);
+        existingClasses.add(className);
+        return true;
+      }
+      if (classpathIndex.isMissingClass(className)) {
+        hit(event);
+        missingClasses.add(className);
+        return false;
+      }
+    }
+
+    misses.increment();
+    boolean exists = classLoader.getResource(toResourceName(className)) != null;
+    if (cacheable) {
+      (exists ? existingClasses : missingClasses).add(className);
+    }
+    return exists;
+  }
+
+  private void hit(ClassLookupEvent event) {
+    hits.increment();
+    event.hit = true;
+  }
+
+  private static String toResourceName(String className) {
+    return className.replace('.', '/') + ".class";
+  }
+
+  private boolean isCacheable(String className) {
+    for (String excludedPackage : excludedPackages) {
+      if (className.startsWith(excludedPackage + ".")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Remove the least recently used classes until the cache is 3/4 full, so that
+   * the eviction does not happen again at the next class.
+   */
+  private synchronized void evict() {
+    if (size.get() <= maxSize) {
+      return;
+    }
+    // the access times are copied since other threads keep updating them
+    List<Entry> candidates = new ArrayList<>(entries.values());
+    Map<Entry, Long> lastAccesses = new IdentityHashMap<>();
+    candidates.forEach(entry -> lastAccesses.put(entry, entry.lastAccess));
+    candidates.sort(Comparator.comparingLong(lastAccesses::get));
+    long target = maxSize / 4 * 3;
+    for (Entry entry : candidates) {
+      if (size.get() <= target) {
+        break;
+      }
+      if (entries.remove(entry.className, entry)) {
+        size.addAndGet(-entry.size);
+      }
+    }
+  }
+
+  /**
+   * @return the number of classes in the cache
+   */
+  public int getClassCount() {
+    return entries.size();
+  }
+
+  /**
+   * @return the total size in bytes of the class files in the cache
+   */
+  public long getSize() {
+    return size.get();
+  }
+
+  /**
+   * @return the number of lookups answered by the cache or the classpath index
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return the number of lookups which needed the class loader
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  private static class Entry {
+
+    private final String className;
+    private final ClassFileReader classFile;
+    private final int size;
+    private volatile long lastAccess;
+
+    Entry(String className, ClassFileReader classFile, int size, long lastAccess) {
+      this.className = className;
+      this.classFile = classFile;
+      this.size = size;
+      this.lastAccess = lastAccess;
+    }
+  }
+}
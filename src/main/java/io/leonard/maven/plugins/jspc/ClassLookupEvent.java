@@ -0,0 +1,41 @@
+package io.leonard.maven.plugins.jspc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a lookup of a class of the classpath by JDT, through
+ * the {@link ClassFileCache}. There are thousands of them per build, so it is
+ * disabled unless enabled explicitly in the recording settings.
+ */
+@Name("io.leonard.jspc.ClassLookup")
+@Label("Class Lookup")
+@Category("JSPC")
+@Description("Lookup of a class of the classpath by JDT")
+@StackTrace(false)
+@Enabled(false)
+public class ClassLookupEvent extends Event {
+
+  @Label("JSP")
+  @Description("The jsp or tag file being compiled, empty when several are compiled together")
+  String jsp;
+
+  @Label("Class Name")
+  String className;
+
+  @Label("Class File Read")
+  @Description("True if the class file was looked up, false if only the existence of the class was")
+  boolean classFile;
+
+  @Label("Cache Hit")
+  @Description("True if the answer came from the cache or the classpath index, false if from the class loader")
+  boolean hit;
+
+  @Label("Found")
+  boolean found;
+}
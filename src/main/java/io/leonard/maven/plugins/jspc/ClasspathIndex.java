@@ -0,0 +1,252 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * Index of the classes, packages and tlds of the jars and directories of a
+ * class loader and of its parents, built once at the beginning of the build.
+ * <p>
+ * Jars are indexed from their central directory, without reading their
+ * entries; jars and directories are indexed in parallel. Afterwards, knowing if
+ * a class exists or which jars contain a tld does not need to walk the
+ * classpath anymore.
+ * <p>
+ * The index only knows the class loaders based on urls, plus the
+ * WEB-INF/classes directory and WEB-INF/lib jars which JspC adds to the class
+ * loader of the jsps. It never claims that a class does not exist when its
+ * package is also provided by the JDK or is not found in the indexed jars and
+ * directories, so that the class loader can still be asked in those cases.
+ * <p>
+ * Jars are identified by their absolute path. The jar scan filter of the tld
+ * scan only knows their file name though, a name is only known to have no tld
+ * when none of the indexed jars with this name has one.
+ */
+public class ClasspathIndex implements Closeable {
+
+  private final Map<String, Source> classes = new HashMap<>();
+  private final Set<String> packages = new HashSet<>();
+  private final Set<String> bootPackages = new HashSet<>();
+  private final Map<String, Boolean> jarsWithTld = new HashMap<>();
+  private final Map<String, Boolean> jarNamesWithoutTld = new HashMap<>();
+  private final List<Source> sources = new ArrayList<>();
+
+  private ClasspathIndex() {
+    ModuleLayer.boot().modules().forEach(module -> bootPackages.addAll(module.getPackages()));
+  }
+
+  /**
+   * @param classLoader the class loader to index, with its parents
+   * @return the index
+   */
+  public static ClasspathIndex build(ClassLoader classLoader) {
+    return build(classLoader, Collections.emptyList());
+  }
+
+  /**
+   * @param classLoader the class loader to index, with its parents
+   * @param webAppUrls  the WEB-INF/classes directory and WEB-INF/lib jars of the
+   *                    webapp, which come after the class loader
+   * @return the index
+   */
+  public static ClasspathIndex build(ClassLoader classLoader, List<URL> webAppUrls) {
+    // parents first, since they are the ones which answer first
+    List<URL> urls = new ArrayList<>();
+    for (ClassLoader loader = classLoader; loader != null; loader = loader.getParent()) {
+      if (loader instanceof URLClassLoader) {
+        List<URL> loaderUrls = new ArrayList<>();
+        Collections.addAll(loaderUrls, ((URLClassLoader) loader).getURLs());
+        urls.addAll(0, loaderUrls);
+      }
+    }
+    urls.addAll(webAppUrls);
+
+    List<Source> sources = urls.stream().distinct().parallel().map(ClasspathIndex::toFile).map(Source::open)
+        .collect(Collectors.toList());
+    ClasspathIndex index = new ClasspathIndex();
+    for (Source source : sources) {
+      if (source == null) {
+        continue;
+      }
+      index.sources.add(source);
+      for (String className : source.classNames) {
+        index.classes.putIfAbsent(className, source);
+        index.packages.add(getPackageName(className));
+      }
+      if (source.jar != null) {
+        index.jarsWithTld.put(source.file.getAbsolutePath(), source.containsTld);
+        index.jarNamesWithoutTld.merge(source.file.getName(), !source.containsTld, Boolean::logicalAnd);
+      }
+    }
+    return index;
+  }
+
+  private static File toFile(URL url) {
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return new File(url.getFile());
+    }
+  }
+
+  private static String getPackageName(String className) {
+    int dot = className.lastIndexOf('.');
+    return dot < 0 ? "" : className.substring(0, dot);
+  }
+
+  /**
+   * @param className binary name of a class
+   * @return true if the class is in one of the indexed jars or directories
+   */
+  public boolean containsClass(String className) {
+    return classes.containsKey(className);
+  }
+
+  /**
+   * @param className binary name of a class
+   * @return true if the index is sure that the class does not exist, false if it
+   *         exists or if the class loader must be asked
+   */
+  public boolean isMissingClass(String className) {
+    String packageName = getPackageName(className);
+    return packages.contains(packageName) && !bootPackages.contains(packageName) && !classes.containsKey(className);
+  }
+
+  /**
+   * @param className binary name of a class
+   * @return the content of the class file, or null if the class is not in one of
+   *         the indexed jars or directories
+   * @throws IOException if the class file cannot be read
+   */
+  public byte[] readClass(String className) throws IOException {
+    Source source = classes.get(className);
+    return source == null ? null : source.read(className.replace('.', '/') + ".class");
+  }
+
+  /**
+   * @param jar a jar
+   * @return true if the jar has been indexed
+   */
+  public boolean containsJar(File jar) {
+    return jarsWithTld.containsKey(jar.getAbsolutePath());
+  }
+
+  /**
+   * @param jar a jar
+   * @return true if the jar has been indexed and contains a tld in META-INF
+   */
+  public boolean containsTld(File jar) {
+    return Boolean.TRUE.equals(jarsWithTld.get(jar.getAbsolutePath()));
+  }
+
+  /**
+   * @param jarName file name of a jar
+   * @return true if some indexed jars have this name and none of them contains
+   *         a tld in META-INF
+   */
+  public boolean isJarWithoutTld(String jarName) {
+    return Boolean.TRUE.equals(jarNamesWithoutTld.get(jarName));
+  }
+
+  /**
+   * @return the number of indexed classes
+   */
+  public int getClassCount() {
+    return classes.size();
+  }
+
+  /**
+   * @return the number of indexed jars and directories
+   */
+  public int getSourceCount() {
+    return sources.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (Source source : sources) {
+      if (source.jar != null) {
+        source.jar.close();
+      }
+    }
+  }
+
+  /**
+   * A jar or a directory of the classpath.
+   */
+  private static final class Source {
+
+    private final File file;
+    private final JarFile jar;
+    private final List<String> classNames = new ArrayList<>();
+    private boolean containsTld;
+
+    private Source(File file, JarFile jar) {
+      this.file = file;
+      this.jar = jar;
+    }
+
+    static Source open(File file) {
+      try {
+        if (file.isFile()) {
+          JarFile jar = new JarFile(file, false, ZipFile.OPEN_READ, Runtime.version());
+          Source source = new Source(file, jar);
+          jar.versionedStream().map(JarEntry::getName).forEach(source::addEntry);
+          return source;
+        } else if (file.isDirectory()) {
+          Source source = new Source(file, null);
+          Path root = file.toPath();
+          try (Stream<Path> walk = Files.walk(root)) {
+            walk.filter(Files::isRegularFile)
+                .forEach(path -> source.addEntry(root.relativize(path).toString().replace(File.separatorChar, '/')));
+          }
+          return source;
+        }
+      } catch (IOException e) {
+        // not indexed, the class loader will be asked
+      }
+      return null;
+    }
+
+    private void addEntry(String name) {
+      if (name.endsWith(".class") && !name.equals("module-info.class") && !name.endsWith("/module-info.class")
+          && !name.startsWith("META-INF/")) {
+        classNames.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+      } else if (name.startsWith("META-INF/") && name.endsWith(".tld")) {
+        containsTld = true;
+      }
+    }
+
+    byte[] read(String resourceName) throws IOException {
+      if (jar != null) {
+        JarEntry entry = jar.getJarEntry(resourceName);
+        if (entry == null) {
+          return null;
+        }
+        try (InputStream is = jar.getInputStream(entry)) {
+          return is.readAllBytes();
+        }
+      }
+      return Files.readAllBytes(new File(file, resourceName).toPath());
+    }
+  }
+}
@@ -0,0 +1,155 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compile time of every jsp measured by the previous builds, used to compile the
+ * most costly jsps first (longest processing time first scheduling) so that they
+ * do not end up alone at the end of the build.
+ * <p>
+ * The history is stored as a tab separated text file, one
+ * <code>&lt;jspUri&gt; &lt;milliseconds&gt;</code> line per jsp.
+ */
+public class CompileHistory {
+
+  private static final String HEADER = "# jspc-maven-plugin compile times, do not edit";
+  private static final Pattern INCLUDE_DIRECTIVE = Pattern
+      .compile("<%@\\s*include\\s|<jsp:directive\\.include\\s|<jsp:include\\s");
+
+  // number of measured jsps read to scale the estimates to milliseconds
+  private static final int SCALE_SAMPLES = 32;
+
+  private final Map<String, Long> compileTimes = new TreeMap<>();
+
+  public Long getCompileTime(String jspUri) {
+    return compileTimes.get(jspUri);
+  }
+
+  /**
+   * @param file the file where a previous build saved the history
+   * @return the history read from the file, empty if the file does not exist or
+   *         cannot be read
+   */
+  public static CompileHistory load(File file) {
+    CompileHistory history = new CompileHistory();
+    if (!file.isFile()) {
+      return history;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split("\t");
+        history.compileTimes.put(fields[0], Long.valueOf(fields[1]));
+      }
+    } catch (IOException | RuntimeException e) {
+      // without history the costs are only estimated
+      history.compileTimes.clear();
+    }
+    return history;
+  }
+
+  /**
+   * Sort the jsps by decreasing cost. The cost of a jsp is its compile time
+   * during a previous build. For the jsps never compiled before, it is estimated
+   * from the size of the jsp and its number of includes, scaled with a sample of
+   * the jsps which have a compile time. Only the sources of these jsps are read.
+   *
+   * @param jspUris               the jsps to sort
+   * @param webAppSourceDirectory root directory of the webapp
+   */
+  public void sortByDecreasingCost(List<String> jspUris, File webAppSourceDirectory) {
+    Map<String, Double> costs = new HashMap<>();
+    Map<String, Long> estimates = new HashMap<>();
+    for (String jspUri : jspUris) {
+      Long compileTime = compileTimes.get(jspUri);
+      if (compileTime == null) {
+        estimates.put(jspUri, estimateCost(new File(webAppSourceDirectory, jspUri)));
+      } else {
+        costs.put(jspUri, (double) compileTime);
+      }
+    }
+    long measuredTime = 0;
+    long measuredEstimate = 0;
+    int samples = 0;
+    if (!estimates.isEmpty()) {
+      for (String jspUri : jspUris) {
+        Long compileTime = compileTimes.get(jspUri);
+        if (compileTime != null && samples < SCALE_SAMPLES) {
+          measuredTime += compileTime;
+          measuredEstimate += estimateCost(new File(webAppSourceDirectory, jspUri));
+          samples++;
+        }
+      }
+    }
+    double millisPerUnit = measuredTime > 0 && measuredEstimate > 0 ? (double) measuredTime / measuredEstimate : 1;
+    for (Map.Entry<String, Long> estimate : estimates.entrySet()) {
+      costs.put(estimate.getKey(), estimate.getValue() * millisPerUnit);
+    }
+    jspUris.sort(Comparator.comparing(costs::get).reversed());
+  }
+
+  /**
+   * @param jsp a jsp
+   * @return an estimation of the compilation cost of the jsp, in no particular
+   *         unit
+   */
+  static long estimateCost(File jsp) {
+    try {
+      String source = new String(Files.readAllBytes(jsp.toPath()), StandardCharsets.ISO_8859_1);
+      int includes = 0;
+      Matcher matcher = INCLUDE_DIRECTIVE.matcher(source);
+      while (matcher.find()) {
+        includes++;
+      }
+      return source.length() * (1L + includes);
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * @param measuredTimes the compile times measured by this build
+   * @param jspUris       all the jsps of the webapp, the others are forgotten
+   */
+  public void update(Map<String, Long> measuredTimes, Collection<String> jspUris) {
+    compileTimes.putAll(measuredTimes);
+    compileTimes.keySet().retainAll(jspUris);
+  }
+
+  /**
+   * @param file the file where to save the history
+   * @throws IOException if the history cannot be written
+   */
+  public void save(File file) throws IOException {
+    Path target = file.toPath();
+    Files.createDirectories(target.getParent());
+    Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      writer.write(HEADER);
+      writer.newLine();
+      for (Map.Entry<String, Long> compileTime : compileTimes.entrySet()) {
+        writer.write(compileTime.getKey() + "\t" + compileTime.getValue());
+        writer.newLine();
+      }
+    }
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+}
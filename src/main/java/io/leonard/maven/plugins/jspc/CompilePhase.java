@@ -0,0 +1,46 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.util.Locale;
+
+/**
+ * The phases of the compilation of a jsp timed by the compilers of the plugin.
+ * The compiler of Tomcat is not timed by phase.
+ */
+public enum CompilePhase {
+
+  /**
+   * Parse and validation of the jsp, including the compilation of the tag files
+   * it needs the first time. Only timed apart from the generation by
+   * "org.apache.jasper.compiler.ParallelJDTCompiler" when the sources are kept
+   * in memory.
+   */
+  PARSE,
+
+  /**
+   * Generation of the java source of the servlet, including the parse when it
+   * is not timed apart.
+   */
+  GENERATE,
+
+  /**
+   * Compilation of the java source by JDT.
+   */
+  COMPILE,
+
+  /**
+   * Write of the class files.
+   */
+  WRITE,
+
+  /**
+   * Installation of the smaps in the class files.
+   */
+  SMAP;
+
+  /**
+   * @return the name of the phase in the timing report
+   */
+  public String getLabel() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+}
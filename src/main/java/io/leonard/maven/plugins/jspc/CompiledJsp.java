@@ -0,0 +1,79 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * What is known about a jsp once it has been compiled: the servlet generated for
+ * it, the class file written and the files it depends on (static includes, tag
+ * files and tlds) with their last modification time.
+ */
+public class CompiledJsp {
+
+  private final String jspUri;
+  private final String servletName;
+  private final String classFile;
+  private final long lastModified;
+  private final Map<String, Long> dependencies;
+
+  public CompiledJsp(String jspUri, String servletName, String classFile, long lastModified,
+      Map<String, Long> dependencies) {
+    this.jspUri = jspUri;
+    this.servletName = servletName;
+    this.classFile = classFile;
+    this.lastModified = lastModified;
+    this.dependencies = Collections.unmodifiableMap(new LinkedHashMap<>(dependencies));
+  }
+
+  public String getJspUri() {
+    return jspUri;
+  }
+
+  public String getServletName() {
+    return servletName;
+  }
+
+  public String getClassFile() {
+    return classFile;
+  }
+
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * @return the dependencies of the jsp, keyed by their path as reported by
+   *         Jasper ("/WEB-INF/tags/foo.tag" for files of the webapp, an url for
+   *         resources found in jars)
+   */
+  public Map<String, Long> getDependencies() {
+    return dependencies;
+  }
+
+  /**
+   * A jsp is up to date when its class file still exists and neither the jsp
+   * nor any of the files of the webapp it depends on have been modified. Resources
+   * found in jars are not checked here, they are covered by the classpath
+   * fingerprint of the {@link BuildState}.
+   *
+   * @param webAppSourceDirectory root directory of the webapp
+   * @return true if the jsp does not need to be compiled again
+   */
+  public boolean isUpToDate(File webAppSourceDirectory) {
+    if (!new File(classFile).exists()) {
+      return false;
+    }
+    if (new File(webAppSourceDirectory, jspUri).lastModified() != lastModified) {
+      return false;
+    }
+    for (Map.Entry<String, Long> dependency : dependencies.entrySet()) {
+      String path = dependency.getKey();
+      if (path.startsWith("/") && new File(webAppSourceDirectory, path).lastModified() != dependency.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
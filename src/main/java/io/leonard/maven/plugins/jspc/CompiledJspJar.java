@@ -0,0 +1,114 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.*;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * A jar where the classes of the compiled jsps are written instead of the
+ * output directory, so that the build writes a single file instead of one per
+ * class and smap.
+ * <p>
+ * All the compiling threads write in it, one entry at a time, so the jar is
+ * written sequentially. The files which must stay in the output directory
+ * during the build, like the classes of the tag files which are loaded by the
+ * jsps using them, are moved in the jar when it is closed.
+ */
+public class CompiledJspJar implements Closeable {
+
+  private final File file;
+
+  private final Path classesDirectory;
+
+  private final boolean compressed;
+
+  private final JarOutputStream out;
+
+  private final Set<String> entryNames = new HashSet<>();
+
+  private final Set<File> filesToMove = new LinkedHashSet<>();
+
+  /**
+   * @param file             the jar to write
+   * @param classesDirectory the output directory of the compiler, the entries
+   *                         are named after their path in it
+   * @param compressed       false to store the entries without compression
+   */
+  public CompiledJspJar(File file, File classesDirectory, boolean compressed) throws IOException {
+    this.file = file;
+    this.classesDirectory = classesDirectory.getAbsoluteFile().toPath().normalize();
+    this.compressed = compressed;
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Unable to create the directory " + parent);
+    }
+    Manifest manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    this.out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024), manifest);
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * @param path    the path of the file in the output directory
+   * @param content the content of the file
+   */
+  public synchronized void write(String path, byte[] content) throws IOException {
+    String name = getEntryName(path);
+    JarEntry entry = new JarEntry(name);
+    if (!compressed) {
+      CRC32 crc = new CRC32();
+      crc.update(content);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(content.length);
+      entry.setCompressedSize(content.length);
+      entry.setCrc(crc.getValue());
+    }
+    out.putNextEntry(entry);
+    out.write(content);
+    out.closeEntry();
+    entryNames.add(name);
+  }
+
+  /**
+   * Write a file of the output directory in the jar, then delete it.
+   */
+  public void move(File file) throws IOException {
+    write(file.getPath(), Files.readAllBytes(file.toPath()));
+    Files.delete(file.toPath());
+  }
+
+  /**
+   * Move a file of the output directory in the jar when the jar is closed, if
+   * the file still exists then.
+   */
+  public synchronized void moveOnClose(File file) {
+    filesToMove.add(file);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    try {
+      for (File fileToMove : filesToMove) {
+        if (fileToMove.exists() && !entryNames.contains(getEntryName(fileToMove.getPath()))) {
+          move(fileToMove);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private String getEntryName(String path) throws IOException {
+    Path filePath = Paths.get(path).toAbsolutePath().normalize();
+    if (!filePath.startsWith(classesDirectory)) {
+      throw new IOException(path + " is not in " + classesDirectory);
+    }
+    return classesDirectory.relativize(filePath).toString().replace(File.separatorChar, '/');
+  }
+}
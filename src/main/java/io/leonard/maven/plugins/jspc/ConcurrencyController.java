@@ -0,0 +1,210 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.function.IntSupplier;
+
+/**
+ * Number of workers allowed to take jsps from the queue when threads is "auto".
+ * <p>
+ * A worker is started per available processor, which the JVM limits to the CPU
+ * quota of a container, but only the first active workers take jsps while the
+ * others wait. Half of them are active at first. Then, each time
+ * {@link #adjust()} is called, the throughput of the jsps, the CPU used by the
+ * process and the time spent in GC since the previous call are measured, and
+ * the number of active workers changes by one at most:
+ * <ul>
+ * <li>a worker is removed when the GC takes more than 20% of the time</li>
+ * <li>the last added worker is removed if it did not improve the throughput by
+ * 5%, it only added contention, and no worker is added for a few periods</li>
+ * <li>the last removed worker is added back if the throughput fell by 5%
+ * without it</li>
+ * <li>otherwise a worker is added while the process uses less than 90% of the
+ * available processors</li>
+ * </ul>
+ */
+public class ConcurrencyController {
+
+  static final double MIN_GAIN = 0.05;
+
+  static final double MAX_GC_OVERHEAD = 0.2;
+
+  static final double MAX_CPU_LOAD = 0.9;
+
+  static final int HOLD_PERIODS = 5;
+
+  private static final long WAIT_MILLIS = 100;
+
+  private final int maxWorkers;
+
+  private final IntSupplier processed;
+
+  private final com.sun.management.OperatingSystemMXBean os = getOperatingSystemMXBean();
+
+  private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+  private volatile int activeWorkers;
+
+  private int minActiveWorkers;
+
+  private int maxActiveWorkers;
+
+  /**
+   * 1 if the last change added a worker, -1 if it removed one, 0 otherwise.
+   */
+  private int direction;
+
+  private int holdPeriods;
+
+  private double previousThroughput = -1;
+
+  private long lastTime = System.nanoTime();
+
+  private int lastProcessed;
+
+  private long lastCpuTime = getCpuTime();
+
+  private long lastGcTime = getGcTime();
+
+  /**
+   * @param maxWorkers the number of workers started
+   * @param processed  the number of jsps processed so far
+   */
+  public ConcurrencyController(int maxWorkers, IntSupplier processed) {
+    this.maxWorkers = maxWorkers;
+    this.processed = processed;
+    this.activeWorkers = Math.max(1, maxWorkers / 2);
+    this.minActiveWorkers = activeWorkers;
+    this.maxActiveWorkers = activeWorkers;
+  }
+
+  /**
+   * @return the number of workers to start: the available processors, which the
+   *         JVM limits to the CPU quota of a container
+   */
+  public static int getAvailableProcessors() {
+    return Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Wait until the worker is active, or until there is no jsp left to take.
+   *
+   * @param thread the number of the worker, from 1
+   * @param jsps   the queue of the jsps
+   */
+  public synchronized void awaitActive(int thread, Queue<String> jsps) throws InterruptedException {
+    while (thread > activeWorkers && !jsps.isEmpty()) {
+      wait(WAIT_MILLIS);
+    }
+  }
+
+  /**
+   * Measure the period since the previous call and change the number of active
+   * workers if needed.
+   *
+   * @return the change made, for the log, or null if nothing changed
+   */
+  public String adjust() {
+    long now = System.nanoTime();
+    int done = processed.getAsInt();
+    long cpuTime = getCpuTime();
+    long gcTime = getGcTime();
+    double seconds = (now - lastTime) / 1e9;
+    if (seconds <= 0) {
+      return null;
+    }
+    double throughput = (done - lastProcessed) / seconds;
+    double cpuLoad = cpuTime >= 0 && lastCpuTime >= 0
+        ? (cpuTime - lastCpuTime) / 1e9 / seconds / getAvailableProcessors()
+        : 0;
+    double gcOverhead = (gcTime - lastGcTime) / 1e3 / seconds;
+    lastTime = now;
+    lastProcessed = done;
+    lastCpuTime = cpuTime;
+    lastGcTime = gcTime;
+    return adjust(throughput, cpuLoad, gcOverhead);
+  }
+
+  /**
+   * @param throughput the jsps processed per second during the period
+   * @param cpuLoad    the share of the available processors used by the process
+   * @param gcOverhead the share of the time spent in GC
+   * @return the change made, for the log, or null if nothing changed
+   */
+  synchronized String adjust(double throughput, double cpuLoad, double gcOverhead) {
+    int previousWorkers = activeWorkers;
+    String reason = null;
+    if (gcOverhead > MAX_GC_OVERHEAD && activeWorkers > 1) {
+      setActiveWorkers(activeWorkers - 1);
+      direction = 0;
+      holdPeriods = HOLD_PERIODS;
+      reason = "too much time in GC";
+    } else if (direction > 0 && throughput < previousThroughput * (1 + MIN_GAIN)) {
+      setActiveWorkers(activeWorkers - 1);
+      direction = 0;
+      holdPeriods = HOLD_PERIODS;
+      reason = "no gain of throughput";
+    } else if (direction < 0 && throughput < previousThroughput * (1 - MIN_GAIN)) {
+      setActiveWorkers(activeWorkers + 1);
+      direction = 0;
+      holdPeriods = HOLD_PERIODS;
+      reason = "loss of throughput";
+    } else if (holdPeriods > 0) {
+      holdPeriods--;
+      direction = 0;
+    } else if (cpuLoad < MAX_CPU_LOAD && activeWorkers < maxWorkers) {
+      setActiveWorkers(activeWorkers + 1);
+      direction = 1;
+      reason = "processors available";
+    } else {
+      direction = 0;
+    }
+    previousThroughput = throughput;
+    if (reason == null) {
+      return null;
+    }
+    return String.format(Locale.ROOT, "Active threads %d -> %d (%s): %.1f jsps/sec, cpu %.0f%%, gc %.0f%%",
+        previousWorkers, activeWorkers, reason, throughput, cpuLoad * 100, gcOverhead * 100);
+  }
+
+  private void setActiveWorkers(int activeWorkers) {
+    this.activeWorkers = activeWorkers;
+    minActiveWorkers = Math.min(minActiveWorkers, activeWorkers);
+    maxActiveWorkers = Math.max(maxActiveWorkers, activeWorkers);
+    notifyAll();
+  }
+
+  public int getActiveWorkers() {
+    return activeWorkers;
+  }
+
+  /**
+   * @return the number of active workers, and the range it took during the build
+   */
+  public synchronized String getSummary() {
+    return "Active threads : " + activeWorkers + " of " + maxWorkers + " at the end, between " + minActiveWorkers
+        + " and " + maxActiveWorkers + " during the build";
+  }
+
+  private long getCpuTime() {
+    return os != null ? os.getProcessCpuTime() : -1;
+  }
+
+  private long getGcTime() {
+    long total = 0;
+    for (GarbageCollectorMXBean collector : collectors) {
+      total += Math.max(collector.getCollectionTime(), 0);
+    }
+    return total;
+  }
+
+  private static com.sun.management.OperatingSystemMXBean getOperatingSystemMXBean() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    return os instanceof com.sun.management.OperatingSystemMXBean ? (com.sun.management.OperatingSystemMXBean) os
+        : null;
+  }
+}
@@ -0,0 +1,145 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The hashes of the files of the classpath computed by a previous build. A file
+ * is identified by its path, size and last modification time, a file which
+ * changed is hashed again, so that an unchanged classpath only costs a stat of
+ * each file.
+ * <p>
+ * The index is stored as a tab separated text file:
+ *
+ * <pre>
+ * file &lt;path&gt; &lt;size&gt; &lt;lastModified&gt; &lt;hash&gt;
+ * </pre>
+ *
+ * Only the files hashed by the last build are kept.
+ */
+public class FileHashIndex {
+
+  private static final String HEADER = "# jspc-maven-plugin file hashes, do not edit";
+  private static final String FILE = "file";
+
+  private final Map<String, IndexedFile> previousFiles = new LinkedHashMap<>();
+  private final Map<String, IndexedFile> files = new LinkedHashMap<>();
+  private int hits;
+  private int misses;
+
+  /**
+   * @param file a file of the classpath
+   * @return an hexadecimal SHA-256 digest of the content of the file, read from
+   *         the index if the file did not change since it was hashed
+   * @throws IOException if the file cannot be read
+   */
+  public synchronized String hash(Path file) throws IOException {
+    String path = file.toAbsolutePath().toString();
+    long size = Files.size(file);
+    long lastModified = Files.getLastModifiedTime(file).toMillis();
+    IndexedFile previousFile = previousFiles.get(path);
+    IndexedFile indexedFile;
+    if (previousFile != null && previousFile.size == size && previousFile.lastModified == lastModified) {
+      indexedFile = previousFile;
+      hits++;
+    } else {
+      indexedFile = new IndexedFile(size, lastModified, BuildCache.hash(file.toFile()));
+      misses++;
+    }
+    files.put(path, indexedFile);
+    return indexedFile.hash;
+  }
+
+  /**
+   * @return the number of hashes found in the index
+   */
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of files which had to be hashed
+   */
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  /**
+   * @param file the file where a previous build saved its index
+   * @return the index read from the file, or an empty index if the file does not
+   *         exist or cannot be read
+   */
+  public static FileHashIndex load(File file) {
+    FileHashIndex index = new FileHashIndex();
+    if (!file.isFile()) {
+      return index;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] fields = line.split("\t", -1);
+        if (FILE.equals(fields[0])) {
+          index.previousFiles.put(TldIndex.unescape(fields[1]),
+              new IndexedFile(Long.parseLong(fields[2]), Long.parseLong(fields[3]), fields[4]));
+        }
+      }
+      return index;
+    } catch (IOException | RuntimeException e) {
+      // a corrupted index only means that the files are hashed again
+      return new FileHashIndex();
+    }
+  }
+
+  /**
+   * Write the hashes of the files used by this build, in a temporary file first
+   * so that concurrent builds never read a truncated index.
+   *
+   * @param file the file where to save the index
+   * @throws IOException if the index cannot be written
+   */
+  public synchronized void save(File file) throws IOException {
+    Path target = file.toPath();
+    Files.createDirectories(target.getParent());
+    Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+    try {
+      try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        writer.write(HEADER);
+        writer.newLine();
+        for (Map.Entry<String, IndexedFile> indexedFile : files.entrySet()) {
+          writer.write(String.join("\t", FILE, TldIndex.escape(indexedFile.getKey()),
+              String.valueOf(indexedFile.getValue().size), String.valueOf(indexedFile.getValue().lastModified),
+              indexedFile.getValue().hash));
+          writer.newLine();
+        }
+      }
+      Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  /**
+   * The hash of a file, with the size and last modification time of the file
+   * when it was hashed.
+   */
+  private static final class IndexedFile {
+
+    private final long size;
+    private final long lastModified;
+    private final String hash;
+
+    IndexedFile(long size, long lastModified, String hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package io.leonard.maven.plugins.jspc;
+
+import org.apache.tomcat.JarScanFilter;
+import org.apache.tomcat.JarScanType;
+
+/**
+ * Skip the jars which the {@link ClasspathIndex} knows to have no tld, so that
+ * the tld scan does not open them again. The other jars are filtered by the
+ * configured filter.
+ */
+public class IndexedJarScanFilter implements JarScanFilter {
+
+  private final ClasspathIndex classpathIndex;
+  private final JarScanFilter filter;
+
+  public IndexedJarScanFilter(ClasspathIndex classpathIndex, JarScanFilter filter) {
+    this.classpathIndex = classpathIndex;
+    this.filter = filter;
+  }
+
+  @Override
+  public boolean check(JarScanType jarScanType, String jarName) {
+    if (jarScanType == JarScanType.TLD && classpathIndex.isJarWithoutTld(jarName)) {
+      return false;
+    }
+    return filter.check(jarScanType, jarName);
+  }
+
+  @Override
+  public boolean isSkipAll() {
+    return filter.isSkipAll();
+  }
+}
@@ -0,0 +1,82 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+import jakarta.servlet.ServletContext;
+
+import org.apache.tomcat.util.descriptor.tld.TaglibXml;
+import org.apache.tomcat.util.descriptor.tld.TldResourcePath;
+import org.xml.sax.SAXException;
+
+/**
+ * Scans the tlds as Tomcat does, but takes the tlds of the jars from the
+ * {@link TldIndex} of the previous build instead of parsing them again when the
+ * jars did not change. The jars to scan are still chosen by the jar scanner, so
+ * tldSkip, tldScan and defaultTldScan apply as usual. The tlds of the webapp
+ * are always parsed.
+ */
+public class IndexedTldScanner extends RecordedTldScanner {
+
+  private final TldIndex tldIndex;
+
+  public IndexedTldScanner(ServletContext context, boolean namespaceAware, boolean validation,
+      boolean blockExternal, TldIndex tldIndex) {
+    super(context, namespaceAware, validation, blockExternal);
+    this.tldIndex = tldIndex;
+  }
+
+  /**
+   * Same as {@link org.apache.jasper.servlet.TldScanner#parseTld(TldResourcePath)}, except that the tld of
+   * an unchanged jar comes from the index.
+   */
+  @Override
+  protected void parseTld(TldResourcePath path) throws IOException, SAXException {
+    File jar = path.getEntryName() == null ? null : toFile(path.getUrl());
+    if (jar == null || !jar.isFile()) {
+      super.parseTld(path);
+      return;
+    }
+    TaglibXml tld = tldIndex.get(jar, path.getEntryName());
+    if (tld == null) {
+      super.parseTld(path);
+      tld = getTldResourcePathTaglibXmlMap().get(path);
+      if (tld != null) {
+        tldIndex.put(jar, path.getEntryName(), tld);
+      }
+      return;
+    }
+    if (tld.getUri() != null) {
+      getUriTldResourcePathMap().putIfAbsent(tld.getUri(), path);
+    }
+    if (getTldResourcePathTaglibXmlMap().containsKey(path)) {
+      // TLD already seen
+      return;
+    }
+    getTldResourcePathTaglibXmlMap().put(path, tld);
+    getListeners().addAll(tld.getListeners());
+  }
+
+  @Override
+  protected long getIndexedTlds() {
+    return tldIndex.getHits();
+  }
+
+  @Override
+  protected long getParsedTlds() {
+    return tldIndex.getMisses();
+  }
+
+  private static File toFile(URL url) {
+    if (!"file".equals(url.getProtocol())) {
+      return null;
+    }
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return new File(url.getFile());
+    }
+  }
+}
@@ -1,20 +1,39 @@
 package io.leonard.maven.plugins.jspc;
 
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import org.apache.jasper.JasperException;
 import org.apache.jasper.JspC;
+import org.apache.jasper.JspCompilationContext;
+import org.apache.jasper.compiler.BatchCompilation;
+import org.apache.jasper.compiler.Compiler;
+import org.apache.jasper.compiler.JDTCompilerConfiguration;
+import org.apache.jasper.compiler.JDTCompilerSession;
 import org.apache.jasper.compiler.JspConfig;
-import org.apache.jasper.compiler.TldCache;
+import org.apache.jasper.compiler.Localizer;
+import org.apache.jasper.runtime.JspSourceDependent;
 import org.apache.jasper.servlet.JspCServletContext;
+import org.apache.jasper.servlet.TldScanner;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.JarScanner;
 import org.apache.tomcat.util.scan.StandardJarScanFilter;
 import org.apache.tomcat.util.scan.StandardJarScanner;
-import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
 
 public class JspCContextAccessor extends JspC {
 
-  private Map<String, NameEnvironmentAnswer> resourcesCache;
+  // same logger as JspC so that errors are seen by JspcWorker
+  private static final Log log = LogFactory.getLog(JspC.class);
+
+  private ClassFileCache resourcesCache;
   private String compilerClass;
 
   private String tldSkip;
@@ -23,6 +42,36 @@ public class JspCContextAccessor extends JspC {
 
   private Boolean defaultTldScan;
 
+  private boolean forceCompile;
+
+  private Map<String, CompiledJsp> compiledJsps;
+
+  private Collection<CompiledJsp> reusedJsps = Collections.emptyList();
+
+  private Map<String, Long> compileTimes;
+
+  private ClasspathIndex classpathIndex;
+
+  private TldIndex tldIndex;
+
+  private BatchCompilation batchCompilation;
+
+  private boolean sourcesInMemory;
+
+  private CompiledJspJar compiledJspJar;
+
+  private WebXmlMappings webXmlMappings;
+
+  private int workerIndex;
+
+  private JDTCompilerConfiguration compilerConfiguration;
+
+  private JDTCompilerSession compilerSession;
+
+  private JspTimings timings;
+
+  private long phaseStartAllocatedBytes = -1;
+
   public JspCContextAccessor() {
     super();
   }
@@ -44,11 +93,11 @@ public class JspCContextAccessor extends JspC {
     return this.loader;
   }
 
-  public Map<String, NameEnvironmentAnswer> getResourcesCache() {
+  public ClassFileCache getResourcesCache() {
     return resourcesCache;
   }
 
-  public void setResourcesCache(Map<String, NameEnvironmentAnswer> resourcesCache) {
+  public void setResourcesCache(ClassFileCache resourcesCache) {
     this.resourcesCache = resourcesCache;
   }
 
@@ -72,17 +121,342 @@ public class JspCContextAccessor extends JspC {
     this.defaultTldScan = defaultTldScan;
   }
 
-  protected void initContext(JspCContextAccessor topJspC) {
+  /**
+   * Compile the jsps even if their class file is newer than the jsp. Jasper only
+   * looks at the jsp itself, not at its includes.
+   */
+  public void setForceCompile(boolean forceCompile) {
+    this.forceCompile = forceCompile;
+  }
+
+  /**
+   * @param compiledJsps where to record the jsps compiled by this instance, keyed by
+   *                     jsp uri
+   */
+  public void setCompiledJsps(Map<String, CompiledJsp> compiledJsps) {
+    this.compiledJsps = compiledJsps;
+  }
+
+  /**
+   * @param reusedJsps jsps compiled by a previous build, which are not compiled
+   *                   again but must be declared in the web.xml fragment
+   */
+  public void setReusedJsps(Collection<CompiledJsp> reusedJsps) {
+    this.reusedJsps = reusedJsps;
+  }
+
+  /**
+   * @param webXmlMappings where the web.xml declarations of the compiled jsps
+   *                       are collected instead of being written in a web.xml
+   *                       fragment by each worker
+   * @param workerIndex    the index of the worker using this instance
+   */
+  public void setWebXmlMappings(WebXmlMappings webXmlMappings, int workerIndex) {
+    this.webXmlMappings = webXmlMappings;
+    this.workerIndex = workerIndex;
+  }
+
+  /**
+   * @param compileTimes where to record how long the compilation of each jsp
+   *                     took, in milliseconds, keyed by jsp uri
+   */
+  public void setCompileTimes(Map<String, Long> compileTimes) {
+    this.compileTimes = compileTimes;
+  }
+
+  /**
+   * @param classpathIndex index of the classpath, used to skip the jars without
+   *                       tld during the tld scan
+   */
+  public void setClasspathIndex(ClasspathIndex classpathIndex) {
+    this.classpathIndex = classpathIndex;
+  }
+
+  /**
+   * @param tldIndex the tlds of the jars parsed by the previous build, or null to
+   *                 parse all of them
+   */
+  public void setTldIndex(TldIndex tldIndex) {
+    this.tldIndex = tldIndex;
+  }
+
+  public BatchCompilation getBatchCompilation() {
+    return batchCompilation;
+  }
+
+  /**
+   * @param batchCompilation where "org.apache.jasper.compiler.BatchJDTCompiler"
+   *                         puts the generated servlets, compiled after all the
+   *                         jsps have been generated
+   */
+  public void setBatchCompilation(BatchCompilation batchCompilation) {
+    this.batchCompilation = batchCompilation;
+  }
+
+  public boolean isSourcesInMemory() {
+    return sourcesInMemory;
+  }
+
+  /**
+   * @param sourcesInMemory true if "org.apache.jasper.compiler.ParallelJDTCompiler"
+   *                        must compile the generated java sources without
+   *                        writing them
+   */
+  public void setSourcesInMemory(boolean sourcesInMemory) {
+    this.sourcesInMemory = sourcesInMemory;
+  }
+
+  public CompiledJspJar getCompiledJspJar() {
+    return compiledJspJar;
+  }
+
+  /**
+   * @param compiledJspJar the jar where the compilers of the plugin write the
+   *                       classes, or null to write them in the output directory
+   */
+  public void setCompiledJspJar(CompiledJspJar compiledJspJar) {
+    this.compiledJspJar = compiledJspJar;
+  }
+
+  /**
+   * @return the configuration of the JDT compiler, built from the options of
+   *         this instance at the first compilation and shared by the following
+   *         ones
+   */
+  public synchronized JDTCompilerConfiguration getCompilerConfiguration() {
+    if (compilerConfiguration == null) {
+      compilerConfiguration = new JDTCompilerConfiguration(this, log);
+    }
+    return compilerConfiguration;
+  }
+
+  /**
+   * @return the JDT compiler reused by the compilations of this instance, each
+   *         worker having its own
+   */
+  public synchronized JDTCompilerSession getCompilerSession() {
+    if (compilerSession == null) {
+      compilerSession = new JDTCompilerSession(getCompilerConfiguration());
+    }
+    return compilerSession;
+  }
+
+  /**
+   * @param timings the times of the jsp being processed by this instance, or
+   *                null when the jsps are not timed
+   */
+  public void setTimings(JspTimings timings) {
+    this.timings = timings;
+  }
+
+  /**
+   * Start a phase of the compilation of the jsp being processed: the bytes
+   * allocated by the thread are counted from now on.
+   *
+   * @param ctxt the compilation context of the jsp or tag file
+   * @return when the phase started, to give to
+   *         {@link #addPhaseTime(JspCompilationContext, CompilePhase, long)}
+   */
+  public long startPhase(JspCompilationContext ctxt) {
+    if (timings != null && !ctxt.isTagFile()) {
+      phaseStartAllocatedBytes = TimingReport.getAllocatedBytes();
+    }
+    return System.nanoTime();
+  }
+
+  /**
+   * Record the time of a phase of the compilation of the jsp being processed,
+   * and the bytes it allocated if it was started by
+   * {@link #startPhase(JspCompilationContext)}. The tag files compiled for the
+   * jsp are not timed by phase, their compilation is part of the phase of the
+   * jsp which needed them.
+   *
+   * @param ctxt  the compilation context of the jsp or tag file
+   * @param phase the phase
+   * @param start when the phase started, from {@link System#nanoTime()}
+   */
+  public void addPhaseTime(JspCompilationContext ctxt, CompilePhase phase, long start) {
+    if (timings != null && !ctxt.isTagFile()) {
+      timings.addPhase(phase, System.nanoTime() - start);
+      long allocatedBytes = TimingReport.getAllocatedBytes();
+      if (phaseStartAllocatedBytes >= 0 && allocatedBytes >= 0) {
+        timings.addPhaseAllocatedBytes(phase, allocatedBytes - phaseStartAllocatedBytes);
+      }
+      phaseStartAllocatedBytes = -1;
+    }
+  }
+
+  protected void initContext(JspCContextAccessor topJspC) throws IOException {
+    initClassLoader();
     this.context = topJspC.context;
+    // the tlds are scanned once by the top JspC, its scanner and cache are only
+    // read by the workers
     scanner = topJspC.scanner;
-
-    initTldScanner(context, getLoader());
-    tldCache = (TldCache) context.getAttribute(TldCache.SERVLET_CONTEXT_ATTRIBUTE_NAME);
+    tldCache = topJspC.tldCache;
+    // the runtime context keeps the wrappers of the tag files for all the
+    // workers: a tag file is compiled once per build, by the first worker which
+    // needs it while the others wait on the runtime context, then it is loaded
+    // from its class file
     rctxt = topJspC.rctxt;
     jspConfig = new JspConfig(context);
     tagPluginManager = topJspC.tagPluginManager;
   }
 
+  @Override
+  protected void initWebXml() throws JasperException {
+    if (webXmlMappings != null) {
+      // JspC only declares the jsps when it has somewhere to write them
+      mapout = Writer.nullWriter();
+      servletout = new CharArrayWriter();
+      mappingout = new CharArrayWriter();
+    } else {
+      super.initWebXml();
+    }
+    if (servletout == null) {
+      return;
+    }
+    for (CompiledJsp jsp : reusedJsps) {
+      // same layout as JspC#generateWebMapping
+      servletout.append("\n    <servlet>\n        <servlet-name>").append(jsp.getServletName())
+          .append("</servlet-name>\n        <servlet-class>").append(jsp.getServletName())
+          .append("</servlet-class>\n    </servlet>\n");
+      mappingout.append("\n    <servlet-mapping>\n        <servlet-name>").append(jsp.getServletName())
+          .append("</servlet-name>\n        <url-pattern>").append(jsp.getJspUri())
+          .append("</url-pattern>\n    </servlet-mapping>\n");
+      if (webXmlMappings != null) {
+        webXmlMappings.addServlet(workerIndex, jsp.getServletName(), jsp.getJspUri());
+      }
+    }
+  }
+
+  /**
+   * Same as {@link JspC#generateWebMapping(String, JspCompilationContext)}, the
+   * servlet is also added to the table of the servlets.
+   */
+  @Override
+  public void generateWebMapping(String file, JspCompilationContext clctxt) throws IOException {
+    super.generateWebMapping(file, clctxt);
+    if (webXmlMappings != null) {
+      String packageName = clctxt.getServletPackageName();
+      String servletClass = packageName.isEmpty() ? clctxt.getServletClassName()
+          : packageName + "." + clctxt.getServletClassName();
+      webXmlMappings.addServlet(workerIndex, servletClass, file.replace('\\', '/'));
+    }
+  }
+
+  @Override
+  protected void completeWebXml() {
+    if (webXmlMappings != null) {
+      webXmlMappings.add(workerIndex, servletout.toString(), mappingout.toString());
+      return;
+    }
+    super.completeWebXml();
+  }
+
+  /**
+   * Same as {@link JspC#processFile(String)}, except that the compilation can be
+   * forced and that the dependencies and the compile time of each compiled jsp
+   * are recorded.
+   */
+  @Override
+  protected void processFile(String file) throws JasperException {
+    if (log.isDebugEnabled()) {
+      log.debug(Localizer.getMessage("jspc.processing", file));
+    }
+
+    ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+    try {
+      String jspUri = file.replace('\\', '/');
+      JspCompilationContext clctxt = new JspCompilationContext(jspUri, this, context, null, rctxt);
+      if (targetPackage != null) {
+        clctxt.setBasePackageName(targetPackage);
+      }
+
+      Thread.currentThread().setContextClassLoader(loader);
+      clctxt.setClassLoader(loader);
+      clctxt.setClassPath(classPath);
+
+      Compiler clc = clctxt.createCompiler();
+      if (forceCompile || clc.isOutDated(compile)) {
+        if (log.isDebugEnabled()) {
+          log.debug(Localizer.getMessage("jspc.outdated", jspUri));
+        }
+        long start = System.nanoTime();
+        clc.compile(compile, true);
+        if (compileTimes != null) {
+          compileTimes.put(jspUri, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        // the servlets compiled by the batch are recorded once they are compiled
+        if (batchCompilation == null
+            || !batchCompilation.whenCompiled(clctxt.getFQCN(), () -> recordCompiledJsp(jspUri, clctxt))) {
+          recordCompiledJsp(jspUri, clctxt);
+        }
+      }
+
+      generateWebMapping(file, clctxt);
+    } catch (JasperException je) {
+      Throwable rootCause = je;
+      while (rootCause instanceof JasperException && ((JasperException) rootCause).getRootCause() != null) {
+        rootCause = ((JasperException) rootCause).getRootCause();
+      }
+      if (rootCause != je) {
+        log.error(Localizer.getMessage("jspc.error.generalException", file), rootCause);
+      }
+      throw je;
+    } catch (FileNotFoundException e) {
+      if (log.isWarnEnabled()) {
+        log.warn(Localizer.getMessage("jspc.error.fileDoesNotExist", e.getMessage()));
+      }
+      throw new JasperException(e);
+    } catch (Exception e) {
+      throw new JasperException(e);
+    } finally {
+      Thread.currentThread().setContextClassLoader(originalClassLoader);
+    }
+  }
+
+  private void recordCompiledJsp(String jspUri, JspCompilationContext clctxt) {
+    if (compiledJsps == null) {
+      return;
+    }
+    Map<String, Long> dependants = getDependants(clctxt);
+    if (dependants == null) {
+      // unknown dependencies, the jsp will be compiled again by the next build
+      return;
+    }
+    Map<String, Long> dependencies = new LinkedHashMap<>();
+    for (Map.Entry<String, Long> dependant : dependants.entrySet()) {
+      String path = dependant.getKey();
+      dependencies.put(path, path.startsWith("/") ? new File(uriRoot, path).lastModified() : dependant.getValue());
+    }
+    long lastModified = new File(uriRoot, jspUri).lastModified();
+    compiledJsps.put(jspUri, new CompiledJsp(jspUri, clctxt.getFQCN(), clctxt.getClassFileName(), lastModified,
+        dependencies));
+  }
+
+  /**
+   * The page info of the compiler is released at the end of the compilation, so
+   * the dependencies are read from the generated servlet as Tomcat does at
+   * runtime.
+   */
+  private Map<String, Long> getDependants(JspCompilationContext clctxt) {
+    try {
+      Object servlet = clctxt.load().getConstructor().newInstance();
+      if (servlet instanceof JspSourceDependent) {
+        Map<String, Long> dependants = ((JspSourceDependent) servlet).getDependants();
+        return dependants == null ? Collections.emptyMap() : dependants;
+      }
+      return Collections.emptyMap();
+    } catch (Exception | LinkageError e) {
+      if (log.isDebugEnabled()) {
+        log.debug("Unable to read the dependencies of " + clctxt.getJspFile(), e);
+      }
+      return null;
+    } finally {
+      clctxt.clearJspLoader();
+    }
+  }
+
   @Override
   public String getCompilerClassName() {
     return getcompilerClass();
@@ -90,8 +464,8 @@ public class JspCContextAccessor extends JspC {
 
   @Override
   protected void initTldScanner(JspCServletContext context, ClassLoader classLoader) {
-    if (tldSkip != null || tldScan != null || defaultTldScan != null) {
-      JarScanner scanner = new StandardJarScanner();
+    if (tldSkip != null || tldScan != null || defaultTldScan != null || classpathIndex != null) {
+      StandardJarScanner scanner = new StandardJarScanner();
       StandardJarScanFilter filter = new StandardJarScanFilter();
       if (tldSkip != null) {
         filter.setTldSkip(tldSkip);
@@ -102,10 +476,19 @@ public class JspCContextAccessor extends JspC {
       if (defaultTldScan != null) {
         filter.setDefaultTldScan(defaultTldScan);
       }
-      scanner.setJarScanFilter(filter);
+      scanner.setJarScanFilter(classpathIndex != null ? new IndexedJarScanFilter(classpathIndex, filter) : filter);
       // As seen in org.apache.jasper.compiler.JarScannerFactory.getJarScanner
       context.setAttribute(JarScanner.class.getName(), scanner);
     }
     super.initTldScanner(context, classLoader);
   }
+
+  @Override
+  protected TldScanner newTldScanner(JspCServletContext context, boolean namespaceAware, boolean validate,
+      boolean blockExternal) {
+    if (tldIndex != null) {
+      return new IndexedTldScanner(context, namespaceAware, validate, blockExternal, tldIndex);
+    }
+    return new RecordedTldScanner(context, namespaceAware, validate, blockExternal);
+  }
 }
@@ -0,0 +1,72 @@
+package io.leonard.maven.plugins.jspc;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of the processing of a jsp by a worker, from the
+ * {@link JspTimings} of the jsp. The phases which were not timed and the
+ * allocations which were not counted are 0.
+ */
+@Name("io.leonard.jspc.JspCompile")
+@Label("JSP Compile")
+@Category("JSPC")
+@Description("Processing of a jsp by a worker, with the time of each phase")
+@StackTrace(false)
+public class JspCompileEvent extends Event {
+
+  @Label("JSP")
+  String jsp;
+
+  @Label("Worker")
+  @Description("Number of the worker, from 1")
+  int worker;
+
+  @Label("Failed")
+  boolean failed;
+
+  @Label("Queue Wait")
+  @Timespan
+  long queueWait;
+
+  @Label("Parse")
+  @Timespan
+  long parse;
+
+  @Label("Generate")
+  @Timespan
+  long generate;
+
+  @Label("Compile")
+  @Timespan
+  long compile;
+
+  @Label("Write")
+  @Timespan
+  long write;
+
+  @Label("Smap")
+  @Timespan
+  long smap;
+
+  @Label("Allocated")
+  @Description("Bytes allocated by the worker for the jsp")
+  @DataAmount
+  long allocated;
+
+  void setTimings(JspTimings timings) {
+    queueWait = timings.getQueueWait();
+    parse = Math.max(timings.getPhase(CompilePhase.PARSE), 0);
+    generate = Math.max(timings.getPhase(CompilePhase.GENERATE), 0);
+    compile = Math.max(timings.getPhase(CompilePhase.COMPILE), 0);
+    write = Math.max(timings.getPhase(CompilePhase.WRITE), 0);
+    smap = Math.max(timings.getPhase(CompilePhase.SMAP), 0);
+    allocated = Math.max(timings.getAllocatedBytes(), 0);
+  }
+}
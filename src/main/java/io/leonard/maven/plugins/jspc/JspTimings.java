@@ -0,0 +1,119 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.util.Arrays;
+
+/**
+ * Times of the processing of a jsp by a worker, in nanoseconds, and the bytes
+ * it allocated. The phases which were not timed are -1, as the allocations
+ * which were not counted.
+ */
+public class JspTimings {
+
+  private final String jspUri;
+
+  private final int thread;
+
+  private final long queueWait;
+
+  private final long[] phases = new long[CompilePhase.values().length];
+
+  private final long[] phaseAllocatedBytes = new long[CompilePhase.values().length];
+
+  private long total;
+
+  private long startAllocatedBytes = -1;
+
+  private long allocatedBytes = -1;
+
+  private boolean failed;
+
+  /**
+   * @param jspUri    the uri of the jsp
+   * @param thread    the number of the worker, from 1
+   * @param queueWait how long the jsp waited in the queue before a worker took
+   *                  it
+   */
+  public JspTimings(String jspUri, int thread, long queueWait) {
+    this.jspUri = jspUri;
+    this.thread = thread;
+    this.queueWait = queueWait;
+    Arrays.fill(phases, -1);
+    Arrays.fill(phaseAllocatedBytes, -1);
+  }
+
+  /**
+   * Add the time of a phase, which may run several times for a jsp.
+   */
+  public void addPhase(CompilePhase phase, long nanos) {
+    phases[phase.ordinal()] = Math.max(phases[phase.ordinal()], 0) + nanos;
+  }
+
+  /**
+   * Add the bytes allocated by a phase, which may run several times for a jsp.
+   */
+  public void addPhaseAllocatedBytes(CompilePhase phase, long bytes) {
+    phaseAllocatedBytes[phase.ordinal()] = Math.max(phaseAllocatedBytes[phase.ordinal()], 0) + bytes;
+  }
+
+  public String getJspUri() {
+    return jspUri;
+  }
+
+  public int getThread() {
+    return thread;
+  }
+
+  public long getQueueWait() {
+    return queueWait;
+  }
+
+  /**
+   * @return the time of the phase, or -1 if it was not timed
+   */
+  public long getPhase(CompilePhase phase) {
+    return phases[phase.ordinal()];
+  }
+
+  /**
+   * @return the bytes allocated by the phase, or -1 if they were not counted
+   */
+  public long getPhaseAllocatedBytes(CompilePhase phase) {
+    return phaseAllocatedBytes[phase.ordinal()];
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  void setTotal(long total) {
+    this.total = total;
+  }
+
+  /**
+   * @return the bytes allocated by the worker for the jsp, or -1 if they were
+   *         not counted
+   */
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  void setAllocatedBytes(long allocatedBytes) {
+    this.allocatedBytes = allocatedBytes;
+  }
+
+  long getStartAllocatedBytes() {
+    return startAllocatedBytes;
+  }
+
+  void setStartAllocatedBytes(long startAllocatedBytes) {
+    this.startAllocatedBytes = startAllocatedBytes;
+  }
+
+  public boolean isFailed() {
+    return failed;
+  }
+
+  void setFailed(boolean failed) {
+    this.failed = failed;
+  }
+}
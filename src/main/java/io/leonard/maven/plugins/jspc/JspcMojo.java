@@ -15,45 +15,45 @@
 package io.leonard.maven.plugins.jspc;
 
 import java.io.BufferedReader;
+import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.io.Writer;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Handler;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Source;
-import javax.xml.transform.stream.StreamSource;
-import javax.xml.validation.Schema;
-import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
+import javax.inject.Inject;
 import org.apache.jasper.JasperException;
 import org.apache.jasper.JspC;
 import org.apache.jasper.TrimSpacesOption;
+import org.apache.jasper.compiler.BatchCompilation;
+import org.apache.jasper.compiler.CompilePipeline;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -63,9 +63,9 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
 import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.StringUtils;
-import org.eclipse.jdt.internal.compiler.env.NameEnvironmentAnswer;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 import org.xml.sax.SAXException;
 
@@ -96,6 +96,11 @@ public class JspcMojo extends AbstractMojo {
 
   private static final String WEB_XML = "web.xml";
   public static final String END_OF_WEBAPP = "</web-app>";
+  private static final String SERVLET_CONTAINER_INITIALIZER_SERVICE = "META-INF/services/jakarta.servlet.ServletContainerInitializer";
+  private static final long PROGRESS_PERIOD_SECONDS = 10;
+  private static final long ADJUST_PERIOD_MILLIS = 2000;
+  private static final String AUTO_THREADS = "auto";
+  private static final String FILE_HASHES = "classpath-hashes.txt";
 
   /**
    * The maven project.
@@ -105,10 +110,8 @@ public class JspcMojo extends AbstractMojo {
 
   /**
    * File into which to generate the &lt;servlet&gt; and &lt;servlet-mapping&gt;
-   * tags for the compiled jsps. <br>
-   * <p>
-   * If multithreading mode is active (threads > 1), then this filename will be
-   * suffixed by ".threadIndex" (example : webfrag.xml.3).
+   * tags for the compiled jsps. The tags of the jsps compiled by all the threads
+   * are written in this single file.
    */
   @Parameter(defaultValue = "${basedir}/target/webfrag.xml")
   private String webXmlFragment;
@@ -138,7 +141,8 @@ public class JspcMojo extends AbstractMojo {
 
   /**
    * Controls whether or not .java files generated during compilation will be
-   * preserved.
+   * preserved. When they are not, the ParallelJDTCompiler compiles the generated
+   * sources without writing them.
    */
   @Parameter(defaultValue = "false")
   private boolean keepSources;
@@ -208,7 +212,8 @@ public class JspcMojo extends AbstractMojo {
 
   /**
    * The link to xsd schema to validate web xml file after merging, if
-   * mergeFragment parameter is true.
+   * mergeFragment parameter is true. The schemas of the servlet specification
+   * are read from the ones bundled with Tomcat instead of this link.
    */
   @Parameter(defaultValue = "http://xmlns.jcp.org/xml/ns/javaee/web-app_3_1.xsd")
   private String webXmlXsdSchema;
@@ -263,18 +268,26 @@ public class JspcMojo extends AbstractMojo {
    * Fail the build and stop at the first jspc error. If set to "false", all jsp
    * will be compiled even if they raise errors, and all errors will be listed
    * when they raise. In this case the build will fail too. In case of threads > 1
-   * and stopAtFirstError=true, each thread can have is own first error.
+   * and stopAtFirstError=true, no thread takes a new jsp after the first error,
+   * but the jsps already taken by the other threads are still compiled and may
+   * report their own errors.
    */
   @Parameter(defaultValue = "true")
   private boolean stopAtFirstError;
 
   /**
-   * The number of threads will be used for compile all of the jsps. Number total
-   * of jsps will be divided by thread number. Each part will be given to
-   * differents thread.
+   * The number of threads will be used for compile all of the jsps. The threads
+   * share a single queue of jsps, the most costly first, and each of them takes
+   * the next jsp as soon as it is done with the previous one.
+   * <p>
+   * With "auto", a thread is started per available processor, which the JVM
+   * limits to the CPU quota of a container, and the number of threads taking jsps
+   * is adjusted during the build: it grows while the throughput of the jsps
+   * grows and the processors are not saturated, and shrinks when a thread only
+   * adds contention or when the GC takes too much time.
    */
   @Parameter(defaultValue = "1")
-  private int threads;
+  private String threads;
 
   /**
    * Whether Jsp Tag Pooling should be enabled.
@@ -297,7 +310,9 @@ public class JspcMojo extends AbstractMojo {
   private boolean genStringAsCharArray;
 
   /**
-   * Version of Java used to compile the jsp files.
+   * Version of Java used to compile the jsp files. The compilers of the plugin
+   * support all the versions of the bundled JDT, a newer version is replaced by
+   * the latest of them.
    */
   @Parameter(defaultValue = "1.8")
   private String compilerVersion;
@@ -353,7 +368,166 @@ public class JspcMojo extends AbstractMojo {
   @Parameter
   private Boolean defaultTldScan;
 
-  private Map<String, NameEnvironmentAnswer> resourcesCache = new ConcurrentHashMap<>();
+  /**
+   * File where the tlds found in the jars of the classpath are kept, already
+   * parsed, between two builds. The tlds of a jar are only parsed again when the
+   * path, size or last modification time of the jar changed.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/jspc-tld-index.txt")
+  private File tldIndexFile;
+
+  /**
+   * Only compile the jsps which changed since the previous build. A jsp is
+   * compiled again when the jsp itself, one of its static includes, tag files or
+   * tlds changed. Every jsp is compiled again when the configuration of the
+   * plugin, the web.xml or a jar of the classpath changed. If nothing changed at
+   * all, the compilation is skipped.
+   */
+  @Parameter(defaultValue = "false", property = "jspc.incremental")
+  private boolean incremental;
+
+  /**
+   * File where the dependencies of the compiled jsps are kept between two builds
+   * when incremental is true.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/jspc-build-state.txt")
+  private File buildStateFile;
+
+  /**
+   * Directory of a cache of compiled jsps, shared by all the builds using it.
+   * Unlike the incremental mode it survives a clean build, and it can be put on a
+   * shared mount to be used by several checkouts or machines. A jsp is restored
+   * from the cache when neither its source, nor the files it depends on, nor the
+   * configuration of the plugin, the web.xml or the content of the classpath
+   * changed. No cache is used if not set.
+   */
+  @Parameter(property = "jspc.cacheDirectory")
+  private File cacheDirectory;
+
+  /**
+   * Maximum size in megabytes of the class files kept in memory by
+   * "org.apache.jasper.compiler.ParallelJDTCompiler", so that the classes of the
+   * classpath are read once per build instead of once per jsp.
+   */
+  @Parameter(defaultValue = "64")
+  private int resourcesCacheSize;
+
+  /**
+   * Generate the java sources of all the jsps first, then compile all of them
+   * with a single JDT compilation, so that the classes of the classpath are
+   * resolved once and JDT can compile them in parallel. The compilerClass
+   * parameter is ignored: "org.apache.jasper.compiler.BatchJDTCompiler" is used.
+   */
+  @Parameter(property = "jspc.batchCompile", defaultValue = "false")
+  private boolean batchCompile;
+
+  /**
+   * Number of threads compiling the java sources generated by the "threads"
+   * threads. If greater than 0, the jsps are compiled while the others are still
+   * generated: the generated sources go through a queue to the compiler threads,
+   * then the compiled classes through another queue to a single thread writing
+   * them. "org.apache.jasper.compiler.BatchJDTCompiler" is used as with
+   * batchCompile.
+   */
+  @Parameter(property = "jspc.compilerThreads", defaultValue = "0")
+  private int compilerThreads;
+
+  /**
+   * Maximum number of jsps waiting between two stages when compilerThreads is
+   * greater than 0. The generation waits when the compilation is behind, so that
+   * the memory stays bounded.
+   */
+  @Parameter(defaultValue = "64")
+  private int pipelineQueueSize;
+
+  /**
+   * Write the classes of the compiled jsps in a single jar instead of the
+   * generatedClasses directory, and attach the jar to the project with the
+   * "precompiled-jsp" classifier. The jar still has to be put in the WEB-INF/lib
+   * of the war. Supported by "org.apache.jasper.compiler.ParallelJDTCompiler",
+   * which replaces the default "org.apache.jasper.compiler.JDTCompiler", by
+   * "org.apache.jasper.compiler.BatchJDTCompiler" and by
+   * "org.apache.jasper.compiler.JspcMojoJDTCompiler". It can be used neither
+   * with incremental nor with cacheDirectory, which need the class files.
+   */
+  @Parameter(property = "jspc.outputJar", defaultValue = "false")
+  private boolean outputJar;
+
+  /**
+   * The jar written when outputJar is true.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/precompiled-jsp.jar")
+  private File outputJarFile;
+
+  /**
+   * Compression of the entries of the outputJar: "deflated", or "stored" to
+   * write them without compression, which is faster when the jar is compressed
+   * again in the war.
+   */
+  @Parameter(defaultValue = "deflated")
+  private String outputJarCompression;
+
+  /**
+   * Register the compiled jsps with a ServletContainerInitializer instead of the
+   * web.xml: a table of the servlets, the initializer reading it and its
+   * META-INF/services declaration are written with the classes of the jsps, in
+   * the outputJar if it is set. The container then does not have to parse a
+   * servlet declaration per jsp when the webapp starts, and mergeFragment can be
+   * set to false. A servlet declared in the web.xml takes precedence over the
+   * one of the initializer.
+   */
+  @Parameter(property = "jspc.servletContainerInitializer", defaultValue = "false")
+  private boolean servletContainerInitializer;
+
+  /**
+   * File where the times of the compiled jsps are written as json: the wall
+   * time, the utilization of the threads, the time by phase of the compilation,
+   * the busy and idle time of each thread, the slowest jsps and the times of each
+   * jsp. The phases are timed by "org.apache.jasper.compiler.ParallelJDTCompiler"
+   * and "org.apache.jasper.compiler.JspcMojoJDTCompiler" only.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/jspc-timings.json")
+  private File timingReportFile;
+
+  /**
+   * File where the times of the compiled jsps are written as csv, one line per
+   * jsp.
+   */
+  @Parameter(defaultValue = "${project.build.directory}/jspc-timings.csv")
+  private File timingReportCsvFile;
+
+  /**
+   * Number of the slowest jsps listed in the log and in the timingReportFile.
+   */
+  @Parameter(defaultValue = "10")
+  private int slowestJsps;
+
+  @Inject
+  private MavenProjectHelper projectHelper;
+
+  private ClassFileCache resourcesCache;
+
+  private BatchCompilation batchCompilation;
+
+  private CompiledJspJar compiledJspJar;
+
+  private WebXmlMappings webXmlMappings;
+
+  private ClasspathIndex classpathIndex;
+
+  private TldIndex tldIndex;
+
+  private TimingReport timingReport;
+
+  private int threadCount;
+
+  private ConcurrencyController concurrencyController;
+
+  private Map<String, CompiledJsp> compiledJsps = new ConcurrentHashMap<>();
+
+  private Map<String, Long> compileTimes = new ConcurrentHashMap<>();
+
+  private boolean upToDate;
 
   private Handler[] handlers;
 
@@ -384,19 +558,41 @@ public class JspcMojo extends AbstractMojo {
       getLog().info("compilerClass=" + compilerClass);
       getLog().info("strictQuoteEscaping=" + strictQuoteEscaping);
       getLog().info("skip=" + skip);
+      getLog().info("incremental=" + incremental);
+      getLog().info("cacheDirectory=" + cacheDirectory);
+      getLog().info("resourcesCacheSize=" + resourcesCacheSize);
+      getLog().info("batchCompile=" + batchCompile);
+      getLog().info("compilerThreads=" + compilerThreads);
+      getLog().info("pipelineQueueSize=" + pipelineQueueSize);
+      getLog().info("outputJar=" + outputJar);
+      getLog().info("outputJarFile=" + outputJarFile);
+      getLog().info("outputJarCompression=" + outputJarCompression);
+      getLog().info("servletContainerInitializer=" + servletContainerInitializer);
+      getLog().info("timingReportFile=" + timingReportFile);
+      getLog().info("timingReportCsvFile=" + timingReportCsvFile);
+      getLog().info("slowestJsps=" + slowestJsps);
     }
     if ( skip ) {
       getLog().info( "Not compiling jsp sources" );
       return;
     }
+    if (outputJar && (incremental || cacheDirectory != null)) {
+      throw new MojoExecutionException("outputJar can be used neither with incremental nor with cacheDirectory");
+    }
+    if (!"deflated".equals(outputJarCompression) && !"stored".equals(outputJarCompression)) {
+      throw new MojoExecutionException("outputJarCompression must be deflated or stored: " + outputJarCompression);
+    }
+    threadCount = getThreadCount();
     try {
       long start = System.currentTimeMillis();
 
       installLogHandler();
       prepare();
       compile();
-      cleanupSrcs();
-      mergeWebXml();
+      if (!upToDate) {
+        cleanupSrcs();
+        mergeWebXml();
+      }
 
       long finish = System.currentTimeMillis();
       long millis = finish - start;
@@ -408,6 +604,8 @@ public class JspcMojo extends AbstractMojo {
     } catch (Exception e) {
       throw new MojoExecutionException("Failure processing jsps", e);
     } finally {
+      closeCompiledJspJar();
+      closeClasspathIndex();
       uninstallLogHandler();
     }
   }
@@ -439,52 +637,494 @@ public class JspcMojo extends AbstractMojo {
       getLog().info("Files selected to precompile: " + StringUtils.join(jspFiles, ", "));
     }
 
-    ExecutorService executor = Executors.newFixedThreadPool(threads);
-    List<Future<String>> results = executor.invokeAll(initJspcWorkers(classpathStr, jspFiles, initJspList(jspFiles)));
-    executor.shutdown();
+    List<String> jspFilesList = initJspList(jspFiles);
+    List<CompiledJsp> reusedJsps = new ArrayList<>();
+    BuildState buildState = null;
+    if (incremental) {
+      buildState = new BuildState(getOptionsFingerprint(), BuildState.fingerprintClasspath(urls, getGeneratedPaths()));
+      upToDate = selectJspsToCompile(buildState, jspFilesList, reusedJsps);
+      if (upToDate) {
+        getLog().info("All " + jspFiles.length + " jsps are up to date, nothing to compile");
+        Thread.currentThread().setContextClassLoader(currentClassLoader);
+        return;
+      }
+      getLog().info("Number of jsps up to date : " + reusedJsps.size());
+    }
+    BuildCache buildCache = null;
+    if (cacheDirectory != null) {
+      buildCache = new BuildCache(cacheDirectory, getCacheFingerprint(urls), new File(webAppSourceDirectory),
+          new File(generatedClasses));
+      restoreFromCache(buildCache, jspFilesList, reusedJsps);
+    }
+    long indexStart = System.currentTimeMillis();
+    classpathIndex = ClasspathIndex.build(ucl, getWebAppClassPath());
+    getLog().info("Classpath index of " + classpathIndex.getSourceCount() + " jars and directories ("
+        + classpathIndex.getClassCount() + " classes) built in " + (System.currentTimeMillis() - indexStart) + "ms");
+    resourcesCache = new ClassFileCache(resourcesCacheSize * 1024L * 1024L,
+        Arrays.asList(packageRoot, "org.apache.jsp"), classpathIndex);
+    CompileHistory compileHistory = CompileHistory.load(getCompileHistoryFile());
+    compileHistory.sortByDecreasingCost(jspFilesList, new File(webAppSourceDirectory));
+    batchCompilation = initBatchCompilation();
+    List<Future<String>> results;
+    List<String> batchErrors;
+    try {
+      if (outputJar) {
+        compiledJspJar = new CompiledJspJar(outputJarFile, new File(generatedClasses),
+            "deflated".equals(outputJarCompression));
+      }
+      Files.deleteIfExists(Paths.get(webXmlFragment));
+      webXmlMappings = new WebXmlMappings();
+      tldIndex = TldIndex.load(tldIndexFile);
+
+      ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+      List<JspcWorker> workers = initJspcWorkers(classpathStr, jspFilesList, reusedJsps);
+      ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+      progress.scheduleAtFixedRate(() -> getLog().info(timingReport.getProgress()), PROGRESS_PERIOD_SECONDS,
+          PROGRESS_PERIOD_SECONDS, TimeUnit.SECONDS);
+      if (concurrencyController != null) {
+        progress.scheduleAtFixedRate(this::adjustConcurrency, ADJUST_PERIOD_MILLIS, ADJUST_PERIOD_MILLIS,
+            TimeUnit.MILLISECONDS);
+      }
+      try {
+        results = executor.invokeAll(workers);
+      } finally {
+        progress.shutdownNow();
+      }
+      executor.shutdown();
+      timingReport.finish();
+      if (concurrencyController != null) {
+        getLog().info(concurrencyController.getSummary());
+      }
+      batchErrors = compileBatch();
+    } finally {
+      shutdownBatchCompilation();
+    }
+    writeServletContainerInitializer();
+    writeCompiledJspJar();
+    writeWebXmlFragment();
 
     getLog().info("Number total of jsps : " + jspFiles.length);
-    manageResults(results);
+    if (getLog().isDebugEnabled()) {
+      getLog().debug("Class lookups : " + resourcesCache.getHits() + " hits, " + resourcesCache.getMisses()
+          + " misses, " + resourcesCache.getClassCount() + " classes cached (" + resourcesCache.getSize() + " bytes)");
+    }
+    saveCompileHistory(compileHistory, jspFiles);
+    saveTldIndex();
+    writeTimingReport();
+    if (buildCache != null) {
+      storeInCache(buildCache);
+    }
+    if (buildState != null) {
+      saveBuildState(buildState, reusedJsps);
+    }
+    manageResults(results, batchErrors);
 
     Thread.currentThread().setContextClassLoader(currentClassLoader);
   }
 
   private List<String> initJspList(String[] jspFiles) {
     List<String> jspFilesList = new ArrayList<>();
-    Collections.addAll(jspFilesList, jspFiles);
+    for (String jspFile : jspFiles) {
+      jspFilesList.add(toJspUri(jspFile));
+    }
     return jspFilesList;
   }
 
-  private List<JspcWorker> initJspcWorkers(StringBuilder classpathStr, String[] jspFiles, List<String> jspFilesList)
-      throws JasperException, IOException {
+  /**
+   * @param jspFile path of a jsp relative to webAppSourceDirectory
+   * @return the uri of the jsp, as used by Jasper and in the web.xml mappings
+   */
+  private static String toJspUri(String jspFile) {
+    return "/" + jspFile.replace(File.separatorChar, '/');
+  }
+
+  /**
+   * Remove from the list the jsps which did not change since the previous build.
+   *
+   * @param buildState   the state of the current build
+   * @param jspFilesList the jsps found in the webapp, only the ones to compile are
+   *                     kept
+   * @param reusedJsps   receives the jsps of the previous build which are still up
+   *                     to date
+   * @return true if nothing changed at all since the previous build
+   */
+  private boolean selectJspsToCompile(BuildState buildState, List<String> jspFilesList, List<CompiledJsp> reusedJsps)
+      throws IOException {
+    BuildState previousState = BuildState.load(buildStateFile);
+    if (previousState == null || !buildState.isCompatibleWith(previousState)) {
+      getLog().info("No compatible build state found, compiling all jsps");
+      return false;
+    }
+    File webAppSrcDir = new File(webAppSourceDirectory);
+    Set<String> currentJsps = new HashSet<>(jspFilesList);
+    List<String> removedJsps = new ArrayList<>();
+    for (CompiledJsp jsp : previousState.getJsps()) {
+      if (!currentJsps.contains(jsp.getJspUri())) {
+        removedJsps.add(jsp.getJspUri());
+        for (Path file : BuildCache.getGeneratedFiles(new File(generatedClasses), jsp.getServletName())) {
+          Files.delete(file);
+        }
+      }
+    }
+    jspFilesList.removeIf(jspUri -> {
+      CompiledJsp jsp = previousState.getJsp(jspUri);
+      if (jsp != null && jsp.isUpToDate(webAppSrcDir)) {
+        reusedJsps.add(jsp);
+        return true;
+      }
+      return false;
+    });
+    if (verbose) {
+      getLog().info("Jsps removed since previous build: " + StringUtils.join(removedJsps.iterator(), ", "));
+      getLog().info("Jsps to compile: " + StringUtils.join(jspFilesList.iterator(), ", "));
+    }
+    File mergedWebXml = new File(new File(webXmlFragment).getParentFile(), WEB_XML);
+    File servletsTable = new File(generatedClasses, PrecompiledJspInitializer.SERVLETS_TABLE);
+    return jspFilesList.isEmpty() && removedJsps.isEmpty() && new File(webXmlFragment).exists()
+        && (!mergeFragment || mergedWebXml.exists()) && (!servletContainerInitializer || servletsTable.exists());
+  }
+
+  private void saveTldIndex() {
+    getLog().info("Tlds of the jars : " + tldIndex.getHits() + " read from " + tldIndexFile + ", "
+        + tldIndex.getMisses() + " parsed");
+    try {
+      tldIndex.save(tldIndexFile);
+    } catch (IOException e) {
+      getLog().warn("Unable to save the tld index in " + tldIndexFile, e);
+    }
+  }
+
+  /**
+   * @return the number of threads to start
+   * @throws MojoExecutionException if threads is neither "auto" nor a positive
+   *                                number
+   */
+  private int getThreadCount() throws MojoExecutionException {
+    if (AUTO_THREADS.equals(threads)) {
+      return ConcurrencyController.getAvailableProcessors();
+    }
+    try {
+      int count = Integer.parseInt(threads.trim());
+      if (count > 0) {
+        return count;
+      }
+    } catch (NumberFormatException e) {
+      // reported below
+    }
+    throw new MojoExecutionException("threads must be a positive number or auto: " + threads);
+  }
+
+  private void adjustConcurrency() {
+    String change = concurrencyController.adjust();
+    if (change != null) {
+      getLog().info(change);
+    }
+  }
+
+  private void writeTimingReport() {
+    timingReport.getSummary(slowestJsps).forEach(getLog()::info);
+    try {
+      timingReport.writeJson(timingReportFile, slowestJsps);
+      timingReport.writeCsv(timingReportCsvFile);
+    } catch (IOException e) {
+      getLog().warn("Unable to write the timing report in " + timingReportFile, e);
+    }
+  }
+
+  private void saveBuildState(BuildState buildState, List<CompiledJsp> reusedJsps) {
+    reusedJsps.forEach(buildState::addJsp);
+    compiledJsps.values().forEach(buildState::addJsp);
+    try {
+      buildState.save(buildStateFile);
+    } catch (IOException e) {
+      getLog().warn("Unable to save the build state in " + buildStateFile + ", next build will not be incremental", e);
+    }
+  }
+
+  /**
+   * Everything that changes the output of the compilation of a jsp, except the
+   * jsp dependencies and the classpath.
+   */
+  private String getOptionsFingerprint() throws IOException {
+    File webXmlFile = getWebXmlFile();
+    return BuildState.fingerprint(webAppSourceDirectory, generatedClasses, webXmlFragment, packageRoot,
+        String.valueOf(suppressSmap), String.valueOf(enableJspTagPooling), trimSpaces,
+        String.valueOf(genStringAsCharArray), compilerVersion, getCompilerClass(),
+        String.valueOf(strictQuoteEscaping), javaEncoding, String.valueOf(validateXml), tldSkip, tldScan,
+        String.valueOf(defaultTldScan), String.valueOf(mergeFragment), insertionMarker, webXmlFile.getPath(),
+        String.valueOf(webXmlFile.lastModified()), String.valueOf(servletContainerInitializer));
+  }
+
+  /**
+   * Remove from the list the jsps found in the cache.
+   */
+  private void restoreFromCache(BuildCache buildCache, List<String> jspFilesList, List<CompiledJsp> reusedJsps)
+      throws IOException {
+    int restored = 0;
+    for (Iterator<String> iter = jspFilesList.iterator(); iter.hasNext();) {
+      CompiledJsp jsp = buildCache.restore(iter.next());
+      if (jsp != null) {
+        reusedJsps.add(jsp);
+        iter.remove();
+        restored++;
+      }
+    }
+    getLog().info("Number of jsps restored from cache : " + restored);
+  }
+
+  private void storeInCache(BuildCache buildCache) {
+    for (CompiledJsp jsp : compiledJsps.values()) {
+      try {
+        buildCache.store(jsp);
+      } catch (IOException e) {
+        getLog().warn("Unable to store " + jsp.getJspUri() + " in the cache " + cacheDirectory, e);
+      }
+    }
+  }
+
+  /**
+   * @return the files and packages written by the plugin, relative to
+   *         generatedClasses, which must not be part of the fingerprint of the
+   *         classpath when generatedClasses is a directory of the classpath
+   */
+  private List<String> getGeneratedPaths() {
+    return Arrays.asList(packageRoot.replace('.', '/'), "org/apache/jsp", PrecompiledJspInitializer.SERVLETS_TABLE,
+        PrecompiledJspInitializer.class.getName().replace('.', '/') + ".class",
+        SERVLET_CONTAINER_INITIALIZER_SERVICE);
+  }
+
+  /**
+   * Same as {@link #getOptionsFingerprint()} but without the paths, which differ
+   * from one checkout to another, and with the content of the web.xml and of the
+   * classpath.
+   */
+  private String getCacheFingerprint(List<URL> urls) throws IOException {
+    return BuildState.fingerprint(packageRoot, String.valueOf(suppressSmap), String.valueOf(enableJspTagPooling),
+        trimSpaces, String.valueOf(genStringAsCharArray), compilerVersion, getCompilerClass(),
+        String.valueOf(strictQuoteEscaping), javaEncoding, String.valueOf(validateXml), tldSkip, tldScan,
+        String.valueOf(defaultTldScan), BuildCache.hash(getWebXmlFile()), getClasspathContentFingerprint(urls));
+  }
+
+  /**
+   * The hashes of the files of the classpath are kept in the cache directory, so
+   * that only the files which changed since the previous build are read.
+   */
+  private String getClasspathContentFingerprint(List<URL> urls) throws IOException {
+    File fileHashesFile = new File(cacheDirectory, FILE_HASHES);
+    FileHashIndex fileHashes = FileHashIndex.load(fileHashesFile);
+    String fingerprint = BuildCache.fingerprintClasspath(urls, getGeneratedPaths(), fileHashes);
+    getLog().info("Files of the classpath : " + fileHashes.getHits() + " hashes read from " + fileHashesFile + ", "
+        + fileHashes.getMisses() + " computed");
+    try {
+      fileHashes.save(fileHashesFile);
+    } catch (IOException e) {
+      getLog().warn("Unable to save the hashes of the classpath in " + fileHashesFile, e);
+    }
+    return fingerprint;
+  }
+
+  private BatchCompilation initBatchCompilation() {
+    if (compilerThreads > 0) {
+      CompilePipeline pipeline = new CompilePipeline(resourcesCache, compilerThreads, pipelineQueueSize);
+      pipeline.start();
+      return pipeline;
+    }
+    return batchCompile ? new BatchCompilation(resourcesCache) : null;
+  }
+
+  /**
+   * Stop the threads of the compilation pipeline, which would otherwise outlive
+   * a build failing before the end of the pipeline.
+   */
+  private void shutdownBatchCompilation() {
+    if (batchCompilation != null) {
+      batchCompilation.shutdown();
+    }
+  }
+
+  /**
+   * Compile the servlets generated by the workers when batchCompile is set, or
+   * wait for the end of the pipeline when compilerThreads is set.
+   */
+  private List<String> compileBatch() {
+    if (batchCompilation == null) {
+      return Collections.emptyList();
+    }
+    long start = System.currentTimeMillis();
+    int size = batchCompilation.size();
+    List<String> errors = batchCompilation.compile();
+    long millis = System.currentTimeMillis() - start;
+    if (compilerThreads > 0) {
+      getLog().info("Compilation pipeline of " + size + " jsps drained in " + millis + "ms");
+    } else if (size > 0) {
+      getLog().info("Batch compilation of " + size + " jsps done in " + millis + "ms");
+    }
+    return errors;
+  }
+
+  /**
+   * @return the compiler class really used to compile the jsps
+   */
+  private String getCompilerClass() {
+    if (batchCompile || compilerThreads > 0) {
+      return "org.apache.jasper.compiler.BatchJDTCompiler";
+    }
+    if (outputJar && "org.apache.jasper.compiler.JDTCompiler".equals(compilerClass)) {
+      // the compiler of Tomcat only writes class files
+      return "org.apache.jasper.compiler.ParallelJDTCompiler";
+    }
+    return compilerClass;
+  }
+
+  /**
+   * Finish the jar of the classes once all the jsps are compiled, and attach it
+   * to the project.
+   */
+  private void writeCompiledJspJar() throws IOException {
+    if (compiledJspJar == null) {
+      return;
+    }
+    compiledJspJar.close();
+    compiledJspJar = null;
+    projectHelper.attachArtifact(project, "jar", "precompiled-jsp", outputJarFile);
+    getLog().info("Classes of the jsps written in " + outputJarFile);
+  }
+
+  /**
+   * Write the table of the servlets, the initializer registering them and its
+   * service declaration, once all the jsps are compiled.
+   */
+  private void writeServletContainerInitializer() throws IOException {
+    if (!servletContainerInitializer) {
+      return;
+    }
+    CharArrayWriter servletsTable = new CharArrayWriter();
+    webXmlMappings.writeServletsTableTo(servletsTable);
+    String initializerClass = PrecompiledJspInitializer.class.getName().replace('.', '/') + ".class";
+    byte[] initializer;
+    try (InputStream in = PrecompiledJspInitializer.class.getClassLoader().getResourceAsStream(initializerClass)) {
+      initializer = in.readAllBytes();
+    }
+    writeClassesFile(PrecompiledJspInitializer.SERVLETS_TABLE,
+        servletsTable.toString().getBytes(StandardCharsets.UTF_8));
+    writeClassesFile(initializerClass, initializer);
+    File services = new File(generatedClasses, SERVLET_CONTAINER_INITIALIZER_SERVICE);
+    String declaration = PrecompiledJspInitializer.class.getName() + "\n";
+    if (compiledJspJar == null && services.exists()) {
+      // keep the initializers of the webapp itself
+      String declarations = new String(Files.readAllBytes(services.toPath()), StandardCharsets.UTF_8);
+      if (declarations.contains(PrecompiledJspInitializer.class.getName())) {
+        return;
+      }
+      declaration = declarations + (declarations.isEmpty() || declarations.endsWith("\n") ? "" : "\n")
+          + declaration;
+    }
+    writeClassesFile(SERVLET_CONTAINER_INITIALIZER_SERVICE, declaration.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @param path the path of the file relative to generatedClasses
+   */
+  private void writeClassesFile(String path, byte[] content) throws IOException {
+    File file = new File(generatedClasses, path);
+    if (compiledJspJar != null) {
+      compiledJspJar.write(file.getPath(), content);
+    } else {
+      Files.createDirectories(file.getParentFile().toPath());
+      Files.write(file.toPath(), content);
+    }
+  }
+
+  private void closeCompiledJspJar() {
+    if (compiledJspJar != null) {
+      try {
+        compiledJspJar.close();
+      } catch (IOException e) {
+        getLog().debug("Unable to close " + outputJarFile, e);
+      }
+      compiledJspJar = null;
+    }
+  }
+
+  private void closeClasspathIndex() {
+    if (classpathIndex != null) {
+      try {
+        classpathIndex.close();
+      } catch (IOException e) {
+        getLog().debug("Unable to close the classpath index", e);
+      }
+      classpathIndex = null;
+    }
+  }
+
+  /**
+   * The compile times are kept next to the web.xml fragments.
+   */
+  private File getCompileHistoryFile() {
+    return new File(new File(webXmlFragment).getParentFile(), "jspc-compile-history.txt");
+  }
+
+  private void saveCompileHistory(CompileHistory compileHistory, String[] jspFiles) {
+    compileHistory.update(compileTimes, initJspList(jspFiles));
+    try {
+      compileHistory.save(getCompileHistoryFile());
+    } catch (IOException e) {
+      getLog().warn("Unable to save the compile times in " + getCompileHistoryFile(), e);
+    }
+  }
+
+  /**
+   * Write the web.xml declarations collected from all the workers.
+   */
+  private void writeWebXmlFragment() throws IOException {
+    WebXmlMergeEvent event = new WebXmlMergeEvent();
+    event.begin();
+    try (Writer writer = Files.newBufferedWriter(Paths.get(webXmlFragment), StandardCharsets.UTF_8)) {
+      webXmlMappings.writeTo(writer);
+    }
+    if (event.shouldCommit()) {
+      event.file = webXmlFragment;
+      event.fragment = true;
+      event.commit();
+    }
+  }
+
+  /**
+   * The workers share a single queue of jsps: each of them takes the next jsp as
+   * soon as it is done with the previous one, so a few costly jsps do not keep
+   * one thread busy while the others are idle.
+   */
+  private List<JspcWorker> initJspcWorkers(StringBuilder classpathStr, List<String> jspFilesList,
+      List<CompiledJsp> reusedJsps) throws JasperException, IOException {
     List<JspcWorker> workers = new ArrayList<>();
-    int minItem = jspFiles.length / threads;
-    int maxItem = minItem + 1;
-    int threadsWithMaxItems = jspFiles.length - threads * minItem;
-    int start = 0;
+    Queue<String> jspQueue = new ConcurrentLinkedQueue<>(jspFilesList);
+    // the first worker also declares the reused jsps in its web.xml fragment
+    int workersCount = Math.min(threadCount, Math.max(jspFilesList.size(), reusedJsps.isEmpty() ? 0 : 1));
     JspCContextAccessor topJspC = initJspc(classpathStr, -1, null);
-    for (int index = 0; index < threads; index++) {
+    timingReport = new TimingReport(jspFilesList.size(), workersCount);
+    concurrencyController = AUTO_THREADS.equals(threads) && workersCount > 1
+        ? new ConcurrencyController(workersCount, timingReport::getProcessed)
+        : null;
+    for (int index = 0; index < threadCount; index++) {
       int threadNumber = index + 1;
-      int itemsCount = (index < threadsWithMaxItems ? maxItem : minItem);
-      int end = start + itemsCount;
-      List<String> jspFilesSubList = jspFilesList.subList(start, end);
-      if (jspFilesSubList.isEmpty()) {
+      if (index >= workersCount) {
         getLog().info("Thread " + threadNumber + " have nothing to do, skip it");
       } else {
-        JspC firstJspC = initJspc(classpathStr, index, topJspC);
-        JspcWorker worker = new JspcWorker(firstJspC, jspFilesSubList);
-        workers.add(worker);
-        start = end;
-        getLog().info("Number of jsps for thread " + threadNumber + " : " + jspFilesSubList.size());
+        JspCContextAccessor firstJspC = initJspc(classpathStr, index, topJspC);
+        if (index == 0) {
+          firstJspC.setReusedJsps(reusedJsps);
+        }
+        workers.add(new JspcWorker(firstJspC, jspQueue, timingReport, threadNumber, concurrencyController));
       }
     }
+    getLog().info("Number of jsps shared by " + workersCount + " threads : " + jspFilesList.size());
     return workers;
   }
 
   private JspCContextAccessor initJspc(StringBuilder classpathStr, int threadIndex, JspCContextAccessor topJspC)
       throws IOException, JasperException {
     JspCContextAccessor jspc = new JspCContextAccessor();
-    jspc.setWebXmlInclude(getwebXmlFragmentFilename(threadIndex));
+    jspc.setWebXmlMappings(webXmlMappings, threadIndex);
     jspc.setUriroot(webAppSourceDirectory);
     jspc.setPackage(packageRoot);
     jspc.setOutputDir(generatedClasses);
@@ -500,13 +1140,24 @@ public class JspcMojo extends AbstractMojo {
     jspc.setGenStringAsCharArray(genStringAsCharArray);
     jspc.setCompilerSourceVM(compilerVersion);
     jspc.setCompilerTargetVM(compilerVersion);
-    jspc.setcompilerClass(compilerClass);
+    jspc.setcompilerClass(getCompilerClass());
     jspc.setResourcesCache(resourcesCache);
+    jspc.setBatchCompilation(batchCompilation);
+    jspc.setSourcesInMemory(!keepSources);
+    jspc.setCompiledJspJar(compiledJspJar);
+    jspc.setClasspathIndex(classpathIndex);
     jspc.setStrictQuoteEscaping(strictQuoteEscaping);
     jspc.setTldSkip(tldSkip);
     jspc.setTldScan(tldScan);
     jspc.setDefaultTldScan(defaultTldScan);
+    jspc.setForceCompile(incremental);
+    if (incremental || cacheDirectory != null) {
+      jspc.setCompiledJsps(compiledJsps);
+    }
+    jspc.setCompileTimes(compileTimes);
     if (topJspC == null) {
+      // the top JspC scans the tlds for all the workers
+      jspc.setTldIndex(tldIndex);
       jspc.initClassLoader();
       jspc.initServletContext();
     } else {
@@ -535,7 +1186,7 @@ public class JspcMojo extends AbstractMojo {
     return jspc;
   }
 
-  private void manageResults(List<Future<String>> results)
+  private void manageResults(List<Future<String>> results, List<String> batchErrors)
       throws InterruptedException, ExecutionException, MojoExecutionException {
     boolean failTheBuild = false;
     for (Future<String> result : results) {
@@ -544,6 +1195,10 @@ public class JspcMojo extends AbstractMojo {
         failTheBuild = true;
       }
     }
+    for (String batchError : batchErrors) {
+      getLog().error(batchError);
+      failTheBuild = true;
+    }
 
     if (failTheBuild) {
       throw new MojoExecutionException("see previous errors");
@@ -624,12 +1279,17 @@ public class JspcMojo extends AbstractMojo {
         return;
       }
 
-      File mergedWebXml = new File(new File(getwebXmlFragmentFilename(0)).getParentFile(), WEB_XML);
-      Path mergedWebXmlPath = createAndGetMergeWebXml(mergedWebXml);
+      File mergedWebXml = new File(new File(webXmlFragment).getParentFile(), WEB_XML);
 
-      try (BufferedReader webXmlReader = new BufferedReader(
-          new InputStreamReader(new FileInputStream(webXmlFile), StandardCharsets.UTF_8))) {
-        writeWebXmlMergedFile(webXmlReader, mergedWebXmlPath);
+      WebXmlMergeEvent event = new WebXmlMergeEvent();
+      event.begin();
+      try (BufferedReader webXmlReader = Files.newBufferedReader(webXmlFile.toPath(), StandardCharsets.UTF_8);
+          Writer mergedWebXmlWriter = Files.newBufferedWriter(mergedWebXml.toPath(), StandardCharsets.UTF_8)) {
+        writeWebXmlMergedFile(webXmlReader, mergedWebXmlWriter);
+      }
+      if (event.shouldCommit()) {
+        event.file = mergedWebXml.getPath();
+        event.commit();
       }
 
       if (validateWebXmlAfterMerge) {
@@ -641,20 +1301,10 @@ public class JspcMojo extends AbstractMojo {
     }
   }
 
-  private Path createAndGetMergeWebXml(File mergedWebXml) throws IOException {
-    Path mergedWebXmlPath = Paths.get(mergedWebXml.toURI());
-    Files.deleteIfExists(mergedWebXmlPath);
-    Files.createFile(mergedWebXmlPath);
-    return mergedWebXmlPath;
-  }
-
   private void validateXmlContent(File mergedWebXml) throws IOException, MojoExecutionException {
     try {
       setHttpProxyIfNecessary();
-      DocumentBuilder parser = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-      parser.parse(mergedWebXml);
-    } catch (ParserConfigurationException e) {
-      getLog().debug("Unable to instanciate Document Builder, so web.xml merged validation is not possible", e);
+      WebXmlValidator.checkWellFormed(mergedWebXml);
     } catch (SAXException e) {
       throw new MojoExecutionException("Error when validating XML content of merged web.xml !", e);
     } finally {
@@ -665,11 +1315,7 @@ public class JspcMojo extends AbstractMojo {
   private void validateWithXsd(File mergedWebXml) throws IOException, MojoExecutionException {
     try {
       setHttpProxyIfNecessary();
-      Source webXmlSource = new StreamSource(mergedWebXml);
-      SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-      Schema webXmlSchema = schemaFactory.newSchema(getWebXmlSchema());
-      Validator validator = webXmlSchema.newValidator();
-      validator.validate(webXmlSource);
+      WebXmlValidator.validate(mergedWebXml, webXmlXsdSchema);
     } catch (SAXException e) {
       throw new MojoExecutionException("Error when validating with XSD merged web.xml !", e);
     } finally {
@@ -702,42 +1348,25 @@ public class JspcMojo extends AbstractMojo {
     }
   }
 
-  private StreamSource[] getWebXmlSchema() throws MalformedURLException {
-    URL webXmlXsdUrl = new URL(webXmlXsdSchema);
-    return new StreamSource[] {new StreamSource(webXmlXsdUrl.toExternalForm())};
-  }
-
-  private String writeWebXmlMergedFile(BufferedReader webXmlReader, Path mergedWebXmlPath) throws IOException {
+  private String writeWebXmlMergedFile(BufferedReader webXmlReader, Writer mergedWebXmlWriter) throws IOException {
     // read up to the insertion marker or the </webapp> if there is no marker
     String marker = (insertionMarker == null || insertionMarker.equals("") ? END_OF_WEBAPP : insertionMarker);
     String line = "";
     while ((line = webXmlReader.readLine()) != null) {
       if (line.indexOf(marker) >= 0) {
-        writeXmlFragments(mergedWebXmlPath);
-        writeEndOfWebappIfNecessary(mergedWebXmlPath, marker);
+        webXmlMappings.writeTo(mergedWebXmlWriter);
+        writeEndOfWebappIfNecessary(mergedWebXmlWriter, marker);
       } else {
-        Files.write(mergedWebXmlPath, (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
-            StandardOpenOption.APPEND);
+        mergedWebXmlWriter.write(line);
+        mergedWebXmlWriter.write(System.lineSeparator());
       }
     }
     return marker;
   }
 
-  private void writeEndOfWebappIfNecessary(Path mergedWebXmlPath, String marker) throws IOException {
+  private void writeEndOfWebappIfNecessary(Writer mergedWebXmlWriter, String marker) throws IOException {
     if (marker.equals(END_OF_WEBAPP)) {
-      Files.write(mergedWebXmlPath, END_OF_WEBAPP.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
-    }
-  }
-
-  private void writeXmlFragments(Path mergedWebXmlPath) throws IOException {
-    for (int index = 0; index < threads; index++) {
-      File fragmentWebXml = new File(getwebXmlFragmentFilename(index));
-      if (!fragmentWebXml.exists()) {
-        getLog().info("No fragment web.xml file generated for thread " + index);
-      } else {
-        // put in the generated fragment for the current thread
-        Files.write(mergedWebXmlPath, Files.readAllBytes(Paths.get(fragmentWebXml.toURI())), StandardOpenOption.APPEND);
-      }
+      mergedWebXmlWriter.write(END_OF_WEBAPP);
     }
   }
 
@@ -799,6 +1428,27 @@ public class JspcMojo extends AbstractMojo {
     }
   }
 
+  /**
+   * @return the WEB-INF/classes directory and the WEB-INF/lib jars of the webapp,
+   *         which JspC adds to the class loader of the jsps after the classpath
+   */
+  private List<URL> getWebAppClassPath() throws IOException {
+    List<URL> urls = new ArrayList<>();
+    File classes = new File(webAppSourceDirectory, "WEB-INF/classes");
+    if (classes.exists()) {
+      urls.add(classes.getCanonicalFile().toURI().toURL());
+    }
+    File[] libs = new File(webAppSourceDirectory, "WEB-INF/lib").listFiles();
+    if (libs != null) {
+      for (File lib : libs) {
+        if (lib.getName().toLowerCase(Locale.ROOT).endsWith(".jar")) {
+          urls.add(lib.getAbsoluteFile().toURI().toURL());
+        }
+      }
+    }
+    return urls;
+  }
+
   private File getWebXmlFile() throws IOException {
     File file = null;
     File baseDir = project.getBasedir().getCanonicalFile();
@@ -819,18 +1469,5 @@ public class JspcMojo extends AbstractMojo {
     file = new File(webAppSrcDir, WEB_XML);
     return file;
   }
-
-  /**
-   * Add thread index at the end of webXmlFragment filename to deal with
-   * multithreading. If the number of threads is equal to 1 (no multithreading) we
-   * don't add suffix to maintain the same behavior as in the mode without
-   * multithreading.
-   *
-   * @param threadIndex the index of current thread
-   * @return web xml fragment filename with thread index
-   */
-  private String getwebXmlFragmentFilename(int threadIndex) {
-    return threads == 1 ? webXmlFragment : webXmlFragment + "." + threadIndex;
-  }
 }
 
@@ -4,27 +4,110 @@ import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.logging.*;
 
+import org.apache.jasper.JasperException;
 import org.apache.jasper.JspC;
+import org.apache.jasper.compiler.Localizer;
 
 public class JspcWorker implements Callable<String> {
 
   private static final Logger logger = Logger.getLogger(JspC.class.getName());
 
-  private JspC jspc;
-  private List<String> jspFiles;
+  private JspCContextAccessor jspc;
+  private Queue<String> jspFiles;
+  private TimingReport timingReport;
+  private int thread;
+  private ConcurrencyController concurrencyController;
   private List<String> errors = new ArrayList<>();
 
-  public JspcWorker(JspC jspc, List<String> jspFiles) {
+  /**
+   * @param jspc     the instance of JspC used by this worker only
+   * @param jspFiles the jsps to compile, shared with the other workers
+   */
+  public JspcWorker(JspCContextAccessor jspc, Queue<String> jspFiles) {
+    this(jspc, jspFiles, null, 0);
+  }
+
+  /**
+   * @param jspc         the instance of JspC used by this worker only
+   * @param jspFiles     the jsps to compile, shared with the other workers
+   * @param timingReport receives the times of the jsps, shared with the other
+   *                     workers, or null if the jsps are not timed
+   * @param thread       the number of this worker in the timing report, from 1
+   */
+  public JspcWorker(JspCContextAccessor jspc, Queue<String> jspFiles, TimingReport timingReport, int thread) {
+    this(jspc, jspFiles, timingReport, thread, null);
+  }
+
+  /**
+   * @param jspc                  the instance of JspC used by this worker only
+   * @param jspFiles              the jsps to compile, shared with the other
+   *                              workers
+   * @param timingReport          receives the times of the jsps, shared with the
+   *                              other workers, or null if the jsps are not timed
+   * @param thread                the number of this worker, from 1
+   * @param concurrencyController tells when this worker may take jsps, or null
+   *                              if it always may
+   */
+  public JspcWorker(JspCContextAccessor jspc, Queue<String> jspFiles, TimingReport timingReport, int thread,
+      ConcurrencyController concurrencyController) {
     this.jspc = jspc;
     this.jspFiles = jspFiles;
+    this.timingReport = timingReport;
+    this.thread = thread;
+    this.concurrencyController = concurrencyController;
     logger.addHandler(new TomcatLogHandler());
   }
 
+  /**
+   * Does the same as {@link JspC#execute()} for the jsps taken from the queue
+   * until it is empty, but the web.xml fragment is written even if there is no
+   * jsp to compile.
+   * <p>
+   * When JspC fails on error, the first jsp which does not compile empties the
+   * queue, so that the other workers stop once done with their current jsp.
+   */
   @Override
   public String call() throws Exception {
-    jspc.setJspFiles(getAllCommaSeparatedJsp());
     try {
-      jspc.execute();
+      jspc.initWebXml();
+      String jspFile;
+      while ((jspFile = nextJsp()) != null) {
+        JspTimings timings = null;
+        if (timingReport != null) {
+          timings = timingReport.jspTaken(jspFile, thread);
+          jspc.setTimings(timings);
+        }
+        JspCompileEvent event = new JspCompileEvent();
+        event.begin();
+        long start = System.nanoTime();
+        JasperException failure = null;
+        try {
+          jspc.processFile(jspFile);
+        } catch (JasperException e) {
+          failure = e;
+          logger.log(Level.SEVERE, Localizer.getMessage("jspc.error.compilation"), e);
+        } finally {
+          boolean failed = failure != null;
+          if (timings != null) {
+            jspc.setTimings(null);
+            timingReport.jspProcessed(timings, System.nanoTime() - start, failed);
+          }
+          if (event.shouldCommit()) {
+            event.jsp = jspFile;
+            event.worker = thread;
+            event.failed = failed;
+            if (timings != null) {
+              event.setTimings(timings);
+            }
+            event.commit();
+          }
+        }
+        if (failure != null && jspc.getFailOnError()) {
+          jspFiles.clear();
+          return failure.getMessage();
+        }
+      }
+      jspc.completeWebXml();
     } catch (Exception e) {
       return e.getMessage();
     }
@@ -35,14 +118,13 @@ public class JspcWorker implements Callable<String> {
     return null;
   }
 
-  private String getAllCommaSeparatedJsp() {
-    String allJsp = "";
-    for (String fileName : jspFiles) {
-      allJsp += fileName + ",";
+  private String nextJsp() throws InterruptedException {
+    if (concurrencyController != null) {
+      concurrencyController.awaitActive(thread, jspFiles);
     }
-    return allJsp;
+    return jspFiles.poll();
   }
-  
+
   /**
    * We need to know when Jspc raise SEVERE error when we set
    * "failOnError=false"
@@ -0,0 +1,56 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import jakarta.servlet.*;
+
+/**
+ * Registers the servlets of the precompiled jsps when the webapp starts, instead
+ * of declaring them in its web.xml.
+ * <p>
+ * This class is not used by the plugin: it is copied with the compiled jsps, and
+ * declared as a service, when servletContainerInitializer is true. It reads the
+ * tables of servlets written by the plugin, one line per jsp with the servlet
+ * class and the jsp uri separated by a tab. A servlet already declared by the
+ * web.xml is left as it is.
+ */
+public class PrecompiledJspInitializer implements ServletContainerInitializer {
+
+  /**
+   * The table of the servlets, relative to the root of the classes.
+   */
+  public static final String SERVLETS_TABLE = "META-INF/precompiled-jsp-servlets.txt";
+
+  @Override
+  public void onStartup(Set<Class<?>> classes, ServletContext context) throws ServletException {
+    ClassLoader loader = context.getClassLoader();
+    try {
+      Enumeration<URL> tables = loader.getResources(SERVLETS_TABLE);
+      while (tables.hasMoreElements()) {
+        register(tables.nextElement(), context);
+      }
+    } catch (IOException e) {
+      throw new ServletException("Unable to read " + SERVLETS_TABLE, e);
+    }
+  }
+
+  private static void register(URL table, ServletContext context) throws IOException {
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(table.openStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        if (tab > 0) {
+          String servletClass = line.substring(0, tab);
+          ServletRegistration.Dynamic registration = context.addServlet(servletClass, servletClass);
+          if (registration != null) {
+            registration.addMapping(line.substring(tab + 1));
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.IOException;
+
+import jakarta.servlet.ServletContext;
+
+import org.apache.jasper.servlet.TldScanner;
+import org.xml.sax.SAXException;
+
+/**
+ * Scans the tlds as Tomcat does, and records the scan as a {@link TldScanEvent}.
+ */
+public class RecordedTldScanner extends TldScanner {
+
+  public RecordedTldScanner(ServletContext context, boolean namespaceAware, boolean validation,
+      boolean blockExternal) {
+    super(context, namespaceAware, validation, blockExternal);
+  }
+
+  @Override
+  public void scan() throws IOException, SAXException {
+    TldScanEvent event = new TldScanEvent();
+    event.begin();
+    long indexedTlds = getIndexedTlds();
+    long parsedTlds = getParsedTlds();
+    super.scan();
+    if (event.shouldCommit()) {
+      event.tlds = getTldResourcePathTaglibXmlMap().size();
+      event.indexedTlds = getIndexedTlds() - indexedTlds;
+      event.parsedTlds = getParsedTlds() - parsedTlds;
+      event.commit();
+    }
+  }
+
+  /**
+   * @return the number of tlds of the jars read from an index so far
+   */
+  protected long getIndexedTlds() {
+    return 0;
+  }
+
+  /**
+   * @return the number of tlds of the jars parsed so far, when the scanner uses
+   *         an index
+   */
+  protected long getParsedTlds() {
+    return 0;
+  }
+}
@@ -0,0 +1,414 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+import java.util.function.ToLongBiFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Times of the jsps processed by the workers of a build, by jsp, by phase and by
+ * worker, written as json and csv files at the end of the build.
+ * <p>
+ * The wall time starts when the jsps are queued, so the queue wait of a jsp is
+ * the time before a worker took it, and ends when the last worker is done. The
+ * idle time of a worker is the wall time minus the time it spent on jsps.
+ * <p>
+ * The bytes allocated by the workers are counted the same way, when the JVM
+ * counts the allocations of each thread.
+ */
+public class TimingReport {
+
+  private static final com.sun.management.ThreadMXBean THREADS = getThreadMXBean();
+
+  private final int jspCount;
+
+  private final long start = System.nanoTime();
+
+  private final List<JspTimings> jsps = new ArrayList<>();
+
+  private final AtomicInteger processed = new AtomicInteger();
+
+  private final long[] busy;
+
+  private final int[] jspsByThread;
+
+  private final long[] allocatedBytes;
+
+  private long end;
+
+  /**
+   * @param jspCount the number of jsps queued for the workers
+   * @param threads  the number of workers
+   */
+  public TimingReport(int jspCount, int threads) {
+    this.jspCount = jspCount;
+    this.busy = new long[threads];
+    this.jspsByThread = new int[threads];
+    this.allocatedBytes = new long[threads];
+  }
+
+  /**
+   * @return the bytes allocated so far by the current thread, or -1 if the JVM
+   *         does not count them
+   */
+  static long getAllocatedBytes() {
+    return THREADS != null ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+  }
+
+  private static com.sun.management.ThreadMXBean getThreadMXBean() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+      return (com.sun.management.ThreadMXBean) threads;
+    }
+    return null;
+  }
+
+  /**
+   * Called by the worker thread which took the jsp.
+   *
+   * @param jspUri the jsp taken from the queue
+   * @param thread the number of the worker, from 1
+   * @return the times of the jsp, to give back to
+   *         {@link #jspProcessed(JspTimings, long, boolean)}
+   */
+  public JspTimings jspTaken(String jspUri, int thread) {
+    JspTimings timings = new JspTimings(jspUri, thread, System.nanoTime() - start);
+    timings.setStartAllocatedBytes(getAllocatedBytes());
+    return timings;
+  }
+
+  /**
+   * Called by the worker thread which took the jsp.
+   *
+   * @param timings the times of the jsp
+   * @param total   how long the worker spent on the jsp, in nanoseconds
+   * @param failed  true if the jsp could not be compiled
+   */
+  public void jspProcessed(JspTimings timings, long total, boolean failed) {
+    long allocated = getAllocatedBytes();
+    if (allocated >= 0 && timings.getStartAllocatedBytes() >= 0) {
+      timings.setAllocatedBytes(allocated - timings.getStartAllocatedBytes());
+    }
+    timings.setTotal(total);
+    timings.setFailed(failed);
+    synchronized (this) {
+      jsps.add(timings);
+      busy[timings.getThread() - 1] += total;
+      jspsByThread[timings.getThread() - 1]++;
+      allocatedBytes[timings.getThread() - 1] += Math.max(timings.getAllocatedBytes(), 0);
+    }
+    processed.incrementAndGet();
+  }
+
+  /**
+   * Stop the wall time, once all the workers are done.
+   */
+  public synchronized void finish() {
+    end = System.nanoTime();
+  }
+
+  /**
+   * @return the number of jsps processed so far
+   */
+  public int getProcessed() {
+    return processed.get();
+  }
+
+  /**
+   * @return the number of jsps processed so far, their throughput and the
+   *         estimated remaining time
+   */
+  public String getProgress() {
+    int done = processed.get();
+    double seconds = (System.nanoTime() - start) / 1e9;
+    double throughput = seconds > 0 ? done / seconds : 0;
+    String remaining = throughput > 0
+        ? "about " + formatSeconds(Math.round((jspCount - done) / throughput)) + " remaining"
+        : "remaining time unknown";
+    return String.format(Locale.ROOT, "%d/%d jsps processed, %.1f jsps/sec, %s", done, jspCount, throughput,
+        remaining);
+  }
+
+  /**
+   * @param slowest the number of slowest jsps to list
+   * @return the lines of the summary of the report, for the log of the build
+   */
+  public synchronized List<String> getSummary(int slowest) {
+    List<String> lines = new ArrayList<>();
+    long wall = getWall();
+    lines.add(String.format(Locale.ROOT, "Timing of %d jsps: %s wall, %d threads busy %.0f%% of the time, %s allocated",
+        jsps.size(), formatMillis(wall), busy.length, getUtilization() * 100,
+        formatBytes(Arrays.stream(allocatedBytes).sum())));
+    StringBuilder phases = new StringBuilder();
+    StringBuilder phasesAllocations = new StringBuilder();
+    for (CompilePhase phase : CompilePhase.values()) {
+      long total = getPhaseTotal(phase, JspTimings::getPhase);
+      if (total > 0) {
+        phases.append(' ').append(phase.getLabel()).append('=').append(formatMillis(total));
+      }
+      long allocated = getPhaseTotal(phase, JspTimings::getPhaseAllocatedBytes);
+      if (allocated > 0) {
+        phasesAllocations.append(' ').append(phase.getLabel()).append('=').append(formatBytes(allocated));
+      }
+    }
+    if (phases.length() > 0) {
+      // the compiler of Tomcat is not timed by phase
+      lines.add("Time by phase:" + phases);
+    }
+    if (phasesAllocations.length() > 0) {
+      lines.add("Allocations by phase:" + phasesAllocations);
+    }
+    for (int thread = 1; thread <= busy.length; thread++) {
+      lines.add(String.format(Locale.ROOT, "Thread %d: %d jsps, busy %s, idle %s, %s allocated", thread,
+          jspsByThread[thread - 1], formatMillis(busy[thread - 1]), formatMillis(wall - busy[thread - 1]),
+          formatBytes(allocatedBytes[thread - 1])));
+    }
+    List<JspTimings> slowestJsps = getSlowest(slowest);
+    if (!slowestJsps.isEmpty()) {
+      lines.add("Slowest jsps:");
+    }
+    for (JspTimings jsp : slowestJsps) {
+      StringBuilder line = new StringBuilder("  ").append(jsp.getJspUri()).append(' ')
+          .append(formatMillis(jsp.getTotal()));
+      for (CompilePhase phase : CompilePhase.values()) {
+        if (jsp.getPhase(phase) >= 0) {
+          line.append(' ').append(phase.getLabel()).append('=').append(formatMillis(jsp.getPhase(phase)));
+        }
+      }
+      lines.add(line.toString());
+    }
+    List<JspTimings> mostAllocatingJsps = getMostAllocating(slowest);
+    if (!mostAllocatingJsps.isEmpty()) {
+      lines.add("Most allocating jsps:");
+    }
+    for (JspTimings jsp : mostAllocatingJsps) {
+      StringBuilder line = new StringBuilder("  ").append(jsp.getJspUri()).append(' ')
+          .append(formatBytes(jsp.getAllocatedBytes()));
+      for (CompilePhase phase : CompilePhase.values()) {
+        if (jsp.getPhaseAllocatedBytes(phase) >= 0) {
+          line.append(' ').append(phase.getLabel()).append('=').append(formatBytes(jsp.getPhaseAllocatedBytes(phase)));
+        }
+      }
+      lines.add(line.toString());
+    }
+    return lines;
+  }
+
+  /**
+   * @param slowest the number of slowest jsps to return
+   * @return the jsps which took the longest, slowest first
+   */
+  public synchronized List<JspTimings> getSlowest(int slowest) {
+    List<JspTimings> sorted = new ArrayList<>(jsps);
+    sorted.sort(Comparator.comparingLong(JspTimings::getTotal).reversed());
+    return sorted.subList(0, Math.min(slowest, sorted.size()));
+  }
+
+  /**
+   * @param count the number of jsps to return
+   * @return the jsps which allocated the most, first, without the ones whose
+   *         allocations were not counted
+   */
+  public synchronized List<JspTimings> getMostAllocating(int count) {
+    List<JspTimings> sorted = new ArrayList<>();
+    for (JspTimings jsp : jsps) {
+      if (jsp.getAllocatedBytes() >= 0) {
+        sorted.add(jsp);
+      }
+    }
+    sorted.sort(Comparator.comparingLong(JspTimings::getAllocatedBytes).reversed());
+    return sorted.subList(0, Math.min(count, sorted.size()));
+  }
+
+  /**
+   * @return the share of the wall time the workers spent on jsps, between 0 and
+   *         1
+   */
+  public synchronized double getUtilization() {
+    long wall = getWall();
+    if (wall <= 0 || busy.length == 0) {
+      return 0;
+    }
+    return (double) Arrays.stream(busy).sum() / (wall * busy.length);
+  }
+
+  /**
+   * @param file    where to write the report as json
+   * @param slowest the number of slowest jsps listed apart
+   */
+  public synchronized void writeJson(File file, int slowest) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      long wall = getWall();
+      writer.write("{\n");
+      writer.write("  \"jsps\": " + jsps.size() + ",\n");
+      writer.write("  \"threads\": " + busy.length + ",\n");
+      writer.write("  \"wallMillis\": " + toMillis(wall) + ",\n");
+      writer.write("  \"utilization\": " + String.format(Locale.ROOT, "%.3f", getUtilization()) + ",\n");
+      writer.write("  \"allocatedBytes\": " + Arrays.stream(allocatedBytes).sum() + ",\n");
+      writer.write("  \"phasesMillis\": {");
+      writePhases(writer, phase -> getPhaseTotal(phase, JspTimings::getPhase), TimingReport::toMillis);
+      writer.write("},\n");
+      writer.write("  \"phasesAllocatedBytes\": {");
+      writePhases(writer, phase -> getPhaseTotal(phase, JspTimings::getPhaseAllocatedBytes), String::valueOf);
+      writer.write("},\n");
+      writer.write("  \"workers\": [");
+      for (int thread = 1; thread <= busy.length; thread++) {
+        writer.write(thread > 1 ? ",\n    " : "\n    ");
+        writer.write("{\"thread\": " + thread + ", \"jsps\": " + jspsByThread[thread - 1] + ", \"busyMillis\": "
+            + toMillis(busy[thread - 1]) + ", \"idleMillis\": " + toMillis(wall - busy[thread - 1])
+            + ", \"allocatedBytes\": " + allocatedBytes[thread - 1] + "}");
+      }
+      writer.write("\n  ],\n");
+      writer.write("  \"slowest\": ");
+      writeUris(writer, getSlowest(slowest));
+      writer.write(",\n");
+      writer.write("  \"mostAllocating\": ");
+      writeUris(writer, getMostAllocating(slowest));
+      writer.write(",\n");
+      writer.write("  \"pages\": [");
+      for (int i = 0; i < jsps.size(); i++) {
+        JspTimings jsp = jsps.get(i);
+        writer.write(i > 0 ? ",\n    " : "\n    ");
+        writer.write("{\"jsp\": " + quote(jsp.getJspUri()) + ", \"thread\": " + jsp.getThread()
+            + ", \"failed\": " + jsp.isFailed() + ", \"queueWaitMillis\": " + toMillis(jsp.getQueueWait())
+            + ", \"totalMillis\": " + toMillis(jsp.getTotal()) + ", \"phasesMillis\": {");
+        writePhases(writer, jsp::getPhase, TimingReport::toMillis);
+        writer.write("}, \"allocatedBytes\": " + (jsp.getAllocatedBytes() < 0 ? "null" : jsp.getAllocatedBytes())
+            + ", \"phasesAllocatedBytes\": {");
+        writePhases(writer, jsp::getPhaseAllocatedBytes, String::valueOf);
+        writer.write("}}");
+      }
+      writer.write("\n  ]\n");
+      writer.write("}\n");
+    }
+  }
+
+  /**
+   * @param file where to write the times and allocations of the jsps as csv, one
+   *             line per jsp. The phases which were not timed or counted are
+   *             empty.
+   */
+  public synchronized void writeCsv(File file) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      writer.write("jsp,thread,failed,queueWaitMillis,totalMillis");
+      for (CompilePhase phase : CompilePhase.values()) {
+        writer.write("," + phase.getLabel() + "Millis");
+      }
+      writer.write(",allocatedBytes");
+      for (CompilePhase phase : CompilePhase.values()) {
+        writer.write("," + phase.getLabel() + "AllocatedBytes");
+      }
+      writer.write("\n");
+      for (JspTimings jsp : jsps) {
+        writer.write(quoteCsv(jsp.getJspUri()) + "," + jsp.getThread() + "," + jsp.isFailed() + ","
+            + toMillis(jsp.getQueueWait()) + "," + toMillis(jsp.getTotal()));
+        for (CompilePhase phase : CompilePhase.values()) {
+          writer.write("," + (jsp.getPhase(phase) < 0 ? "" : toMillis(jsp.getPhase(phase))));
+        }
+        writer.write("," + (jsp.getAllocatedBytes() < 0 ? "" : String.valueOf(jsp.getAllocatedBytes())));
+        for (CompilePhase phase : CompilePhase.values()) {
+          long allocated = jsp.getPhaseAllocatedBytes(phase);
+          writer.write("," + (allocated < 0 ? "" : String.valueOf(allocated)));
+        }
+        writer.write("\n");
+      }
+    }
+  }
+
+  private long getWall() {
+    return (end == 0 ? System.nanoTime() : end) - start;
+  }
+
+  private long getPhaseTotal(CompilePhase phase, ToLongBiFunction<JspTimings, CompilePhase> value) {
+    long total = 0;
+    for (JspTimings jsp : jsps) {
+      total += Math.max(value.applyAsLong(jsp, phase), 0);
+    }
+    return total;
+  }
+
+  private static void writePhases(Writer writer, ToLongFunction<CompilePhase> phaseValue,
+      LongFunction<String> format) throws IOException {
+    boolean first = true;
+    for (CompilePhase phase : CompilePhase.values()) {
+      long value = phaseValue.applyAsLong(phase);
+      if (value >= 0) {
+        writer.write((first ? "" : ", ") + quote(phase.getLabel()) + ": " + format.apply(value));
+        first = false;
+      }
+    }
+  }
+
+  private static void writeUris(Writer writer, List<JspTimings> jsps) throws IOException {
+    writer.write("[");
+    for (int i = 0; i < jsps.size(); i++) {
+      writer.write((i > 0 ? ", " : "") + quote(jsps.get(i).getJspUri()));
+    }
+    writer.write("]");
+  }
+
+  private static String toMillis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+
+  private static String formatMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos) + "ms";
+  }
+
+  private static String formatBytes(long bytes) {
+    return String.format(Locale.ROOT, "%.1fMB", bytes / (1024.0 * 1024.0));
+  }
+
+  private static String formatSeconds(long seconds) {
+    return seconds >= 60 ? (seconds / 60) + " min " + (seconds % 60) + " sec" : seconds + " sec";
+  }
+
+  static String quote(String value) {
+    StringBuilder result = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      switch (c) {
+      case '"':
+        result.append("\\\"");
+        break;
+      case '\\':
+        result.append("\\\\");
+        break;
+      case '\n':
+        result.append("\\n");
+        break;
+      case '\r':
+        result.append("\\r");
+        break;
+      case '\t':
+        result.append("\\t");
+        break;
+      default:
+        if (c < 0x20) {
+          result.append(String.format("\\u%04x", (int) c));
+        } else {
+          result.append(c);
+        }
+      }
+    }
+    return result.append('"').toString();
+  }
+
+  private static String quoteCsv(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return "\"" + value.replace("\"", "\"\"") + "\"";
+  }
+}
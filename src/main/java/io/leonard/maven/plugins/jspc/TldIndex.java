@@ -0,0 +1,356 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jakarta.servlet.jsp.tagext.FunctionInfo;
+import jakarta.servlet.jsp.tagext.TagAttributeInfo;
+import jakarta.servlet.jsp.tagext.TagVariableInfo;
+
+import org.apache.tomcat.util.descriptor.tld.TagFileXml;
+import org.apache.tomcat.util.descriptor.tld.TagXml;
+import org.apache.tomcat.util.descriptor.tld.TaglibXml;
+import org.apache.tomcat.util.descriptor.tld.ValidatorXml;
+
+/**
+ * The tlds found in the jars of the classpath by a previous build, already
+ * parsed. A jar is identified by its path, size and last modification time, the
+ * tlds of a jar which changed are parsed again.
+ * <p>
+ * The index is stored as a tab separated text file:
+ *
+ * <pre>
+ * version    &lt;version of Tomcat&gt;
+ * jar        &lt;path&gt; &lt;size&gt; &lt;lastModified&gt;
+ * tld        &lt;entryName&gt; &lt;tlibVersion&gt; &lt;jspVersion&gt; &lt;shortName&gt; &lt;uri&gt; &lt;info&gt;
+ * validator  &lt;validatorClass&gt;
+ * init-param &lt;name&gt; &lt;value&gt;
+ * listener   &lt;listenerClass&gt;
+ * function   &lt;name&gt; &lt;functionClass&gt; &lt;functionSignature&gt;
+ * tag        &lt;name&gt; &lt;tagClass&gt; &lt;teiClass&gt; &lt;bodyContent&gt; &lt;displayName&gt; &lt;smallIcon&gt; &lt;largeIcon&gt; &lt;info&gt; &lt;dynamicAttributes&gt;
+ * attribute  &lt;name&gt; &lt;required&gt; &lt;type&gt; &lt;reqTime&gt; &lt;fragment&gt; &lt;description&gt; &lt;deferredValue&gt; &lt;deferredMethod&gt; &lt;expectedTypeName&gt; &lt;methodSignature&gt;
+ * variable   &lt;nameGiven&gt; &lt;nameFromAttribute&gt; &lt;className&gt; &lt;declare&gt; &lt;scope&gt;
+ * tag-file   &lt;name&gt; &lt;path&gt; &lt;displayName&gt; &lt;smallIcon&gt; &lt;largeIcon&gt; &lt;info&gt;
+ * </pre>
+ *
+ * where each line belongs to the jar, tld or tag line above it. Tabs, line
+ * breaks and backslashes of the values are escaped, a missing value is written
+ * as \0.
+ */
+public class TldIndex {
+
+  private static final String HEADER = "# jspc-maven-plugin tld index, do not edit";
+  private static final String VERSION = "version";
+  private static final String JAR = "jar";
+  private static final String TLD = "tld";
+  private static final String VALIDATOR = "validator";
+  private static final String INIT_PARAM = "init-param";
+  private static final String LISTENER = "listener";
+  private static final String FUNCTION = "function";
+  private static final String TAG = "tag";
+  private static final String ATTRIBUTE = "attribute";
+  private static final String VARIABLE = "variable";
+  private static final String TAG_FILE = "tag-file";
+  private static final String NULL = "\\0";
+
+  private final Map<String, IndexedJar> previousJars = new LinkedHashMap<>();
+  private final Map<String, IndexedJar> jars = new LinkedHashMap<>();
+  private int hits;
+  private int misses;
+
+  /**
+   * @param jar       a jar of the classpath
+   * @param entryName the name of a tld in the jar
+   * @return the tld parsed by a previous build, or null if the jar changed since
+   *         then or if the tld is unknown
+   */
+  public synchronized TaglibXml get(File jar, String entryName) {
+    String path = jar.getAbsolutePath();
+    IndexedJar previousJar = previousJars.get(path);
+    TaglibXml tld = previousJar != null && previousJar.isSameAs(jar) ? previousJar.tlds.get(entryName) : null;
+    if (tld == null) {
+      misses++;
+      return null;
+    }
+    jars.computeIfAbsent(path, key -> new IndexedJar(previousJar.size, previousJar.lastModified)).tlds
+        .put(entryName, tld);
+    hits++;
+    return tld;
+  }
+
+  /**
+   * @param jar       a jar of the classpath
+   * @param entryName the name of a tld in the jar
+   * @param tld       the tld parsed by this build
+   */
+  public synchronized void put(File jar, String entryName, TaglibXml tld) {
+    jars.computeIfAbsent(jar.getAbsolutePath(), path -> new IndexedJar(jar.length(), jar.lastModified())).tlds
+        .put(entryName, tld);
+  }
+
+  /**
+   * @return the number of tlds found in the index
+   */
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of tlds which had to be parsed
+   */
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  /**
+   * @return the version of Tomcat parsing the tlds, the index of another version
+   *         is not used
+   */
+  private static String getVersion() {
+    return String.valueOf(TaglibXml.class.getPackage().getImplementationVersion());
+  }
+
+  /**
+   * @param file the file where a previous build saved its index
+   * @return the index read from the file, or an empty index if the file does not
+   *         exist, cannot be read or was written by another version of Tomcat
+   */
+  public static TldIndex load(File file) {
+    TldIndex index = new TldIndex();
+    if (!file.isFile()) {
+      return index;
+    }
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      String version = null;
+      IndexedJar jar = null;
+      TaglibXml tld = null;
+      TagXml tag = null;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split("\t", -1);
+        for (int i = 1; i < fields.length; i++) {
+          fields[i] = unescape(fields[i]);
+        }
+        switch (fields[0]) {
+        case VERSION:
+          version = fields[1];
+          break;
+        case JAR:
+          jar = new IndexedJar(Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+          index.previousJars.put(fields[1], jar);
+          break;
+        case TLD:
+          tld = new TaglibXml();
+          tld.setTlibVersion(fields[2]);
+          tld.setJspVersion(fields[3]);
+          tld.setShortName(fields[4]);
+          tld.setUri(fields[5]);
+          tld.setInfo(fields[6]);
+          jar.tlds.put(fields[1], tld);
+          break;
+        case VALIDATOR:
+          tld.setValidator(new ValidatorXml());
+          tld.getValidator().setValidatorClass(fields[1]);
+          break;
+        case INIT_PARAM:
+          tld.getValidator().addInitParam(fields[1], fields[2]);
+          break;
+        case LISTENER:
+          tld.addListener(fields[1]);
+          break;
+        case FUNCTION:
+          tld.addFunction(fields[1], fields[2], fields[3]);
+          break;
+        case TAG:
+          tag = new TagXml();
+          tag.setName(fields[1]);
+          tag.setTagClass(fields[2]);
+          tag.setTeiClass(fields[3]);
+          tag.setBodyContent(fields[4]);
+          tag.setDisplayName(fields[5]);
+          tag.setSmallIcon(fields[6]);
+          tag.setLargeIcon(fields[7]);
+          tag.setInfo(fields[8]);
+          tag.setDynamicAttributes(Boolean.parseBoolean(fields[9]));
+          tld.addTag(tag);
+          break;
+        case ATTRIBUTE:
+          tag.getAttributes().add(new TagAttributeInfo(fields[1], Boolean.parseBoolean(fields[2]), fields[3],
+              Boolean.parseBoolean(fields[4]), Boolean.parseBoolean(fields[5]), fields[6],
+              Boolean.parseBoolean(fields[7]), Boolean.parseBoolean(fields[8]), fields[9], fields[10]));
+          break;
+        case VARIABLE:
+          tag.getVariables().add(new TagVariableInfo(fields[1], fields[2], fields[3],
+              Boolean.parseBoolean(fields[4]), Integer.parseInt(fields[5])));
+          break;
+        case TAG_FILE:
+          TagFileXml tagFile = new TagFileXml();
+          tagFile.setName(fields[1]);
+          tagFile.setPath(fields[2]);
+          tagFile.setDisplayName(fields[3]);
+          tagFile.setSmallIcon(fields[4]);
+          tagFile.setLargeIcon(fields[5]);
+          tagFile.setInfo(fields[6]);
+          tld.addTagFile(tagFile);
+          break;
+        default:
+          break;
+        }
+      }
+      if (!getVersion().equals(version)) {
+        return new TldIndex();
+      }
+      return index;
+    } catch (IOException | RuntimeException e) {
+      // a corrupted index only means that the tlds are parsed again
+      return new TldIndex();
+    }
+  }
+
+  /**
+   * Write the tlds of the jars used by this build, in a temporary file first so
+   * that an interrupted build never leaves a truncated index behind.
+   *
+   * @param file the file where to save the index
+   * @throws IOException if the index cannot be written
+   */
+  public synchronized void save(File file) throws IOException {
+    Path target = file.toPath();
+    Files.createDirectories(target.getParent());
+    Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+    try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      writer.write(HEADER);
+      writer.newLine();
+      writeLine(writer, VERSION, getVersion());
+      for (Map.Entry<String, IndexedJar> jar : jars.entrySet()) {
+        writeLine(writer, JAR, jar.getKey(), String.valueOf(jar.getValue().size),
+            String.valueOf(jar.getValue().lastModified));
+        for (Map.Entry<String, TaglibXml> tld : jar.getValue().tlds.entrySet()) {
+          writeTld(writer, tld.getKey(), tld.getValue());
+        }
+      }
+    }
+    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void writeTld(BufferedWriter writer, String entryName, TaglibXml tld) throws IOException {
+    writeLine(writer, TLD, entryName, tld.getTlibVersion(), tld.getJspVersion(), tld.getShortName(), tld.getUri(),
+        tld.getInfo());
+    if (tld.getValidator() != null) {
+      writeLine(writer, VALIDATOR, tld.getValidator().getValidatorClass());
+      for (Map.Entry<String, String> initParam : tld.getValidator().getInitParams().entrySet()) {
+        writeLine(writer, INIT_PARAM, initParam.getKey(), initParam.getValue());
+      }
+    }
+    for (String listener : tld.getListeners()) {
+      writeLine(writer, LISTENER, listener);
+    }
+    for (FunctionInfo function : tld.getFunctions()) {
+      writeLine(writer, FUNCTION, function.getName(), function.getFunctionClass(), function.getFunctionSignature());
+    }
+    for (TagXml tag : tld.getTags()) {
+      writeLine(writer, TAG, tag.getName(), tag.getTagClass(), tag.getTeiClass(), tag.getBodyContent(),
+          tag.getDisplayName(), tag.getSmallIcon(), tag.getLargeIcon(), tag.getInfo(),
+          String.valueOf(tag.hasDynamicAttributes()));
+      for (TagAttributeInfo attribute : tag.getAttributes()) {
+        writeLine(writer, ATTRIBUTE, attribute.getName(), String.valueOf(attribute.isRequired()),
+            attribute.getTypeName(), String.valueOf(attribute.canBeRequestTime()),
+            String.valueOf(attribute.isFragment()), attribute.getDescription(),
+            String.valueOf(attribute.isDeferredValue()), String.valueOf(attribute.isDeferredMethod()),
+            attribute.getExpectedTypeName(), attribute.getMethodSignature());
+      }
+      for (TagVariableInfo variable : tag.getVariables()) {
+        writeLine(writer, VARIABLE, variable.getNameGiven(), variable.getNameFromAttribute(),
+            variable.getClassName(), String.valueOf(variable.getDeclare()), String.valueOf(variable.getScope()));
+      }
+    }
+    for (TagFileXml tagFile : tld.getTagFiles()) {
+      writeLine(writer, TAG_FILE, tagFile.getName(), tagFile.getPath(), tagFile.getDisplayName(),
+          tagFile.getSmallIcon(), tagFile.getLargeIcon(), tagFile.getInfo());
+    }
+  }
+
+  private static void writeLine(BufferedWriter writer, String type, String... fields) throws IOException {
+    writer.write(type);
+    for (String field : fields) {
+      writer.write('\t');
+      writer.write(escape(field));
+    }
+    writer.newLine();
+  }
+
+  static String escape(String value) {
+    if (value == null) {
+      return NULL;
+    }
+    StringBuilder escaped = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+      case '\\':
+        escaped.append("\\\\");
+        break;
+      case '\t':
+        escaped.append("\\t");
+        break;
+      case '\n':
+        escaped.append("\\n");
+        break;
+      case '\r':
+        escaped.append("\\r");
+        break;
+      default:
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  static String unescape(String value) {
+    if (NULL.equals(value)) {
+      return null;
+    }
+    StringBuilder unescaped = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\\' && i + 1 < value.length()) {
+        char next = value.charAt(++i);
+        unescaped.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+      } else {
+        unescaped.append(c);
+      }
+    }
+    return unescaped.toString();
+  }
+
+  /**
+   * The tlds of a jar, with the size and last modification time of the jar when
+   * they were parsed.
+   */
+  private static final class IndexedJar {
+
+    private final long size;
+    private final long lastModified;
+    private final Map<String, TaglibXml> tlds = new LinkedHashMap<>();
+
+    IndexedJar(long size, long lastModified) {
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    boolean isSameAs(File jar) {
+      return jar.length() == size && jar.lastModified() == lastModified;
+    }
+  }
+}
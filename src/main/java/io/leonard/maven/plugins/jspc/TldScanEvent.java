@@ -0,0 +1,31 @@
+package io.leonard.maven.plugins.jspc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the scan of the tlds of the webapp and of the jars,
+ * done once per build.
+ */
+@Name("io.leonard.jspc.TldScan")
+@Label("TLD Scan")
+@Category("JSPC")
+@Description("Scan of the tlds of the webapp and of the jars of the classpath")
+@StackTrace(false)
+public class TldScanEvent extends Event {
+
+  @Label("TLDs")
+  int tlds;
+
+  @Label("TLDs Read From Index")
+  @Description("Tlds of the jars read from the tld index of the previous build")
+  long indexedTlds;
+
+  @Label("TLDs Parsed")
+  @Description("Tlds of the jars parsed because they were not in the tld index")
+  long parsedTlds;
+}
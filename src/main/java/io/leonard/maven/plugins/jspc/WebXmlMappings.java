@@ -0,0 +1,71 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.*;
+import java.util.*;
+
+import org.apache.jasper.compiler.Localizer;
+
+/**
+ * The &lt;servlet&gt; and &lt;servlet-mapping&gt; declarations of the compiled
+ * jsps, collected in memory from all the workers, so that the web.xml fragment
+ * and the merged web.xml are each written once.
+ * <p>
+ * The declarations are written in the order of the workers, all the servlets
+ * before all the mappings, as the web.xml of the old versions of the servlet
+ * specification require.
+ * <p>
+ * The servlets are also kept as a table, one line per jsp with the servlet class
+ * and the jsp uri separated by a tab, read by {@link PrecompiledJspInitializer}.
+ */
+public class WebXmlMappings {
+
+  private final SortedMap<Integer, String> servlets = new TreeMap<>();
+
+  private final SortedMap<Integer, String> mappings = new TreeMap<>();
+
+  private final SortedMap<Integer, StringBuilder> servletsTable = new TreeMap<>();
+
+  /**
+   * @param workerIndex the index of the worker which compiled the jsps
+   * @param servlet     the &lt;servlet&gt; declarations of the jsps
+   * @param mapping     the &lt;servlet-mapping&gt; declarations of the jsps
+   */
+  public synchronized void add(int workerIndex, CharSequence servlet, CharSequence mapping) {
+    servlets.merge(workerIndex, servlet.toString(), String::concat);
+    mappings.merge(workerIndex, mapping.toString(), String::concat);
+  }
+
+  /**
+   * @param workerIndex  the index of the worker which compiled the jsp
+   * @param servletClass the servlet generated for the jsp, also its name
+   * @param jspUri       the uri of the jsp, mapped to the servlet
+   */
+  public synchronized void addServlet(int workerIndex, String servletClass, String jspUri) {
+    servletsTable.computeIfAbsent(workerIndex, index -> new StringBuilder()).append(servletClass).append('\t')
+        .append(jspUri).append('\n');
+  }
+
+  /**
+   * Write the declarations between the same comments as JspC does in a web.xml
+   * fragment.
+   */
+  public synchronized void writeTo(Writer writer) throws IOException {
+    writer.write(Localizer.getMessage("jspc.webinc.header"));
+    for (String servlet : servlets.values()) {
+      writer.write(servlet);
+    }
+    for (String mapping : mappings.values()) {
+      writer.write(mapping);
+    }
+    writer.write(Localizer.getMessage("jspc.webinc.footer"));
+  }
+
+  /**
+   * Write the table of the servlets, in the same order as the declarations.
+   */
+  public synchronized void writeServletsTableTo(Writer writer) throws IOException {
+    for (StringBuilder servlets : servletsTable.values()) {
+      writer.append(servlets);
+    }
+  }
+}
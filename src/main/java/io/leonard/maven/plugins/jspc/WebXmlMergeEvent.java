@@ -0,0 +1,28 @@
+package io.leonard.maven.plugins.jspc;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of the write of the web.xml fragment collected from the
+ * workers, or of its merge into the web.xml.
+ */
+@Name("io.leonard.jspc.WebXmlMerge")
+@Label("web.xml Merge")
+@Category("JSPC")
+@Description("Write of the web.xml fragment of the workers, or merge of the fragment into the web.xml")
+@StackTrace(false)
+public class WebXmlMergeEvent extends Event {
+
+  @Label("File")
+  @Description("The fragment or the merged web.xml")
+  String file;
+
+  @Label("Fragment")
+  @Description("True for the write of the fragment, false for the merge into the web.xml")
+  boolean fragment;
+}
@@ -0,0 +1,194 @@
+package io.leonard.maven.plugins.jspc;
+
+import java.io.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.*;
+
+import org.apache.tomcat.util.descriptor.DigesterFactory;
+import org.apache.tomcat.util.descriptor.LocalResolver;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.*;
+import org.xml.sax.ext.EntityResolver2;
+
+/**
+ * Validation of a web.xml with the schemas and DTDs of the servlet
+ * specification bundled with Tomcat, so that they are not downloaded. Only the
+ * schemas and DTDs unknown to Tomcat are still read from their url.
+ * <p>
+ * The web.xml is parsed with SAX, it is never loaded in memory as a whole, and
+ * the compiled schemas are kept for the lifetime of the plugin.
+ */
+public final class WebXmlValidator {
+
+  private static final EntityResolver2 RESOLVER = new LocalResolver(DigesterFactory.SERVLET_API_PUBLIC_IDS,
+      DigesterFactory.SERVLET_API_SYSTEM_IDS, false);
+
+  private static final Map<String, Schema> SCHEMAS = new ConcurrentHashMap<>();
+
+  private WebXmlValidator() {
+  }
+
+  /**
+   * Check that a web.xml is well formed. Its DTD, if it declares one, is read
+   * but the web.xml is not validated against it.
+   */
+  public static void checkWellFormed(File webXml) throws IOException, SAXException {
+    newXmlReader().parse(new InputSource(webXml.toURI().toString()));
+  }
+
+  /**
+   * Validate a web.xml against a schema.
+   *
+   * @param schemaUrl the url of the schema, read from the bundled schemas when
+   *                  Tomcat knows it
+   */
+  public static void validate(File webXml, String schemaUrl) throws IOException, SAXException {
+    Validator validator = getSchema(schemaUrl).newValidator();
+    validator.setResourceResolver(new LocalResourceResolver());
+    validator.validate(new SAXSource(newXmlReader(), new InputSource(webXml.toURI().toString())));
+  }
+
+  /**
+   * @return the compiled schema, compiled once for all the builds
+   */
+  static Schema getSchema(String schemaUrl) throws IOException, SAXException {
+    Schema schema = SCHEMAS.get(schemaUrl);
+    if (schema == null) {
+      SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+      schemaFactory.setResourceResolver(new LocalResourceResolver());
+      InputSource source = RESOLVER.resolveEntity(null, null, null, schemaUrl);
+      schema = schemaFactory.newSchema(new StreamSource(source.getSystemId()));
+      SCHEMAS.putIfAbsent(schemaUrl, schema);
+    }
+    return schema;
+  }
+
+  private static XMLReader newXmlReader() throws SAXException {
+    try {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      XMLReader reader = factory.newSAXParser().getXMLReader();
+      reader.setEntityResolver(RESOLVER);
+      return reader;
+    } catch (ParserConfigurationException e) {
+      throw new SAXException(e);
+    }
+  }
+
+  /**
+   * Resolves the schemas imported by a schema, and the DTDs when validating,
+   * with the resolver of Tomcat.
+   */
+  private static class LocalResourceResolver implements LSResourceResolver {
+
+    @Override
+    public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId,
+        String baseURI) {
+      try {
+        InputSource source = RESOLVER.resolveEntity(null, publicId, baseURI, systemId);
+        return source == null ? null : new LocalInput(source.getPublicId(), source.getSystemId(), baseURI);
+      } catch (SAXException | IOException e) {
+        // let the parser report the missing resource
+        return null;
+      }
+    }
+  }
+
+  private static class LocalInput implements LSInput {
+
+    private String publicId;
+
+    private String systemId;
+
+    private String baseURI;
+
+    LocalInput(String publicId, String systemId, String baseURI) {
+      this.publicId = publicId;
+      this.systemId = systemId;
+      this.baseURI = baseURI;
+    }
+
+    @Override
+    public Reader getCharacterStream() {
+      return null;
+    }
+
+    @Override
+    public void setCharacterStream(Reader characterStream) {
+    }
+
+    @Override
+    public InputStream getByteStream() {
+      return null;
+    }
+
+    @Override
+    public void setByteStream(InputStream byteStream) {
+    }
+
+    @Override
+    public String getStringData() {
+      return null;
+    }
+
+    @Override
+    public void setStringData(String stringData) {
+    }
+
+    @Override
+    public String getSystemId() {
+      return systemId;
+    }
+
+    @Override
+    public void setSystemId(String systemId) {
+      this.systemId = systemId;
+    }
+
+    @Override
+    public String getPublicId() {
+      return publicId;
+    }
+
+    @Override
+    public void setPublicId(String publicId) {
+      this.publicId = publicId;
+    }
+
+    @Override
+    public String getBaseURI() {
+      return baseURI;
+    }
+
+    @Override
+    public void setBaseURI(String baseURI) {
+      this.baseURI = baseURI;
+    }
+
+    @Override
+    public String getEncoding() {
+      return null;
+    }
+
+    @Override
+    public void setEncoding(String encoding) {
+    }
+
+    @Override
+    public boolean getCertifiedText() {
+      return false;
+    }
+
+    @Override
+    public void setCertifiedText(boolean certifiedText) {
+    }
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.compiler;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.leonard.maven.plugins.jspc.ClassFileCache;
+import io.leonard.maven.plugins.jspc.CompiledJspJar;
+import org.apache.jasper.JasperException;
+import org.apache.jasper.JspCompilationContext;
+import org.apache.juli.logging.*;
+import org.eclipse.jdt.internal.compiler.*;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.env.*;
+
+/**
+ * The servlets generated by {@link BatchJDTCompiler} during a build, compiled
+ * all together by a single JDT compilation once every jsp has been generated.
+ * <p>
+ * The binary types of the classpath are then resolved once for all the jsps
+ * instead of once per jsp, and JDT can process the compilation units in
+ * parallel. The errors are still mapped to the lines of each jsp with
+ * {@link ErrorDispatcher}.
+ */
+public class BatchCompilation {
+
+	protected final Log log = LogFactory.getLog(getClass()); // must not be static
+
+	private final ClassFileCache resourcesCache;
+
+	private final Map<String, GeneratedServlet> servlets = new ConcurrentHashMap<>();
+
+	/**
+	 * @param resourcesCache the cache of class lookups shared by the build
+	 */
+	public BatchCompilation(ClassFileCache resourcesCache) {
+		this.resourcesCache = resourcesCache;
+	}
+
+	void add(GeneratedServlet servlet) throws InterruptedException, JasperException {
+		servlets.put(servlet.className, servlet);
+	}
+
+	/**
+	 * @param className the name of a generated servlet
+	 * @param callback  called after the servlet has been compiled without error
+	 * @return false if the servlet is not compiled by this batch
+	 */
+	public boolean whenCompiled(String className, Runnable callback) {
+		GeneratedServlet servlet = servlets.get(className);
+		if (servlet == null) {
+			return false;
+		}
+		servlet.callback = callback;
+		return true;
+	}
+
+	/**
+	 * @return the number of servlets compiled by this batch
+	 */
+	public int size() {
+		return servlets.size();
+	}
+
+	/**
+	 * Compile all the generated servlets.
+	 *
+	 * @return the compilation errors of the jsps, empty if all of them compiled
+	 */
+	public List<String> compile() {
+		List<String> errors = new ArrayList<>();
+		if (servlets.isEmpty()) {
+			return errors;
+		}
+
+		long t1 = System.currentTimeMillis();
+		List<GeneratedServlet> compiledServlets = new ArrayList<>(servlets.values());
+		compile(compiledServlets);
+		for (GeneratedServlet servlet : compiledServlets) {
+			writeAndComplete(servlet, errors);
+		}
+		runCallbacks();
+
+		if (log.isDebugEnabled()) {
+			long t2 = System.currentTimeMillis();
+			log.debug("Compiled " + compiledServlets.size() + " servlets " + (t2 - t1) + "ms");
+		}
+		return errors;
+	}
+
+	/**
+	 * Stop the compilation of the servlets not compiled yet, when the build ends
+	 * before {@link #compile()}. Nothing runs in the background by default.
+	 */
+	public void shutdown() {
+	}
+
+	/**
+	 * Compile servlets together with a single JDT compilation. The class files
+	 * and the errors are kept in each servlet, nothing is written.
+	 */
+	protected void compile(List<GeneratedServlet> compiledServlets) {
+		compiledServlets.sort(Comparator.comparing(servlet -> servlet.className));
+		Map<String, ICompilationUnit> compilationUnits = new HashMap<>();
+		Map<String, GeneratedServlet> servletsBySourceFile = new HashMap<>();
+		for (GeneratedServlet servlet : compiledServlets) {
+			compilationUnits.put(servlet.className, servlet.compilationUnit);
+			servletsBySourceFile.put(servlet.sourceFile, servlet);
+		}
+
+		// all the servlets share the same output directory and parent class loader
+		JspCompilationContext firstCtxt = compiledServlets.get(0).ctxt;
+		final INameEnvironment env = new ParallelJDTCompiler.JspNameEnvironment(compilationUnits,
+				firstCtxt.getJspLoader(), resourcesCache, log);
+
+		final IErrorHandlingPolicy policy = DefaultErrorHandlingPolicies.proceedWithAllProblems();
+
+		final ICompilerRequestor requestor = new ICompilerRequestor() {
+			@Override
+			public void acceptResult(CompilationResult result) {
+				GeneratedServlet servlet = servletsBySourceFile.get(new String(result.getFileName()));
+				if (servlet == null) {
+					return;
+				}
+				ParallelJDTCompiler.addErrors(result, servlet.pageNodes, servlet.ctxt,
+						servlet.sourceInMemory ? servlet.compilationUnit.getContents() : null, servlet.problems, log);
+				if (servlet.problems.isEmpty()) {
+					servlet.classFiles = ParallelJDTCompiler.getClassFiles(result, servlet.outputDir);
+				}
+			}
+		};
+
+		JDTCompilerConfiguration configuration = JDTCompilerConfiguration.get(firstCtxt.getOptions(), log);
+		Compiler compiler = new Compiler(env, policy, configuration.getCompilerOptions(), requestor,
+				configuration.getProblemFactory());
+		compiler.useSingleThread = !isParallel();
+		try {
+			compiler.compile(compilationUnits.values().toArray(new ICompilationUnit[0]));
+		} finally {
+			firstCtxt.clearJspLoader();
+		}
+	}
+
+	/**
+	 * @return true if JDT may process the compilation units in parallel
+	 */
+	protected boolean isParallel() {
+		return true;
+	}
+
+	/**
+	 * Write the class files of a compiled servlet, then finish its compilation.
+	 */
+	protected void writeAndComplete(GeneratedServlet servlet, List<String> errors) {
+		try {
+			ParallelJDTCompiler.writeClassFiles(servlet.classFiles, servlet.jar, false, servlet.smapSuppressed);
+			servlet.complete();
+		} catch (JasperException | IOException e) {
+			errors.add(e.getMessage());
+		}
+	}
+
+	/**
+	 * Run the callbacks of the servlets compiled without error.
+	 */
+	protected void runCallbacks() {
+		for (GeneratedServlet servlet : servlets.values()) {
+			if (servlet.compiled && servlet.callback != null) {
+				servlet.callback.run();
+			}
+		}
+		servlets.clear();
+	}
+
+	/**
+	 * What {@link Compiler#compile(boolean, boolean)} does after the class
+	 * generation, for a servlet which has been compiled by the batch.
+	 */
+	static class GeneratedServlet {
+
+		private final JspCompilationContext ctxt;
+		private final String className;
+		private final String sourceFile;
+		private final String outputDir;
+		private final boolean smapSuppressed;
+		private final boolean sourceInMemory;
+		private final CompiledJspJar jar;
+		private final Long jspLastModified;
+		private final List<JavacErrorDetail> problems = Collections.synchronizedList(new ArrayList<>());
+		// released once the servlet is compiled
+		private ICompilationUnit compilationUnit;
+		private Node.Nodes pageNodes;
+		private ErrorDispatcher errDispatcher;
+		private Map<String, SmapStratum> smaps;
+		private Map<String, byte[]> classFiles = Collections.emptyMap();
+		private volatile Runnable callback;
+		private volatile boolean compiled;
+
+		GeneratedServlet(JspCompilationContext ctxt, String className, Node.Nodes pageNodes,
+				ErrorDispatcher errDispatcher, Map<String, SmapStratum> smaps, boolean smapSuppressed,
+				char[] javaSource, CompiledJspJar jar, Log log) {
+			this.ctxt = ctxt;
+			this.className = className;
+			this.sourceFile = ctxt.getServletJavaFileName();
+			this.outputDir = ctxt.getOptions().getScratchDir().getAbsolutePath();
+			this.compilationUnit = new ParallelJDTCompiler.JspCompilationUnit(sourceFile, className,
+					ctxt.getOptions().getJavaEncoding(), javaSource, log);
+			this.pageNodes = pageNodes;
+			this.errDispatcher = errDispatcher;
+			this.smaps = smaps;
+			this.smapSuppressed = smapSuppressed;
+			this.sourceInMemory = javaSource != null;
+			this.jar = jar;
+			this.jspLastModified = ctxt.getLastModified(ctxt.getJspFile());
+		}
+
+		void complete() throws JasperException, IOException {
+			try {
+				doComplete();
+				compiled = true;
+			} finally {
+				compilationUnit = null;
+				pageNodes = null;
+				errDispatcher = null;
+				smaps = null;
+				classFiles = Collections.emptyMap();
+			}
+		}
+
+		private void doComplete() throws JasperException, IOException {
+			if (!ctxt.keepGenerated() && !sourceInMemory) {
+				File javaFile = new File(sourceFile);
+				if (!javaFile.delete()) {
+					throw new JasperException(
+							Localizer.getMessage("jsp.warning.compiler.javafile.delete.fail", javaFile));
+				}
+			}
+
+			if (!problems.isEmpty()) {
+				JavacErrorDetail[] jeds = problems.toArray(new JavacErrorDetail[0]);
+				errDispatcher.javacError(jeds);
+			}
+
+			File targetFile = new File(ctxt.getClassFileName());
+			if (jar == null ? !targetFile.exists() : classFiles.isEmpty()) {
+				throw new JasperException(Localizer.getMessage("jsp.error.compilation", sourceFile,
+						Localizer.getMessage("jsp.error.compilation.jdt")));
+			}
+			if (jar == null && jspLastModified != null
+					&& !targetFile.setLastModified(jspLastModified.longValue())) {
+				throw new JasperException(Localizer.getMessage("jsp.error.setLastModified", targetFile));
+			}
+
+			// JSR45 Support
+			if (!smapSuppressed) {
+				SmapUtil.installSmap(smaps);
+				ParallelJDTCompiler.moveClassFiles(classFiles.keySet(), jar, false);
+			}
+		}
+	}
+}
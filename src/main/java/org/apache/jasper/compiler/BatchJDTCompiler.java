@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.compiler;
+
+import java.io.*;
+import java.util.*;
+
+import io.leonard.maven.plugins.jspc.JspCContextAccessor;
+import org.apache.jasper.JasperException;
+import org.apache.juli.logging.*;
+
+/**
+ * Based on {@link ParallelJDTCompiler}.<br>
+ * Only generates the java source of the jsps: their classes are generated
+ * later, all together, by the {@link BatchCompilation} of the build. The tag
+ * files are still compiled immediately since the jsps using them need their
+ * classes during the generation.
+ */
+public class BatchJDTCompiler extends ParallelJDTCompiler {
+
+	private final Log log = LogFactory.getLog(BatchJDTCompiler.class); // must not be static
+
+	@Override
+	protected void generateClass(Map<String, SmapStratum> smaps)
+			throws FileNotFoundException, JasperException, Exception {
+		BatchCompilation batchCompilation = getBatchCompilation();
+		if (batchCompilation == null || ctxt.isTagFile() || ctxt.isPrototypeMode()) {
+			super.generateClass(smaps);
+			return;
+		}
+
+		// the class of a previous build must not look up to date if the batch fails
+		File classFile = new File(ctxt.getClassFileName());
+		if (classFile.exists() && !classFile.delete()) {
+			log.warn("Unable to delete " + classFile);
+		}
+
+		String packageName = ctxt.getServletPackageName();
+		String targetClassName = ((packageName.length() != 0) ? (packageName + ".") : "") + ctxt.getServletClassName();
+		batchCompilation.add(new BatchCompilation.GeneratedServlet(ctxt, targetClassName, pageNodes, errDispatcher,
+				smaps, options.isSmapSuppressed(), javaSource, getCompiledJspJar(), log));
+	}
+
+	/**
+	 * @return the batch compilation of the build, or null when not run by the
+	 *         plugin
+	 */
+	private BatchCompilation getBatchCompilation() {
+		if (options instanceof JspCContextAccessor) {
+			return ((JspCContextAccessor) options).getBatchCompilation();
+		}
+		return null;
+	}
+}
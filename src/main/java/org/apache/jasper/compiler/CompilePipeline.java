@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.compiler;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import io.leonard.maven.plugins.jspc.ClassFileCache;
+import org.apache.jasper.JasperException;
+
+/**
+ * A {@link BatchCompilation} which compiles the servlets while the jsps are
+ * still being generated.
+ * <p>
+ * The generation workers put the generated servlets in a bounded queue, from
+ * which compiler threads take them, a few at a time. The compiled servlets go
+ * through a second bounded queue to a single writer thread, which writes their
+ * class files and smaps. When a stage is slower than the previous one, its
+ * queue gets full and the previous stage waits, so the memory used by the
+ * pending servlets stays bounded whatever the number of jsps.
+ * <p>
+ * When a stage fails with an unexpected error, the pipeline stops: the
+ * servlets generated afterwards are refused and {@link #compile()} reports the
+ * error.
+ */
+public class CompilePipeline extends BatchCompilation {
+
+	/**
+	 * Maximum number of servlets compiled together by a compiler thread.
+	 */
+	private static final int MAX_SERVLETS_PER_COMPILATION = 16;
+
+	private static final long POLL_MILLIS = 50;
+
+	private final int compilerThreads;
+
+	private final BlockingQueue<GeneratedServlet> generatedServlets;
+
+	private final BlockingQueue<List<GeneratedServlet>> compiledServlets;
+
+	private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+
+	private final List<Thread> compilers = new ArrayList<>();
+
+	private Thread writer;
+
+	private volatile boolean generationDone;
+
+	private volatile boolean compilationDone;
+
+	private volatile Throwable failure;
+
+	private volatile boolean stopped;
+
+	/**
+	 * @param resourcesCache  the cache of class lookups shared by the build
+	 * @param compilerThreads the number of threads compiling the servlets
+	 * @param queueSize       the maximum number of servlets waiting between two
+	 *                        stages
+	 */
+	public CompilePipeline(ClassFileCache resourcesCache, int compilerThreads, int queueSize) {
+		super(resourcesCache);
+		this.compilerThreads = compilerThreads;
+		this.generatedServlets = new ArrayBlockingQueue<>(queueSize);
+		this.compiledServlets = new ArrayBlockingQueue<>(Math.max(1, queueSize / MAX_SERVLETS_PER_COMPILATION));
+	}
+
+	/**
+	 * Start the compiler and writer threads.
+	 */
+	public void start() {
+		for (int i = 0; i < compilerThreads; i++) {
+			Thread compiler = new Thread(this::runCompiler, "jspc-compiler-" + (i + 1));
+			compiler.setDaemon(true);
+			compilers.add(compiler);
+			compiler.start();
+		}
+		writer = new Thread(this::runWriter, "jspc-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	void add(GeneratedServlet servlet) throws InterruptedException, JasperException {
+		super.add(servlet);
+		if (!put(generatedServlets, servlet)) {
+			throw new JasperException("The compilation pipeline is stopped", failure);
+		}
+	}
+
+	/**
+	 * Wait until the servlets generated so far are compiled and written. No
+	 * servlet must be generated anymore.
+	 *
+	 * @return the compilation errors of the jsps, empty if all of them compiled
+	 */
+	@Override
+	public List<String> compile() {
+		try {
+			generationDone = true;
+			for (Thread compiler : compilers) {
+				compiler.join();
+			}
+			compilationDone = true;
+			if (writer != null) {
+				writer.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			errors.add("Interrupted while waiting for the compilation of the jsps");
+		}
+		if (failure != null) {
+			errors.add("The compilation pipeline failed: " + failure);
+		}
+		runCallbacks();
+		return new ArrayList<>(errors);
+	}
+
+	/**
+	 * Stop the compiler and writer threads, whether they are done or not.
+	 */
+	@Override
+	public void shutdown() {
+		stopped = true;
+		for (Thread compiler : compilers) {
+			compiler.interrupt();
+		}
+		if (writer != null) {
+			writer.interrupt();
+		}
+	}
+
+	@Override
+	protected boolean isParallel() {
+		// the compiler threads already run in parallel
+		return false;
+	}
+
+	private void runCompiler() {
+		try {
+			while (isRunning()) {
+				GeneratedServlet servlet = generatedServlets.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (servlet == null) {
+					if (generationDone && generatedServlets.isEmpty()) {
+						return;
+					}
+					continue;
+				}
+				List<GeneratedServlet> servlets = new ArrayList<>();
+				servlets.add(servlet);
+				generatedServlets.drainTo(servlets, MAX_SERVLETS_PER_COMPILATION - 1);
+				try {
+					compile(servlets);
+				} catch (RuntimeException | LinkageError e) {
+					// the servlets without class file are reported by the writer
+					log.error("Compilation error", e);
+				}
+				if (!put(compiledServlets, servlets)) {
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable t) {
+			fail(t);
+		}
+	}
+
+	private void runWriter() {
+		try {
+			while (isRunning()) {
+				List<GeneratedServlet> servlets = compiledServlets.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (servlets == null) {
+					if (compilationDone && compiledServlets.isEmpty()) {
+						return;
+					}
+					continue;
+				}
+				for (GeneratedServlet servlet : servlets) {
+					writeAndComplete(servlet, errors);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Throwable t) {
+			fail(t);
+		}
+	}
+
+	private boolean isRunning() {
+		return !stopped && failure == null;
+	}
+
+	private void fail(Throwable t) {
+		if (failure == null) {
+			failure = t;
+		}
+		log.error("The compilation pipeline failed", t);
+	}
+
+	/**
+	 * Wait for room in the queue of the next stage while the pipeline runs.
+	 *
+	 * @return false if the pipeline stopped before the element could be queued
+	 */
+	private <T> boolean put(BlockingQueue<T> queue, T element) throws InterruptedException {
+		while (isRunning()) {
+			if (queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.compiler;
+
+import java.util.*;
+
+import io.leonard.maven.plugins.jspc.JspCContextAccessor;
+import org.apache.jasper.Options;
+import org.apache.juli.logging.Log;
+import org.eclipse.jdt.internal.compiler.IProblemFactory;
+import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
+import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
+
+/**
+ * The options of the JDT compiler and its problem factory, built once from the
+ * Jasper options and shared by all the compilations using them. JDT only reads
+ * them while compiling.
+ */
+public class JDTCompilerConfiguration {
+
+	private final CompilerOptions compilerOptions;
+
+	private final IProblemFactory problemFactory;
+
+	public JDTCompilerConfiguration(Options jspOptions, Log log) {
+		this.compilerOptions = new CompilerOptions(getCompilerSettings(jspOptions, log));
+		this.compilerOptions.parseLiteralExpressionsAsConstants = true;
+		this.problemFactory = new DefaultProblemFactory(Locale.getDefault());
+	}
+
+	/**
+	 * @return the configuration kept by the JspC of the plugin, or a new one for
+	 *         another JspC
+	 */
+	static JDTCompilerConfiguration get(Options jspOptions, Log log) {
+		if (jspOptions instanceof JspCContextAccessor) {
+			return ((JspCContextAccessor) jspOptions).getCompilerConfiguration();
+		}
+		return new JDTCompilerConfiguration(jspOptions, log);
+	}
+
+	public CompilerOptions getCompilerOptions() {
+		return compilerOptions;
+	}
+
+	public IProblemFactory getProblemFactory() {
+		return problemFactory;
+	}
+
+	/**
+	 * @return the settings of the JDT compiler for the given Jasper options
+	 */
+	static Map<String, String> getCompilerSettings(Options jspOptions, Log log) {
+		final Map<String, String> settings = new HashMap<>();
+		settings.put(CompilerOptions.OPTION_LineNumberAttribute, CompilerOptions.GENERATE);
+		settings.put(CompilerOptions.OPTION_SourceFileAttribute, CompilerOptions.GENERATE);
+		settings.put(CompilerOptions.OPTION_ReportDeprecation, CompilerOptions.IGNORE);
+		if (jspOptions.getJavaEncoding() != null) {
+			settings.put(CompilerOptions.OPTION_Encoding, jspOptions.getJavaEncoding());
+		}
+		if (jspOptions.getClassDebugInfo()) {
+			settings.put(CompilerOptions.OPTION_LocalVariableAttribute, CompilerOptions.GENERATE);
+		}
+
+		// Source JVM, default to 1.8
+		String source = CompilerOptions.VERSION_1_8;
+		if (jspOptions.getCompilerSourceVM() != null) {
+			source = getJdtVersion(jspOptions.getCompilerSourceVM(), "source", log);
+		}
+		settings.put(CompilerOptions.OPTION_Source, source);
+
+		// Target JVM, default to 1.8
+		String target = CompilerOptions.VERSION_1_8;
+		if (jspOptions.getCompilerTargetVM() != null) {
+			target = getJdtVersion(jspOptions.getCompilerTargetVM(), "target", log);
+		}
+		settings.put(CompilerOptions.OPTION_TargetPlatform, target);
+		if (CompilerOptions.versionToJdkLevel(target) >= CompilerOptions.versionToJdkLevel(CompilerOptions.VERSION_1_5)) {
+			settings.put(CompilerOptions.OPTION_Compliance, target);
+		}
+		return settings;
+	}
+
+	/**
+	 * @param version a Java version, either 1.x or x from Java 9 onwards
+	 * @return the version of JDT, the latest one supported by the bundled JDT if
+	 *         the version is newer, or 1.8 if it is unknown
+	 */
+	static String getJdtVersion(String version, String kind, Log log) {
+		// Version format changed from Java 9 onwards.
+		// Support old format that was used in EA implementation as well
+		String javaVersion = version.equals("1.9") ? CompilerOptions.VERSION_9 : version;
+		long jdkLevel = CompilerOptions.versionToJdkLevel(javaVersion);
+		if (jdkLevel == 0) {
+			log.warn("Unknown " + kind + " VM " + version + " ignored.");
+			return CompilerOptions.VERSION_1_8;
+		}
+		String jdtVersion = CompilerOptions.versionFromJdkLevel(jdkLevel);
+		if (!jdtVersion.equals(javaVersion) && !jdtVersion.equals("1." + javaVersion)) {
+			log.warn("The " + kind + " VM " + version + " is not supported by the bundled JDT, " + jdtVersion
+					+ " used instead.");
+		}
+		return jdtVersion;
+	}
+}
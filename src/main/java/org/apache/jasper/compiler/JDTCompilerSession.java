@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jasper.compiler;
+
+import java.util.*;
+
+import org.eclipse.jdt.internal.compiler.*;
+import org.eclipse.jdt.internal.compiler.Compiler;
+import org.eclipse.jdt.internal.compiler.env.*;
+
+/**
+ * A JDT compiler kept by a worker for all the jsps it compiles, so that the
+ * bindings of the classes of the classpath (servlet api, Jasper runtime, tag
+ * handlers, JDK) are built by the first jsp and reused by the following ones.
+ * <p>
+ * JDT resets its lookup environment at the end of each compilation, the
+ * compiler of the session only does it when asked. The types of the compiled
+ * units stay in the environment until then, so it is reset:
+ * <ul>
+ * <li>after a tag file, whose class must be read from its class file by the
+ * jsps using it,</li>
+ * <li>after a compilation with errors, which is compiled again from an empty
+ * environment before its errors are reported,</li>
+ * <li>every {@link #MAX_COMPILATIONS} compilations, to release the syntax trees
+ * of the compiled units.</li>
+ * </ul>
+ */
+public class JDTCompilerSession {
+
+	static final int MAX_COMPILATIONS = 64;
+
+	private final JDTCompilerConfiguration configuration;
+
+	private SessionCompiler compiler;
+
+	private int compilations;
+
+	public JDTCompilerSession(JDTCompilerConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Compile a unit with the bindings of the previous compilations.
+	 *
+	 * @param env          the environment of this compilation, asked only for the
+	 *                     types not known by the session
+	 * @param keepBindings false to reset the session after this compilation
+	 */
+	public synchronized void compile(ICompilationUnit compilationUnit, INameEnvironment env,
+			ICompilerRequestor requestor, boolean keepBindings) {
+		boolean compiled = false;
+		try {
+			List<CompilationResult> results = compile(compilationUnit, env);
+			if (hasErrors(results) && compilations > 0) {
+				// the errors may come from the bindings of the previous compilations
+				reset();
+				results = compile(compilationUnit, env);
+			}
+			compilations++;
+			for (CompilationResult result : results) {
+				requestor.acceptResult(result);
+			}
+			compiled = !hasErrors(results);
+		} finally {
+			if (compiler != null) {
+				compiler.lookupEnvironment.nameEnvironment = null;
+			}
+			if (!compiled || !keepBindings || compilations >= MAX_COMPILATIONS) {
+				reset();
+			}
+		}
+	}
+
+	private List<CompilationResult> compile(ICompilationUnit compilationUnit, INameEnvironment env) {
+		final List<CompilationResult> results = new ArrayList<>();
+		ICompilerRequestor requestor = results::add;
+		if (compiler == null) {
+			compiler = new SessionCompiler(env, requestor, configuration);
+		} else {
+			compiler.lookupEnvironment.nameEnvironment = env;
+			compiler.requestor = requestor;
+		}
+		try {
+			compiler.compile(new ICompilationUnit[] { compilationUnit });
+		} finally {
+			compiler.requestor = null;
+		}
+		return results;
+	}
+
+	private static boolean hasErrors(List<CompilationResult> results) {
+		for (CompilationResult result : results) {
+			if (result.hasErrors()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Drop all the bindings, the next compilation starts from an empty
+	 * environment.
+	 */
+	public synchronized void reset() {
+		if (compiler != null) {
+			compiler.resetEnvironment();
+		}
+		compilations = 0;
+	}
+
+	/**
+	 * @return the number of compilations since the last reset
+	 */
+	synchronized int getCompilations() {
+		return compilations;
+	}
+
+	/**
+	 * A compiler which keeps its lookup environment between the compilations.
+	 */
+	private static class SessionCompiler extends Compiler {
+
+		SessionCompiler(INameEnvironment env, ICompilerRequestor requestor, JDTCompilerConfiguration configuration) {
+			super(env, DefaultErrorHandlingPolicies.proceedWithAllProblems(), configuration.getCompilerOptions(),
+					requestor, configuration.getProblemFactory());
+		}
+
+		/**
+		 * Called by JDT at the end of each compilation, only releases what refers to
+		 * the compiled unit.
+		 */
+		@Override
+		public void reset() {
+			this.parser.scanner.source = null;
+			this.unitsToProcess = null;
+			this.problemReporter.reset();
+		}
+
+		void resetEnvironment() {
+			super.reset();
+		}
+	}
+}
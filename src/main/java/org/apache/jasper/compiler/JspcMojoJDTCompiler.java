@@ -19,6 +19,10 @@ package org.apache.jasper.compiler;
 import java.io.*;
 import java.util.*;
 
+import io.leonard.maven.plugins.jspc.ClassFileCache;
+import io.leonard.maven.plugins.jspc.CompilePhase;
+import io.leonard.maven.plugins.jspc.CompiledJspJar;
+import io.leonard.maven.plugins.jspc.JspCContextAccessor;
 import org.apache.jasper.JasperException;
 import org.apache.juli.logging.*;
 import org.eclipse.jdt.core.compiler.IProblem;
@@ -26,8 +30,6 @@ import org.eclipse.jdt.internal.compiler.*;
 import org.eclipse.jdt.internal.compiler.Compiler;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
 import org.eclipse.jdt.internal.compiler.env.*;
-import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
-import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
 
 /**
  * Based on {@link JDTCompiler}.<br>
@@ -37,6 +39,62 @@ public class JspcMojoJDTCompiler extends org.apache.jasper.compiler.Compiler {
 
 	private final Log log = LogFactory.getLog(JspcMojoJDTCompiler.class); // must not be static
 
+    /**
+     * @return the cache of class lookups shared by all the threads of the
+     *         build, or a cache which keeps no class file when not run by the
+     *         plugin
+     */
+    private ClassFileCache getResourcesCache() {
+        if (options instanceof JspCContextAccessor) {
+            ClassFileCache resourcesCache =
+                ((JspCContextAccessor) options).getResourcesCache();
+            if (resourcesCache != null) {
+                return resourcesCache;
+            }
+        }
+        return new ClassFileCache(0, Collections.emptyList());
+    }
+
+    /**
+     * @return the jar where the classes are written, or null to write them in
+     *         the output directory
+     */
+    private CompiledJspJar getCompiledJspJar() {
+        if (options instanceof JspCContextAccessor) {
+            return ((JspCContextAccessor) options).getCompiledJspJar();
+        }
+        return null;
+    }
+
+    /**
+     * Start a phase of the compilation, whose allocations are counted when run
+     * by the plugin.
+     */
+    private long startPhase() {
+        if (options instanceof JspCContextAccessor) {
+            return ((JspCContextAccessor) options).startPhase(ctxt);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time and allocations of a phase of the compilation, when run
+     * by the plugin.
+     */
+    private void recordPhase(CompilePhase phase, long start) {
+        if (options instanceof JspCContextAccessor) {
+            ((JspCContextAccessor) options).addPhaseTime(ctxt, phase, start);
+        }
+    }
+
+    @Override
+    protected Map<String,SmapStratum> generateJava() throws Exception {
+        long start = startPhase();
+        Map<String,SmapStratum> smaps = super.generateJava();
+        recordPhase(CompilePhase.GENERATE, start);
+        return smaps;
+    }
+
 	 /**
      * Compile the servlet from .java file to .class file
      */
@@ -56,9 +114,12 @@ public class JspcMojoJDTCompiler extends org.apache.jasper.compiler.Compiler {
             ((packageName.length() != 0) ? (packageName + ".") : "")
                     + ctxt.getServletClassName();
         final ClassLoader classLoader = ctxt.getJspLoader();
+        final String jspUri = ctxt.getJspFile();
         String[] fileNames = new String[] {sourceFile};
         String[] classNames = new String[] {targetClassName};
+        final ClassFileCache resourcesCache = getResourcesCache();
         final List<JavacErrorDetail> problemList = new ArrayList<>();
+        final Map<String, byte[]> classFileContents = new LinkedHashMap<>();
 
         class CompilationUnit implements ICompilationUnit {
 
@@ -164,25 +225,10 @@ public class JspcMojoJDTCompiler extends org.apache.jasper.compiler.Compiler {
                             new NameEnvironmentAnswer(compilationUnit, null);
                     }
 
-                    String resourceName =
-                            className.replace('.', '/') + ".class";
-
-                    try (InputStream is = classLoader.getResourceAsStream(resourceName)) {
-                        if (is != null) {
-                            byte[] classBytes;
-                            byte[] buf = new byte[8192];
-                            ByteArrayOutputStream baos =
-                                new ByteArrayOutputStream(buf.length);
-                            int count;
-                            while ((count = is.read(buf, 0, buf.length)) > 0) {
-                                baos.write(buf, 0, count);
-                            }
-                            baos.flush();
-                            classBytes = baos.toByteArray();
-                            char[] fileName = className.toCharArray();
-                            ClassFileReader classFileReader =
-                                new ClassFileReader(classBytes, fileName,
-                                                    true);
+                    try {
+                        ClassFileReader classFileReader =
+                            resourcesCache.getClassFile(className, classLoader, jspUri);
+                        if (classFileReader != null) {
                             return
                                 new NameEnvironmentAnswer(classFileReader, null);
                         }
@@ -198,14 +244,7 @@ public class JspcMojoJDTCompiler extends org.apache.jasper.compiler.Compiler {
                     if (result.equals(targetClassName)) {
                         return false;
                     }
-                    String resourceName = result.replace('.', '/') + ".class";
-                    try (InputStream is =
-                        classLoader.getResourceAsStream(resourceName)) {
-                        return is == null;
-                    } catch (IOException e) {
-                        // we are here, since close on is failed. That means it was not null
-                        return false;
-                    }
+                    return !resourcesCache.isClass(result, classLoader, jspUri);
                 }
 
                 @Override
@@ -242,174 +281,43 @@ public class JspcMojoJDTCompiler extends org.apache.jasper.compiler.Compiler {
         final IErrorHandlingPolicy policy =
             DefaultErrorHandlingPolicies.proceedWithAllProblems();
 
-        final Map<String,String> settings = new HashMap<>();
-        settings.put(CompilerOptions.OPTION_LineNumberAttribute,
-                     CompilerOptions.GENERATE);
-        settings.put(CompilerOptions.OPTION_SourceFileAttribute,
-                     CompilerOptions.GENERATE);
-        settings.put(CompilerOptions.OPTION_ReportDeprecation,
-                     CompilerOptions.IGNORE);
-        if (ctxt.getOptions().getJavaEncoding() != null) {
-            settings.put(CompilerOptions.OPTION_Encoding,
-                    ctxt.getOptions().getJavaEncoding());
-        }
-        if (ctxt.getOptions().getClassDebugInfo()) {
-            settings.put(CompilerOptions.OPTION_LocalVariableAttribute,
-                         CompilerOptions.GENERATE);
-        }
-
-        // Source JVM
-        if(ctxt.getOptions().getCompilerSourceVM() != null) {
-            String opt = ctxt.getOptions().getCompilerSourceVM();
-            if(opt.equals("1.1")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_1_1);
-            } else if(opt.equals("1.2")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_1_2);
-            } else if(opt.equals("1.3")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_1_3);
-            } else if(opt.equals("1.4")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_1_4);
-            } else if(opt.equals("1.5")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_1_5);
-            } else if(opt.equals("1.6")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_1_6);
-            } else if(opt.equals("1.7")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_1_7);
-            } else if(opt.equals("1.8")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_1_8);
-            // Version format changed from Java 9 onwards.
-            // Support old format that was used in EA implementation as well
-            } else if(opt.equals("9") || opt.equals("1.9")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_9);
-            } else if(opt.equals("10")) {
-                settings.put(CompilerOptions.OPTION_Source,
-                             CompilerOptions.VERSION_10);
-            } else {
-                settings.put(CompilerOptions.OPTION_Source,
-                    opt);
-            }
-        } else {
-            // Default to 1.8
-            settings.put(CompilerOptions.OPTION_Source,
-                    CompilerOptions.VERSION_1_8);
-        }
-
-        // Target JVM
-        if(ctxt.getOptions().getCompilerTargetVM() != null) {
-            String opt = ctxt.getOptions().getCompilerTargetVM();
-            if(opt.equals("1.1")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                             CompilerOptions.VERSION_1_1);
-            } else if(opt.equals("1.2")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                             CompilerOptions.VERSION_1_2);
-            } else if(opt.equals("1.3")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                             CompilerOptions.VERSION_1_3);
-            } else if(opt.equals("1.4")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                             CompilerOptions.VERSION_1_4);
-            } else if(opt.equals("1.5")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                             CompilerOptions.VERSION_1_5);
-                settings.put(CompilerOptions.OPTION_Compliance,
-                        CompilerOptions.VERSION_1_5);
-            } else if(opt.equals("1.6")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                             CompilerOptions.VERSION_1_6);
-                settings.put(CompilerOptions.OPTION_Compliance,
-                        CompilerOptions.VERSION_1_6);
-            } else if(opt.equals("1.7")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                             CompilerOptions.VERSION_1_7);
-                settings.put(CompilerOptions.OPTION_Compliance,
-                        CompilerOptions.VERSION_1_7);
-            } else if(opt.equals("1.8")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                             CompilerOptions.VERSION_1_8);
-                settings.put(CompilerOptions.OPTION_Compliance,
-                        CompilerOptions.VERSION_1_8);
-            // Version format changed from Java 9 onwards.
-            // Support old format that was used in EA implementation as well
-            } else if(opt.equals("9") || opt.equals("1.9")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                             CompilerOptions.VERSION_9);
-                settings.put(CompilerOptions.OPTION_Compliance,
-                        CompilerOptions.VERSION_9);
-            } else if(opt.equals("10")) {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                        CompilerOptions.VERSION_10);
-                settings.put(CompilerOptions.OPTION_Compliance,
-                        CompilerOptions.VERSION_10);
-            } else {
-                settings.put(CompilerOptions.OPTION_TargetPlatform,
-                        opt);
-            }
-        } else {
-            // Default to 1.8
-            settings.put(CompilerOptions.OPTION_TargetPlatform,
-                    CompilerOptions.VERSION_1_8);
-            settings.put(CompilerOptions.OPTION_Compliance,
-                    CompilerOptions.VERSION_1_8);
-        }
-
-        final IProblemFactory problemFactory =
-            new DefaultProblemFactory(Locale.getDefault());
-
         final ICompilerRequestor requestor = new ICompilerRequestor() {
                 @Override
                 public void acceptResult(CompilationResult result) {
-                    try {
-                        if (result.hasProblems()) {
-                            IProblem[] problems = result.getProblems();
-                            for (int i = 0; i < problems.length; i++) {
-                                IProblem problem = problems[i];
-                                if (problem.isError()) {
-                                    String name =
-                                        new String(problems[i].getOriginatingFileName());
-                                    try {
-                                        problemList.add(ErrorDispatcher.createJavacError
-                                                (name, pageNodes, new StringBuilder(problem.getMessage()),
-                                                        problem.getSourceLineNumber(), ctxt));
-                                    } catch (JasperException e) {
-                                        log.error(Localizer.getMessage("jsp.error.compilation.jdtProblemError"), e);
-                                    }
+                    if (result.hasProblems()) {
+                        IProblem[] problems = result.getProblems();
+                        for (int i = 0; i < problems.length; i++) {
+                            IProblem problem = problems[i];
+                            if (problem.isError()) {
+                                String name =
+                                    new String(problems[i].getOriginatingFileName());
+                                try {
+                                    problemList.add(ErrorDispatcher.createJavacError
+                                            (name, pageNodes, new StringBuilder(problem.getMessage()),
+                                                    problem.getSourceLineNumber(), ctxt));
+                                } catch (JasperException e) {
+                                    log.error(Localizer.getMessage("jsp.error.compilation.jdtProblemError"), e);
                                 }
                             }
                         }
-                        if (problemList.isEmpty()) {
-                            ClassFile[] classFiles = result.getClassFiles();
-                            for (int i = 0; i < classFiles.length; i++) {
-                                ClassFile classFile = classFiles[i];
-                                char[][] compoundName =
-                                    classFile.getCompoundName();
-                                StringBuilder classFileName = new StringBuilder(outputDir).append('/');
-                                for (int j = 0;
-                                     j < compoundName.length; j++) {
-                                    if(j > 0)
-                                        classFileName.append('/');
-                                    classFileName.append(compoundName[j]);
-                                }
-                                byte[] bytes = classFile.getBytes();
-                                classFileName.append(".class");
-                                try (FileOutputStream fout = new FileOutputStream(
-                                        classFileName.toString());
-                                        BufferedOutputStream bos = new BufferedOutputStream(fout)) {
-                                    bos.write(bytes);
-                                }
+                    }
+                    if (problemList.isEmpty()) {
+                        ClassFile[] classFiles = result.getClassFiles();
+                        for (int i = 0; i < classFiles.length; i++) {
+                            ClassFile classFile = classFiles[i];
+                            char[][] compoundName =
+                                classFile.getCompoundName();
+                            StringBuilder classFileName = new StringBuilder(outputDir).append('/');
+                            for (int j = 0;
+                                 j < compoundName.length; j++) {
+                                if(j > 0)
+                                    classFileName.append('/');
+                                classFileName.append(compoundName[j]);
                             }
+                            byte[] bytes = classFile.getBytes();
+                            classFileName.append(".class");
+                            classFileContents.put(classFileName.toString(), bytes);
                         }
-                    } catch (IOException exc) {
-                        log.error(Localizer.getMessage("jsp.error.compilation.jdt"), exc);
                     }
                 }
             };
@@ -420,14 +328,26 @@ public class JspcMojoJDTCompiler extends org.apache.jasper.compiler.Compiler {
             String className = classNames[i];
             compilationUnits[i] = new CompilationUnit(fileNames[i], className);
         }
-        CompilerOptions cOptions = new CompilerOptions(settings);
-        cOptions.parseLiteralExpressionsAsConstants = true;
+        JDTCompilerConfiguration configuration =
+            JDTCompilerConfiguration.get(ctxt.getOptions(), log);
+        long compileStart = startPhase();
         Compiler compiler = new Compiler(env,
                                          policy,
-                                         cOptions,
+                                         configuration.getCompilerOptions(),
                                          requestor,
-                                         problemFactory);
+                                         configuration.getProblemFactory());
         compiler.compile(compilationUnits);
+        recordPhase(CompilePhase.COMPILE, compileStart);
+
+        CompiledJspJar jar = getCompiledJspJar();
+        long writeStart = startPhase();
+        try {
+            ParallelJDTCompiler.writeClassFiles(classFileContents, jar,
+                    ctxt.isTagFile(), options.isSmapSuppressed());
+        } catch (IOException exc) {
+            log.error(Localizer.getMessage("jsp.error.compilation.jdt"), exc);
+        }
+        recordPhase(CompilePhase.WRITE, writeStart);
 
         if (!ctxt.keepGenerated()) {
             File javaFile = new File(ctxt.getServletJavaFileName());
@@ -455,7 +375,11 @@ public class JspcMojoJDTCompiler extends org.apache.jasper.compiler.Compiler {
 
         // JSR45 Support
         if (! options.isSmapSuppressed()) {
+            long smapStart = startPhase();
             SmapUtil.installSmap(smaps);
+            ParallelJDTCompiler.moveClassFiles(classFileContents.keySet(), jar,
+                    ctxt.isTagFile());
+            recordPhase(CompilePhase.SMAP, smapStart);
         }
     }
 }
@@ -17,17 +17,22 @@
 package org.apache.jasper.compiler;
 
 import java.io.*;
+import java.nio.charset.Charset;
 import java.util.*;
 
+import io.leonard.maven.plugins.jspc.ClassFileCache;
+import io.leonard.maven.plugins.jspc.CompilePhase;
+import io.leonard.maven.plugins.jspc.CompiledJspJar;
+import io.leonard.maven.plugins.jspc.JspCContextAccessor;
 import org.apache.jasper.JasperException;
+import org.apache.jasper.JspCompilationContext;
+import org.apache.jasper.TrimSpacesOption;
 import org.apache.juli.logging.*;
 import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.internal.compiler.*;
 import org.eclipse.jdt.internal.compiler.Compiler;
 import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
 import org.eclipse.jdt.internal.compiler.env.*;
-import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
-import org.eclipse.jdt.internal.compiler.problem.DefaultProblemFactory;
 
 /**
  * Based on {@link JDTCompiler}.<br>
@@ -37,7 +42,17 @@ public class ParallelJDTCompiler extends org.apache.jasper.compiler.Compiler {
 
 	private final Log log = LogFactory.getLog(ParallelJDTCompiler.class); // must not be static
 
+	/**
+	 * The generated java source, when it is kept in memory instead of being
+	 * written in the output directory.
+	 */
+	protected char[] javaSource;
+
 	public boolean isCheckFileNecessary(char[] packageName) {
+		return mayBePackage(packageName);
+	}
+
+	static boolean mayBePackage(char[] packageName) {
 		if (Character.isUpperCase(packageName[0])) {
 			return false;
 		}
@@ -46,6 +61,294 @@ public class ParallelJDTCompiler extends org.apache.jasper.compiler.Compiler {
 		return !filename.contains(".");
 	}
 
+	/**
+	 * @return the cache of class lookups shared by all the threads of the build,
+	 *         or a cache which keeps no class file when not run by the plugin
+	 */
+	ClassFileCache getResourcesCache() {
+		if (options instanceof JspCContextAccessor) {
+			ClassFileCache resourcesCache = ((JspCContextAccessor) options).getResourcesCache();
+			if (resourcesCache != null) {
+				return resourcesCache;
+			}
+		}
+		return new ClassFileCache(0, Collections.emptyList());
+	}
+
+	/**
+	 * @return true if the generated java sources must not be written, which is
+	 *         the case when the plugin does not keep them
+	 */
+	protected boolean isSourceInMemory() {
+		return options instanceof JspCContextAccessor && ((JspCContextAccessor) options).isSourcesInMemory();
+	}
+
+	/**
+	 * Start a phase of the compilation, whose allocations are counted when run by
+	 * the plugin.
+	 *
+	 * @return when the phase started, from {@link System#nanoTime()}
+	 */
+	protected long startPhase() {
+		if (options instanceof JspCContextAccessor) {
+			return ((JspCContextAccessor) options).startPhase(ctxt);
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Record the time and allocations of a phase of the compilation, when run by
+	 * the plugin.
+	 *
+	 * @param start when the phase started, from {@link #startPhase()}
+	 */
+	protected void recordPhase(CompilePhase phase, long start) {
+		if (options instanceof JspCContextAccessor) {
+			((JspCContextAccessor) options).addPhaseTime(ctxt, phase, start);
+		}
+	}
+
+	/**
+	 * Same as {@link Compiler#compile(boolean, boolean)}, except that there is no
+	 * java file to touch when the source is kept in memory.
+	 */
+	@Override
+	public void compile(boolean compileClass, boolean jspcMode)
+			throws FileNotFoundException, JasperException, Exception {
+		if (!isSourceInMemory()) {
+			super.compile(compileClass, jspcMode);
+			return;
+		}
+
+		if (errDispatcher == null) {
+			this.errDispatcher = new ErrorDispatcher(jspcMode);
+		}
+
+		try {
+			final Long jspLastModified = ctxt.getLastModified(ctxt.getJspFile());
+			Map<String, SmapStratum> smaps = generateJava();
+			if (compileClass) {
+				generateClass(smaps);
+				// Fix for bugzilla 41606
+				// Set JspServletWrapper.servletClassLastModifiedTime after successful compile
+				File targetFile = new File(ctxt.getClassFileName());
+				if (targetFile.exists()) {
+					if (!targetFile.setLastModified(jspLastModified.longValue())) {
+						throw new JasperException(Localizer.getMessage("jsp.error.setLastModified", targetFile));
+					}
+					if (jsw != null) {
+						jsw.setServletClassLastModifiedTime(jspLastModified.longValue());
+					}
+				}
+			}
+		} finally {
+			if (tfp != null && ctxt.isPrototypeMode()) {
+				tfp.removeProtoTypeFiles(null);
+			}
+			// Make sure these object which are only used during the
+			// generation and compilation of the JSP page get
+			// dereferenced so that they can be GC'd and reduce the
+			// memory footprint.
+			tfp = null;
+			errDispatcher = null;
+			pageInfo = null;
+			pageNodes = null;
+			javaSource = null;
+
+			if (ctxt.getWriter() != null) {
+				ctxt.getWriter().close();
+				ctxt.setWriter(null);
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link Compiler#generateJava()}, except that the java source is kept
+	 * in memory when it must not be written.
+	 */
+	@Override
+	protected Map<String, SmapStratum> generateJava() throws Exception {
+		if (!isSourceInMemory()) {
+			long start = startPhase();
+			Map<String, SmapStratum> smaps = super.generateJava();
+			recordPhase(CompilePhase.GENERATE, start);
+			return smaps;
+		}
+
+		long parseStart = startPhase();
+		long t1, t2, t3, t4;
+		t1 = t2 = t3 = t4 = 0;
+
+		if (log.isDebugEnabled()) {
+			t1 = System.currentTimeMillis();
+		}
+
+		// Setup page info area
+		pageInfo = new PageInfo(new BeanRepository(ctxt.getClassLoader(), errDispatcher), ctxt);
+
+		JspConfig jspConfig = options.getJspConfig();
+		JspConfig.JspProperty jspProperty = jspConfig.findJspProperty(ctxt.getJspFile());
+
+		/*
+		 * If the current uri is matched by a pattern specified in a jsp-property-group
+		 * in web.xml, initialize pageInfo with those properties.
+		 */
+		if (jspProperty.isELIgnored() != null) {
+			pageInfo.setELIgnored(JspUtil.booleanValue(jspProperty.isELIgnored()));
+		}
+		if (jspProperty.getErrorOnELNotFound() != null) {
+			pageInfo.setErrorOnELNotFound(JspUtil.booleanValue(jspProperty.getErrorOnELNotFound()));
+		}
+		if (jspProperty.isScriptingInvalid() != null) {
+			pageInfo.setScriptingInvalid(JspUtil.booleanValue(jspProperty.isScriptingInvalid()));
+		}
+		if (jspProperty.getIncludePrelude() != null) {
+			pageInfo.setIncludePrelude(jspProperty.getIncludePrelude());
+		}
+		if (jspProperty.getIncludeCoda() != null) {
+			pageInfo.setIncludeCoda(jspProperty.getIncludeCoda());
+		}
+		if (jspProperty.isDeferedSyntaxAllowedAsLiteral() != null) {
+			pageInfo.setDeferredSyntaxAllowedAsLiteral(
+					JspUtil.booleanValue(jspProperty.isDeferedSyntaxAllowedAsLiteral()));
+		}
+		if (jspProperty.isTrimDirectiveWhitespaces() != null) {
+			pageInfo.setTrimDirectiveWhitespaces(JspUtil.booleanValue(jspProperty.isTrimDirectiveWhitespaces()));
+		}
+		// Default ContentType processing is deferred until after the page has
+		// been parsed
+		if (jspProperty.getBuffer() != null) {
+			pageInfo.setBufferValue(jspProperty.getBuffer(), null, errDispatcher);
+		}
+		if (jspProperty.isErrorOnUndeclaredNamespace() != null) {
+			pageInfo.setErrorOnUndeclaredNamespace(JspUtil.booleanValue(jspProperty.isErrorOnUndeclaredNamespace()));
+		}
+		if (ctxt.isTagFile()) {
+			try {
+				double libraryVersion = Double.parseDouble(ctxt.getTagInfo().getTagLibrary().getRequiredVersion());
+				if (libraryVersion < 2.0) {
+					pageInfo.setIsELIgnored("true", null, errDispatcher, true);
+				}
+				if (libraryVersion < 2.1) {
+					pageInfo.setDeferredSyntaxAllowedAsLiteral("true", null, errDispatcher, true);
+				}
+			} catch (NumberFormatException ex) {
+				errDispatcher.jspError(ex);
+			}
+		}
+
+		ctxt.checkOutputDir();
+
+		// Parse the file
+		ParserController parserCtl = new ParserController(ctxt, this);
+
+		// Pass 1 - the directives
+		Node.Nodes directives = parserCtl.parseDirectives(ctxt.getJspFile());
+		Validator.validateDirectives(this, directives);
+
+		// Pass 2 - the whole translation unit
+		pageNodes = parserCtl.parse(ctxt.getJspFile());
+
+		// Leave this until now since it can only be set once - bug 49726
+		if (pageInfo.getContentType() == null && jspProperty.getDefaultContentType() != null) {
+			pageInfo.setContentType(jspProperty.getDefaultContentType());
+		}
+
+		if (ctxt.isPrototypeMode()) {
+			// generate prototype .java file for the tag file
+			javaSource = generateSource();
+			return null;
+		}
+
+		// Validate and process attributes - don't re-validate the
+		// directives we validated in pass 1
+		Validator.validateExDirectives(this, pageNodes);
+
+		if (log.isDebugEnabled()) {
+			t2 = System.currentTimeMillis();
+		}
+
+		// Collect page info
+		Collector.collect(this, pageNodes);
+
+		// Compile (if necessary) and load the tag files referenced in
+		// this compilation unit.
+		tfp = new TagFileProcessor();
+		tfp.loadTagFiles(this, pageNodes);
+
+		if (log.isDebugEnabled()) {
+			t3 = System.currentTimeMillis();
+		}
+
+		// Determine which custom tag needs to declare which scripting vars
+		ScriptingVariabler.set(pageNodes, errDispatcher);
+
+		// Optimizations by Tag Plugins
+		TagPluginManager tagPluginManager = options.getTagPluginManager();
+		tagPluginManager.apply(pageNodes, errDispatcher, pageInfo);
+
+		// Optimization: concatenate contiguous template texts.
+		TextOptimizer.concatenate(this, pageNodes);
+
+		// Generate static function mapper codes.
+		ELFunctionMapper.map(pageNodes);
+		recordPhase(CompilePhase.PARSE, parseStart);
+
+		// generate servlet .java source
+		long generateStart = startPhase();
+		javaSource = generateSource();
+
+		if (log.isDebugEnabled()) {
+			t4 = System.currentTimeMillis();
+			log.debug("Generated " + ctxt.getServletJavaFileName() + " total=" + (t4 - t1) + " generate="
+					+ (t4 - t3) + " validate=" + (t2 - t1));
+		}
+
+		// JSR45 Support
+		Map<String, SmapStratum> smaps = null;
+		if (!options.isSmapSuppressed()) {
+			smaps = SmapUtil.generateSmap(ctxt, pageNodes);
+			// Add them to the web application wide cache for future lookup in
+			// error handling etc.
+			ctxt.getRuntimeContext().getSmaps().putAll(smaps);
+		}
+		recordPhase(CompilePhase.GENERATE, generateStart);
+
+		// If any proto type .java and .class files was generated,
+		// the prototype .java may have been replaced by the current
+		// compilation (if the tag file is self referencing), but the
+		// .class file need to be removed, to make sure that javac would
+		// generate .class again from the new .java file just generated.
+		tfp.removeProtoTypeFiles(ctxt.getClassFileName());
+
+		return smaps;
+	}
+
+	/**
+	 * Generate the java source of the page nodes in memory.
+	 */
+	private char[] generateSource() throws JasperException {
+		String javaEncoding = ctxt.getOptions().getJavaEncoding();
+		if (!Charset.isSupported(javaEncoding)) {
+			errDispatcher.jspError("jsp.error.needAlternateJavaEncoding", javaEncoding);
+		}
+		CharArrayWriter source = new CharArrayWriter(16 * 1024);
+		ServletWriter writer;
+		if (ctxt.getOptions().getTrimSpaces().equals(TrimSpacesOption.EXTENDED)) {
+			writer = new NewlineReductionServletWriter(new PrintWriter(source));
+		} else {
+			writer = new ServletWriter(new PrintWriter(source));
+		}
+		ctxt.setWriter(writer);
+		try {
+			Generator.generate(writer, this, pageNodes);
+		} finally {
+			writer.close();
+			ctxt.setWriter(null);
+		}
+		return source.toCharArray();
+	}
+
 	/**
 	 * Compile the servlet from .java file to .class file
 	 */
@@ -64,347 +367,409 @@ public class ParallelJDTCompiler extends org.apache.jasper.compiler.Compiler {
 		final String targetClassName = ((packageName.length() != 0) ? (packageName + ".") : "")
 				+ ctxt.getServletClassName();
 		final ClassLoader classLoader = ctxt.getJspLoader();
-		String[] fileNames = new String[] { sourceFile };
-		String[] classNames = new String[] { targetClassName };
 		final List<JavacErrorDetail> problemList = new ArrayList<>();
+		final Map<String, byte[]> classFiles = new LinkedHashMap<>();
 
-		class CompilationUnit implements ICompilationUnit {
+		ICompilationUnit compilationUnit = new JspCompilationUnit(sourceFile, targetClassName,
+				ctxt.getOptions().getJavaEncoding(), javaSource, log);
+		final INameEnvironment env = new JspNameEnvironment(
+				Collections.singletonMap(targetClassName, compilationUnit), classLoader, getResourcesCache(), log,
+				ctxt.getJspFile());
+
+		final ICompilerRequestor requestor = new ICompilerRequestor() {
+			@Override
+			public void acceptResult(CompilationResult result) {
+				addErrors(result, pageNodes, ctxt, javaSource, problemList, log);
+				if (problemList.isEmpty()) {
+					classFiles.putAll(getClassFiles(result, outputDir));
+				}
+			}
+		};
 
-			private final String className;
-			private final String sourceFile;
+		long compileStart = startPhase();
+		if (options instanceof JspCContextAccessor) {
+			// the classes of the tag files are read from their class files by the jsps
+			((JspCContextAccessor) options).getCompilerSession().compile(compilationUnit, env, requestor,
+					!ctxt.isTagFile());
+		} else {
+			JDTCompilerConfiguration configuration = JDTCompilerConfiguration.get(ctxt.getOptions(), log);
+			Compiler compiler = new Compiler(env, DefaultErrorHandlingPolicies.proceedWithAllProblems(),
+					configuration.getCompilerOptions(), requestor, configuration.getProblemFactory());
+			compiler.compile(new ICompilationUnit[] { compilationUnit });
+		}
+		recordPhase(CompilePhase.COMPILE, compileStart);
+
+		CompiledJspJar jar = getCompiledJspJar();
+		long writeStart = startPhase();
+		try {
+			writeClassFiles(classFiles, jar, ctxt.isTagFile(), options.isSmapSuppressed());
+		} catch (IOException exc) {
+			log.error("Compilation error", exc);
+		}
+		recordPhase(CompilePhase.WRITE, writeStart);
 
-			CompilationUnit(String sourceFile, String className) {
-				this.className = className;
-				this.sourceFile = sourceFile;
+		if (!ctxt.keepGenerated() && javaSource == null) {
+			File javaFile = new File(ctxt.getServletJavaFileName());
+			if (!javaFile.delete()) {
+				throw new JasperException(Localizer.getMessage("jsp.warning.compiler.javafile.delete.fail", javaFile));
 			}
+		}
 
-			@Override
-			public char[] getFileName() {
-				return sourceFile.toCharArray();
+		if (!problemList.isEmpty()) {
+			JavacErrorDetail[] jeds = problemList.toArray(new JavacErrorDetail[0]);
+			errDispatcher.javacError(jeds);
+		}
+
+		if (log.isDebugEnabled()) {
+			long t2 = System.currentTimeMillis();
+			log.debug("Compiled " + ctxt.getServletJavaFileName() + " " + (t2 - t1) + "ms");
+		}
+
+		if (ctxt.isPrototypeMode()) {
+			return;
+		}
+
+		// JSR45 Support
+		if (!options.isSmapSuppressed()) {
+			long smapStart = startPhase();
+			SmapUtil.installSmap(smaps);
+			moveClassFiles(classFiles.keySet(), jar, ctxt.isTagFile());
+			recordPhase(CompilePhase.SMAP, smapStart);
+		}
+	}
+
+	/**
+	 * @return the jar where the classes are written, or null to write them in the
+	 *         output directory
+	 */
+	protected CompiledJspJar getCompiledJspJar() {
+		if (options instanceof JspCContextAccessor) {
+			return ((JspCContextAccessor) options).getCompiledJspJar();
+		}
+		return null;
+	}
+
+	/**
+	 * Write the class files of a compiled jsp or tag file. With a jar, the classes
+	 * of a jsp are written directly in it when there is no smap to install in them
+	 * afterwards. The other classes are written in the output directory first, and
+	 * the classes of the tag files stay there until the end of the build since the
+	 * jsps using them load them.
+	 */
+	static void writeClassFiles(Map<String, byte[]> classFiles, CompiledJspJar jar, boolean tagFile,
+			boolean smapSuppressed) throws IOException {
+		if (jar != null && !tagFile && smapSuppressed) {
+			for (Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+				jar.write(classFile.getKey(), classFile.getValue());
 			}
+			return;
+		}
+		writeClassFiles(classFiles);
+		if (jar != null && tagFile) {
+			for (String classFile : classFiles.keySet()) {
+				jar.moveOnClose(new File(classFile));
+				jar.moveOnClose(new File(classFile + ".smap"));
+			}
+		}
+	}
 
-			@Override
-			public char[] getContents() {
-				char[] result = null;
-				try (FileInputStream is = new FileInputStream(sourceFile);
-						InputStreamReader isr = new InputStreamReader(is, ctxt.getOptions().getJavaEncoding());
-						Reader reader = new BufferedReader(isr)) {
-					char[] chars = new char[8192];
-					StringBuilder buf = new StringBuilder();
-					int count;
-					while ((count = reader.read(chars, 0, chars.length)) > 0) {
-						buf.append(chars, 0, count);
-					}
-					result = new char[buf.length()];
-					buf.getChars(0, result.length, result, 0);
-				} catch (IOException e) {
-					log.error("Compilation error", e);
-				}
-				return result;
+	/**
+	 * Move the class files of a compiled jsp and their dumped smaps in the jar,
+	 * once the smaps are installed in the classes.
+	 */
+	static void moveClassFiles(Collection<String> classFiles, CompiledJspJar jar, boolean tagFile)
+			throws IOException {
+		if (jar == null || tagFile) {
+			return;
+		}
+		for (String classFile : classFiles) {
+			jar.move(new File(classFile));
+			File smapFile = new File(classFile + ".smap");
+			if (smapFile.exists()) {
+				jar.move(smapFile);
 			}
+		}
+	}
 
-			@Override
-			public char[] getMainTypeName() {
-				int dot = className.lastIndexOf('.');
-				if (dot > 0) {
-					return className.substring(dot + 1).toCharArray();
+	/**
+	 * Add the errors of a compilation result to a list of errors. The details of
+	 * an error show the lines of the java source read from the servlet java file,
+	 * so a source kept in memory is written there while the details are created.
+	 */
+	static void addErrors(CompilationResult result, Node.Nodes pageNodes, JspCompilationContext ctxt,
+			char[] javaSource, List<JavacErrorDetail> errors, Log log) {
+		if (!hasErrors(result)) {
+			return;
+		}
+		File javaFile = new File(ctxt.getServletJavaFileName());
+		boolean writeSource = javaSource != null && !javaFile.exists();
+		try {
+			if (writeSource) {
+				try {
+					writeJavaSource(javaFile, javaSource, ctxt.getOptions().getJavaEncoding());
+				} catch (IOException e) {
+					log.warn("Unable to write the java source of " + ctxt.getJspFile(), e);
 				}
-				return className.toCharArray();
 			}
-
-			@Override
-			public char[][] getPackageName() {
-				StringTokenizer izer = new StringTokenizer(className, ".");
-				char[][] result = new char[izer.countTokens() - 1][];
-				for (int i = 0; i < result.length; i++) {
-					String tok = izer.nextToken();
-					result[i] = tok.toCharArray();
+			for (IProblem problem : result.getProblems()) {
+				if (problem.isError()) {
+					String name = new String(problem.getOriginatingFileName());
+					try {
+						errors.add(ErrorDispatcher.createJavacError(name, pageNodes,
+								new StringBuilder(problem.getMessage()), problem.getSourceLineNumber(), ctxt));
+					} catch (JasperException e) {
+						log.error("Error visiting node", e);
+					}
 				}
-				return result;
 			}
+		} finally {
+			if (writeSource) {
+				javaFile.delete();
+			}
+		}
+	}
 
-			@Override
-			public boolean ignoreOptionalProblems() {
-				return false;
+	private static boolean hasErrors(CompilationResult result) {
+		if (result.hasProblems()) {
+			for (IProblem problem : result.getProblems()) {
+				if (problem.isError()) {
+					return true;
+				}
 			}
 		}
+		return false;
+	}
 
-		final INameEnvironment env = new INameEnvironment() {
+	private static void writeJavaSource(File javaFile, char[] javaSource, String encoding) throws IOException {
+		File parent = javaFile.getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(javaFile), encoding)) {
+			writer.write(javaSource);
+		}
+	}
 
-			@Override
-			public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
-				StringBuilder result = new StringBuilder();
-				for (int i = 0; i < compoundTypeName.length; i++) {
-					if (i > 0)
-						result.append('.');
-					result.append(compoundTypeName[i]);
-				}
-				return findType(result.toString());
+	/**
+	 * @return the content of the class files of a compilation result, keyed by
+	 *         the path of the file in the output directory
+	 */
+	static Map<String, byte[]> getClassFiles(CompilationResult result, String outputDir) {
+		Map<String, byte[]> files = new LinkedHashMap<>();
+		ClassFile[] classFiles = result.getClassFiles();
+		for (int i = 0; i < classFiles.length; i++) {
+			ClassFile classFile = classFiles[i];
+			char[][] compoundName = classFile.getCompoundName();
+			StringBuilder classFileName = new StringBuilder(outputDir).append('/');
+			for (int j = 0; j < compoundName.length; j++) {
+				if (j > 0)
+					classFileName.append('/');
+				classFileName.append(compoundName[j]);
 			}
+			classFileName.append(".class");
+			files.put(classFileName.toString(), classFile.getBytes());
+		}
+		return files;
+	}
 
-			@Override
-			public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
-				StringBuilder result = new StringBuilder();
-				int i = 0;
-				for (; i < packageName.length; i++) {
-					if (i > 0)
-						result.append('.');
-					result.append(packageName[i]);
-				}
-				if (i > 0)
-					result.append('.');
-				result.append(typeName);
-				return findType(result.toString());
+	static void writeClassFiles(Map<String, byte[]> classFiles) throws IOException {
+		for (Map.Entry<String, byte[]> classFile : classFiles.entrySet()) {
+			try (FileOutputStream fout = new FileOutputStream(classFile.getKey());
+					BufferedOutputStream bos = new BufferedOutputStream(fout)) {
+				bos.write(classFile.getValue());
 			}
+		}
+	}
 
-			private NameEnvironmentAnswer findType(String className) {
+	/**
+	 * A generated servlet or tag handler, read from its java file.
+	 */
+	static class JspCompilationUnit implements ICompilationUnit {
+
+		private final String className;
+		private final String sourceFile;
+		private final String javaEncoding;
+		private final char[] contents;
+		private final Log log;
+
+		/**
+		 * @param contents the java source, or null to read it from the source file
+		 */
+		JspCompilationUnit(String sourceFile, String className, String javaEncoding, char[] contents, Log log) {
+			this.className = className;
+			this.sourceFile = sourceFile;
+			this.javaEncoding = javaEncoding;
+			this.contents = contents;
+			this.log = log;
+		}
 
-				if (className.equals(targetClassName)) {
-					ICompilationUnit compilationUnit = new CompilationUnit(sourceFile, className);
-					return new NameEnvironmentAnswer(compilationUnit, null);
-				}
+		@Override
+		public char[] getFileName() {
+			return sourceFile.toCharArray();
+		}
 
-				String resourceName = className.replace('.', '/') + ".class";
-
-				try (InputStream is = classLoader.getResourceAsStream(resourceName)) {
-					if (is != null) {
-						byte[] classBytes;
-						byte[] buf = new byte[8192];
-						ByteArrayOutputStream baos = new ByteArrayOutputStream(buf.length);
-						int count;
-						while ((count = is.read(buf, 0, buf.length)) > 0) {
-							baos.write(buf, 0, count);
-						}
-						baos.flush();
-						classBytes = baos.toByteArray();
-						char[] fileName = className.toCharArray();
-						ClassFileReader classFileReader = new ClassFileReader(classBytes, fileName, true);
-						return new NameEnvironmentAnswer(classFileReader, null);
-					}
-				} catch (IOException exc) {
-					log.error("Compilation error", exc);
-				} catch (org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException exc) {
-					log.error("Compilation error", exc);
+		@Override
+		public char[] getContents() {
+			if (contents != null) {
+				return contents;
+			}
+			char[] result = null;
+			try (FileInputStream is = new FileInputStream(sourceFile);
+					InputStreamReader isr = new InputStreamReader(is, javaEncoding);
+					Reader reader = new BufferedReader(isr)) {
+				char[] chars = new char[8192];
+				StringBuilder buf = new StringBuilder();
+				int count;
+				while ((count = reader.read(chars, 0, chars.length)) > 0) {
+					buf.append(chars, 0, count);
 				}
-				return null;
+				result = new char[buf.length()];
+				buf.getChars(0, result.length, result, 0);
+			} catch (IOException e) {
+				log.error("Compilation error", e);
 			}
+			return result;
+		}
 
-			private boolean isPackage(String result) {
-				if (result.equals(targetClassName)) {
-					return false;
-				}
-				String resourceName = result.replace('.', '/') + ".class";
-				try (InputStream is = classLoader.getResourceAsStream(resourceName)) {
-					return is == null;
-				} catch (IOException e) {
-					// we are here, since close on is failed. That means it was not null
-					return false;
-				}
+		@Override
+		public char[] getMainTypeName() {
+			int dot = className.lastIndexOf('.');
+			if (dot > 0) {
+				return className.substring(dot + 1).toCharArray();
 			}
+			return className.toCharArray();
+		}
 
-			@Override
-			public boolean isPackage(char[][] parentPackageName, char[] packageName) {
-				if (!isCheckFileNecessary(packageName)) {
-					return false;
-				}
+		@Override
+		public char[][] getPackageName() {
+			StringTokenizer izer = new StringTokenizer(className, ".");
+			char[][] result = new char[izer.countTokens() - 1][];
+			for (int i = 0; i < result.length; i++) {
+				String tok = izer.nextToken();
+				result[i] = tok.toCharArray();
+			}
+			return result;
+		}
 
-				StringBuilder result = new StringBuilder();
-				int i = 0;
-				if (parentPackageName != null) {
-					for (; i < parentPackageName.length; i++) {
-						if (i > 0)
-							result.append('.');
-						result.append(parentPackageName[i]);
-					}
-				}
+		@Override
+		public boolean ignoreOptionalProblems() {
+			return false;
+		}
+	}
 
-				if (Character.isUpperCase(packageName[0])) {
-					if (!isPackage(result.toString())) {
-						return false;
-					}
-				}
-				if (i > 0)
-					result.append('.');
-				result.append(packageName);
+	/**
+	 * Name environment which resolves the compilation units being compiled, then
+	 * the classes of the class loader through the shared {@link ClassFileCache}.
+	 */
+	static class JspNameEnvironment implements INameEnvironment {
 
-				return isPackage(result.toString());
-			}
+		private final Map<String, ICompilationUnit> compilationUnits;
+		private final ClassLoader classLoader;
+		private final ClassFileCache resourcesCache;
+		private final Log log;
+		private final String jspUri;
 
-			@Override
-			public void cleanup() {
-			}
+		JspNameEnvironment(Map<String, ICompilationUnit> compilationUnits, ClassLoader classLoader,
+				ClassFileCache resourcesCache, Log log) {
+			this(compilationUnits, classLoader, resourcesCache, log, null);
+		}
 
-		};
+		/**
+		 * @param jspUri the jsp or tag file compiled, for the class lookup events, or
+		 *               null if several are compiled together
+		 */
+		JspNameEnvironment(Map<String, ICompilationUnit> compilationUnits, ClassLoader classLoader,
+				ClassFileCache resourcesCache, Log log, String jspUri) {
+			this.compilationUnits = compilationUnits;
+			this.classLoader = classLoader;
+			this.resourcesCache = resourcesCache;
+			this.log = log;
+			this.jspUri = jspUri;
+		}
 
-		final IErrorHandlingPolicy policy = DefaultErrorHandlingPolicies.proceedWithAllProblems();
-
-		final Map<String, String> settings = new HashMap<>();
-		settings.put(CompilerOptions.OPTION_LineNumberAttribute, CompilerOptions.GENERATE);
-		settings.put(CompilerOptions.OPTION_SourceFileAttribute, CompilerOptions.GENERATE);
-		settings.put(CompilerOptions.OPTION_ReportDeprecation, CompilerOptions.IGNORE);
-		if (ctxt.getOptions().getJavaEncoding() != null) {
-			settings.put(CompilerOptions.OPTION_Encoding, ctxt.getOptions().getJavaEncoding());
-		}
-		if (ctxt.getOptions().getClassDebugInfo()) {
-			settings.put(CompilerOptions.OPTION_LocalVariableAttribute, CompilerOptions.GENERATE);
-		}
-
-		// Source JVM
-		if (ctxt.getOptions().getCompilerSourceVM() != null) {
-			String opt = ctxt.getOptions().getCompilerSourceVM();
-			if (opt.equals("1.1")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_1);
-			} else if (opt.equals("1.2")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_2);
-			} else if (opt.equals("1.3")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_3);
-			} else if (opt.equals("1.4")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_4);
-			} else if (opt.equals("1.5")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_5);
-			} else if (opt.equals("1.6")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_6);
-			} else if (opt.equals("1.7")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_7);
-			} else if (opt.equals("1.8")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_8);
-				// Version format changed from Java 9 onwards.
-				// Support old format that was used in EA implementation as well
-			} else if (opt.equals("9") || opt.equals("1.9")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_9);
-			} else if (opt.equals("10")) {
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_10);
-			} else {
-				log.warn("Unknown source VM " + opt + " ignored.");
-				settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_8);
+		@Override
+		public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+			StringBuilder result = new StringBuilder();
+			for (int i = 0; i < compoundTypeName.length; i++) {
+				if (i > 0)
+					result.append('.');
+				result.append(compoundTypeName[i]);
 			}
-		} else {
-			// Default to 1.8
-			settings.put(CompilerOptions.OPTION_Source, CompilerOptions.VERSION_1_8);
-		}
-
-		// Target JVM
-		if (ctxt.getOptions().getCompilerTargetVM() != null) {
-			String opt = ctxt.getOptions().getCompilerTargetVM();
-			if (opt.equals("1.1")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_1);
-			} else if (opt.equals("1.2")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_2);
-			} else if (opt.equals("1.3")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_3);
-			} else if (opt.equals("1.4")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_4);
-			} else if (opt.equals("1.5")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_5);
-				settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_1_5);
-			} else if (opt.equals("1.6")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_6);
-				settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_1_6);
-			} else if (opt.equals("1.7")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_7);
-				settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_1_7);
-			} else if (opt.equals("1.8")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_8);
-				settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_1_8);
-				// Version format changed from Java 9 onwards.
-				// Support old format that was used in EA implementation as well
-			} else if (opt.equals("9") || opt.equals("1.9")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_9);
-				settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_9);
-			} else if (opt.equals("10")) {
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_10);
-				settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_10);
-			} else {
-				log.warn("Unknown target VM " + opt + " ignored.");
-				settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_8);
+			return findType(result.toString());
+		}
+
+		@Override
+		public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+			StringBuilder result = new StringBuilder();
+			int i = 0;
+			for (; i < packageName.length; i++) {
+				if (i > 0)
+					result.append('.');
+				result.append(packageName[i]);
 			}
-		} else {
-			// Default to 1.8
-			settings.put(CompilerOptions.OPTION_TargetPlatform, CompilerOptions.VERSION_1_8);
-			settings.put(CompilerOptions.OPTION_Compliance, CompilerOptions.VERSION_1_8);
+			if (i > 0)
+				result.append('.');
+			result.append(typeName);
+			return findType(result.toString());
 		}
 
-		final IProblemFactory problemFactory = new DefaultProblemFactory(Locale.getDefault());
+		private NameEnvironmentAnswer findType(String className) {
 
-		final ICompilerRequestor requestor = new ICompilerRequestor() {
-			@Override
-			public void acceptResult(CompilationResult result) {
-				try {
-					if (result.hasProblems()) {
-						IProblem[] problems = result.getProblems();
-						for (int i = 0; i < problems.length; i++) {
-							IProblem problem = problems[i];
-							if (problem.isError()) {
-								String name = new String(problems[i].getOriginatingFileName());
-								try {
-									problemList.add(ErrorDispatcher.createJavacError(name, pageNodes,
-											new StringBuilder(problem.getMessage()), problem.getSourceLineNumber(),
-											ctxt));
-								} catch (JasperException e) {
-									log.error("Error visiting node", e);
-								}
-							}
-						}
-					}
-					if (problemList.isEmpty()) {
-						ClassFile[] classFiles = result.getClassFiles();
-						for (int i = 0; i < classFiles.length; i++) {
-							ClassFile classFile = classFiles[i];
-							char[][] compoundName = classFile.getCompoundName();
-							StringBuilder classFileName = new StringBuilder(outputDir).append('/');
-							for (int j = 0; j < compoundName.length; j++) {
-								if (j > 0)
-									classFileName.append('/');
-								classFileName.append(compoundName[j]);
-							}
-							byte[] bytes = classFile.getBytes();
-							classFileName.append(".class");
-							try (FileOutputStream fout = new FileOutputStream(classFileName.toString());
-									BufferedOutputStream bos = new BufferedOutputStream(fout)) {
-								bos.write(bytes);
-							}
-						}
-					}
-				} catch (IOException exc) {
-					log.error("Compilation error", exc);
-				}
+			ICompilationUnit compilationUnit = compilationUnits.get(className);
+			if (compilationUnit != null) {
+				return new NameEnvironmentAnswer(compilationUnit, null);
 			}
-		};
 
-		ICompilationUnit[] compilationUnits = new ICompilationUnit[classNames.length];
-		for (int i = 0; i < compilationUnits.length; i++) {
-			String className = classNames[i];
-			compilationUnits[i] = new CompilationUnit(fileNames[i], className);
+			try {
+				ClassFileReader classFileReader = resourcesCache.getClassFile(className, classLoader, jspUri);
+				if (classFileReader != null) {
+					return new NameEnvironmentAnswer(classFileReader, null);
+				}
+			} catch (IOException exc) {
+				log.error("Compilation error", exc);
+			} catch (org.eclipse.jdt.internal.compiler.classfmt.ClassFormatException exc) {
+				log.error("Compilation error", exc);
+			}
+			return null;
 		}
-		CompilerOptions cOptions = new CompilerOptions(settings);
-		cOptions.parseLiteralExpressionsAsConstants = true;
-		Compiler compiler = new Compiler(env, policy, cOptions, requestor, problemFactory);
-		compiler.compile(compilationUnits);
 
-		if (!ctxt.keepGenerated()) {
-			File javaFile = new File(ctxt.getServletJavaFileName());
-			if (!javaFile.delete()) {
-				throw new JasperException(Localizer.getMessage("jsp.warning.compiler.javafile.delete.fail", javaFile));
+		private boolean isPackage(String result) {
+			if (compilationUnits.containsKey(result)) {
+				return false;
 			}
+			return !resourcesCache.isClass(result, classLoader, jspUri);
 		}
 
-		if (!problemList.isEmpty()) {
-			JavacErrorDetail[] jeds = problemList.toArray(new JavacErrorDetail[0]);
-			errDispatcher.javacError(jeds);
-		}
+		@Override
+		public boolean isPackage(char[][] parentPackageName, char[] packageName) {
+			if (!mayBePackage(packageName)) {
+				return false;
+			}
 
-		if (log.isDebugEnabled()) {
-			long t2 = System.currentTimeMillis();
-			log.debug("Compiled " + ctxt.getServletJavaFileName() + " " + (t2 - t1) + "ms");
-		}
+			StringBuilder result = new StringBuilder();
+			int i = 0;
+			if (parentPackageName != null) {
+				for (; i < parentPackageName.length; i++) {
+					if (i > 0)
+						result.append('.');
+					result.append(parentPackageName[i]);
+				}
+			}
 
-		if (ctxt.isPrototypeMode()) {
-			return;
+			if (Character.isUpperCase(packageName[0])) {
+				if (!isPackage(result.toString())) {
+					return false;
+				}
+			}
+			if (i > 0)
+				result.append('.');
+			result.append(packageName);
+
+			return isPackage(result.toString());
 		}
 
-		// JSR45 Support
-		if (!options.isSmapSuppressed()) {
-			SmapUtil.installSmap(smaps);
+		@Override
+		public void cleanup() {
 		}
 	}
 }
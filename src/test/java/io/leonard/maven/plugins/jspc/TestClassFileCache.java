@@ -0,0 +1,100 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.internal.compiler.classfmt.ClassFileReader;
+import org.junit.Test;
+
+public class TestClassFileCache {
+
+  private final ClassLoader classLoader = getClass().getClassLoader();
+
+  @Test
+  public void should_read_a_class_only_once_when_getClassFile_is_called_twice() throws Exception {
+    // Given
+    ClassFileCache cache = new ClassFileCache(1024 * 1024, Arrays.asList("jsp"));
+    ClassFileReader first = cache.getClassFile("io.leonard.maven.plugins.jspc.JspcMojo", classLoader);
+
+    // When
+    ClassFileReader second = cache.getClassFile("io.leonard.maven.plugins.jspc.JspcMojo", classLoader);
+
+    // Then
+    assertThat(second).isSameAs(first);
+    assertThat(cache.getClassCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_not_cache_classes_of_excluded_packages() throws Exception {
+    // Given
+    ClassFileCache cache = new ClassFileCache(1024 * 1024, Arrays.asList("io.leonard.maven.plugins.jspc"));
+
+    // When
+    ClassFileReader classFile = cache.getClassFile("io.leonard.maven.plugins.jspc.JspcMojo", classLoader);
+
+    // Then
+    assertThat(classFile).isNotNull();
+    assertThat(cache.getClassCount()).isZero();
+  }
+
+  @Test
+  public void should_return_null_when_getClassFile_input_with_unknown_class() throws Exception {
+    // Given
+    ClassFileCache cache = new ClassFileCache(1024 * 1024, Arrays.asList("jsp"));
+
+    // When
+    ClassFileReader classFile = cache.getClassFile("io.leonard.Unknown", classLoader);
+
+    // Then
+    assertThat(classFile).isNull();
+  }
+
+  @Test
+  public void should_answer_from_cache_when_isClass_is_called_twice_with_unknown_class() throws Exception {
+    // Given
+    ClassFileCache cache = new ClassFileCache(1024 * 1024, Arrays.asList("jsp"));
+    cache.isClass("io.leonard.Unknown", classLoader);
+
+    // When
+    boolean isClass = cache.isClass("io.leonard.Unknown", classLoader);
+    ClassFileReader classFile = cache.getClassFile("io.leonard.Unknown", classLoader);
+
+    // Then
+    assertThat(isClass).isFalse();
+    assertThat(classFile).isNull();
+    assertThat(cache.getMisses()).isEqualTo(1);
+    assertThat(cache.getHits()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_not_remember_missing_classes_of_excluded_packages() throws Exception {
+    // Given
+    ClassFileCache cache = new ClassFileCache(1024 * 1024, Arrays.asList("org.apache.jsp"));
+    cache.isClass("org.apache.jsp.tag.web.a_tag", classLoader);
+
+    // When
+    cache.isClass("org.apache.jsp.tag.web.a_tag", classLoader);
+
+    // Then
+    assertThat(cache.getMisses()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_evict_least_recently_used_classes_when_cache_is_full() throws Exception {
+    // Given
+    ClassFileCache cache = new ClassFileCache(128 * 1024, Arrays.asList("jsp"));
+    ClassFileReader mostRecentlyUsed = cache.getClassFile("java.lang.String", classLoader);
+
+    // When
+    for (String className : Arrays.asList("java.util.HashMap", "java.util.ArrayList", "java.util.TreeMap",
+        "java.util.LinkedList", "java.util.Collections")) {
+      cache.getClassFile("java.lang.String", classLoader);
+      cache.getClassFile(className, classLoader);
+    }
+
+    // Then
+    assertThat(cache.getSize()).isLessThanOrEqualTo(128 * 1024);
+    assertThat(cache.getClassFile("java.lang.String", classLoader)).isSameAs(mostRecentlyUsed);
+  }
+}
@@ -0,0 +1,96 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.taglibs.standard.tag.common.core.OutSupport;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class TestClasspathIndex {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File junitJar;
+  private File jstlJar;
+  private ClasspathIndex index;
+
+  @Before
+  public void buildIndex() throws Exception {
+    junitJar = new File(Test.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    jstlJar = new File(OutSupport.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+    URLClassLoader classLoader = new URLClassLoader(new URL[] { junitJar.toURI().toURL(), jstlJar.toURI().toURL() },
+        null);
+    index = ClasspathIndex.build(classLoader);
+  }
+
+  @After
+  public void closeIndex() throws Exception {
+    index.close();
+  }
+
+  @Test
+  public void should_know_the_classes_of_the_indexed_jars() throws Exception {
+    assertThat(index.containsClass("org.junit.Test")).isTrue();
+    assertThat(index.readClass("org.junit.Test")).isNotEmpty();
+    assertThat(index.isMissingClass("org.junit.Test")).isFalse();
+  }
+
+  @Test
+  public void should_know_missing_classes_of_indexed_packages_only() throws Exception {
+    assertThat(index.isMissingClass("org.junit.Unknown")).isTrue();
+    assertThat(index.isMissingClass("org.unknown.Unknown")).isFalse();
+    assertThat(index.readClass("org.junit.Unknown")).isNull();
+  }
+
+  @Test
+  public void should_know_the_jars_containing_a_tld() throws Exception {
+    assertThat(index.containsTld(jstlJar)).isTrue();
+    assertThat(index.containsTld(junitJar)).isFalse();
+    assertThat(index.containsJar(junitJar)).isTrue();
+    assertThat(index.isJarWithoutTld(junitJar.getName())).isTrue();
+    assertThat(index.isJarWithoutTld(jstlJar.getName())).isFalse();
+  }
+
+  @Test
+  public void should_know_the_classes_of_the_webapp() throws Exception {
+    // Given
+    File classes = folder.newFolder("WEB-INF", "classes");
+    Files.createDirectories(classes.toPath().resolve("org/junit"));
+    Files.write(classes.toPath().resolve("org/junit/WebAppClass.class"), new byte[] { 1 });
+
+    // When
+    try (ClasspathIndex webAppIndex = ClasspathIndex.build(new URLClassLoader(new URL[] { junitJar.toURI().toURL() },
+        null), Arrays.asList(classes.toURI().toURL()))) {
+
+      // Then
+      assertThat(webAppIndex.containsClass("org.junit.WebAppClass")).isTrue();
+      assertThat(webAppIndex.isMissingClass("org.junit.WebAppClass")).isFalse();
+    }
+  }
+
+  @Test
+  public void should_identify_the_jars_by_their_path() throws Exception {
+    // Given
+    File jstlCopy = new File(folder.newFolder("jstl"), "library.jar");
+    File junitCopy = new File(folder.newFolder("junit"), "library.jar");
+    Files.copy(jstlJar.toPath(), jstlCopy.toPath());
+    Files.copy(junitJar.toPath(), junitCopy.toPath());
+
+    // When
+    try (ClasspathIndex sameNameIndex = ClasspathIndex.build(new URLClassLoader(
+        new URL[] { jstlCopy.toURI().toURL(), junitCopy.toURI().toURL() }, null))) {
+
+      // Then
+      assertThat(sameNameIndex.containsTld(jstlCopy)).isTrue();
+      assertThat(sameNameIndex.containsTld(junitCopy)).isFalse();
+      assertThat(sameNameIndex.isJarWithoutTld("library.jar")).isFalse();
+    }
+  }
+}
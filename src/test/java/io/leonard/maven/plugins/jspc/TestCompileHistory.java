@@ -0,0 +1,79 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCompileHistory {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private List<String> jspUris;
+
+  private CompileHistory history;
+
+  @Before
+  public void measurePreviousBuild() throws Exception {
+    // 100 characters each, compiled by the previous build in 2.75ms per character on average
+    writeJsp("/measured_slow.jsp", "", 100);
+    writeJsp("/measured_fast.jsp", "", 100);
+    // estimated to 150, 2 * 60 and 10 characters
+    writeJsp("/big.jsp", "", 150);
+    writeJsp("/with_include.jsp", "<%@ include file=\"header.jspf\" %>", 60);
+    writeJsp("/small.jsp", "", 10);
+    jspUris = new ArrayList<>(
+        Arrays.asList("/small.jsp", "/measured_fast.jsp", "/with_include.jsp", "/big.jsp", "/measured_slow.jsp"));
+    Map<String, Long> measuredTimes = new HashMap<>();
+    measuredTimes.put("/measured_slow.jsp", 500L);
+    measuredTimes.put("/measured_fast.jsp", 50L);
+    history = new CompileHistory();
+    history.update(measuredTimes, jspUris);
+  }
+
+  @Test
+  public void should_sort_the_jsps_by_decreasing_measured_or_estimated_cost() {
+    // When
+    history.sortByDecreasingCost(jspUris, folder.getRoot());
+
+    // Then
+    assertThat(jspUris).containsExactly("/measured_slow.jsp", "/big.jsp", "/with_include.jsp", "/measured_fast.jsp",
+        "/small.jsp");
+  }
+
+  @Test
+  public void should_estimate_the_cost_from_the_size_and_the_includes() {
+    // When
+    long cost = CompileHistory.estimateCost(new File(folder.getRoot(), "with_include.jsp"));
+
+    // Then
+    assertThat(cost).isEqualTo(2 * 60);
+  }
+
+  @Test
+  public void should_sort_by_estimated_cost_without_history() {
+    // Given
+    CompileHistory emptyHistory = CompileHistory.load(new File(folder.getRoot(), "missing.txt"));
+
+    // When
+    emptyHistory.sortByDecreasingCost(jspUris, folder.getRoot());
+
+    // Then
+    assertThat(jspUris).containsExactly("/big.jsp", "/with_include.jsp", "/measured_fast.jsp",
+        "/measured_slow.jsp", "/small.jsp");
+  }
+
+  private void writeJsp(String jspUri, String content, int length) throws Exception {
+    StringBuilder source = new StringBuilder(content);
+    while (source.length() < length) {
+      source.append('x');
+    }
+    Files.write(new File(folder.getRoot(), jspUri).toPath(), source.toString().getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,115 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+public class TestConcurrencyController {
+
+  private ConcurrencyController controller;
+
+  @Before
+  public void startHalfOfTheWorkers() {
+    controller = new ConcurrencyController(8, () -> 0);
+  }
+
+  @Test
+  public void should_add_workers_while_the_throughput_grows() {
+    // When
+    controller.adjust(10, 0.5, 0);
+    controller.adjust(12, 0.6, 0);
+    controller.adjust(14, 0.7, 0);
+
+    // Then
+    assertThat(controller.getActiveWorkers()).isEqualTo(7);
+  }
+
+  @Test
+  public void should_remove_the_last_added_worker_when_the_throughput_does_not_grow() {
+    // Given
+    controller.adjust(10, 0.5, 0);
+
+    // When
+    String change = controller.adjust(10.2, 0.6, 0);
+
+    // Then
+    assertThat(controller.getActiveWorkers()).isEqualTo(4);
+    assertThat(change).startsWith("Active threads 5 -> 4 (no gain of throughput)");
+  }
+
+  @Test
+  public void should_wait_before_adding_a_worker_again_after_a_useless_one() {
+    // Given
+    controller.adjust(10, 0.5, 0);
+    controller.adjust(10, 0.5, 0);
+
+    // When
+    for (int period = 0; period < ConcurrencyController.HOLD_PERIODS; period++) {
+      assertThat(controller.adjust(10, 0.5, 0)).isNull();
+    }
+    controller.adjust(10, 0.5, 0);
+
+    // Then
+    assertThat(controller.getActiveWorkers()).isEqualTo(5);
+  }
+
+  @Test
+  public void should_not_add_workers_when_the_processors_are_saturated() {
+    // When
+    String change = controller.adjust(10, 0.95, 0);
+
+    // Then
+    assertThat(change).isNull();
+    assertThat(controller.getActiveWorkers()).isEqualTo(4);
+  }
+
+  @Test
+  public void should_remove_a_worker_when_the_gc_takes_too_much_time() {
+    // When
+    String change = controller.adjust(10, 0.5, 0.3);
+
+    // Then
+    assertThat(controller.getActiveWorkers()).isEqualTo(3);
+    assertThat(change).contains("too much time in GC", "gc 30%");
+    assertThat(controller.getSummary()).isEqualTo("Active threads : 3 of 8 at the end, between 3 and 4 during the build");
+  }
+
+  @Test
+  public void should_not_exceed_the_started_workers() {
+    // When
+    for (int period = 0; period < 10; period++) {
+      controller.adjust(10 + period * 10, 0.5, 0);
+    }
+
+    // Then
+    assertThat(controller.getActiveWorkers()).isEqualTo(8);
+  }
+
+  @Test(timeout = 5000)
+  public void should_let_an_inactive_worker_go_when_the_queue_is_empty() throws Exception {
+    // Given
+    Queue<String> jsps = new ConcurrentLinkedQueue<>();
+    jsps.add("/index.jsp");
+    Thread worker = new Thread(() -> {
+      try {
+        controller.awaitActive(8, jsps);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    worker.start();
+
+    // When
+    TimeUnit.MILLISECONDS.sleep(200);
+    boolean waiting = worker.isAlive();
+    jsps.clear();
+    worker.join();
+
+    // Then
+    assertThat(waiting).isTrue();
+  }
+}
@@ -0,0 +1,62 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFileHashIndex {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path jar;
+
+  private File indexFile;
+
+  @Before
+  public void hashAJar() throws Exception {
+    jar = folder.newFile("library.jar").toPath();
+    Files.write(jar, new byte[] { 1, 2, 3 });
+    indexFile = new File(folder.getRoot(), "classpath-hashes.txt");
+    FileHashIndex previousIndex = FileHashIndex.load(indexFile);
+    previousIndex.hash(jar);
+    previousIndex.save(indexFile);
+  }
+
+  @Test
+  public void should_read_the_hash_of_an_unchanged_file_from_the_previous_build() throws Exception {
+    // Given
+    FileHashIndex index = FileHashIndex.load(indexFile);
+
+    // When
+    String hash = index.hash(jar);
+
+    // Then
+    assertThat(hash).isEqualTo(BuildCache.hash(jar.toFile()));
+    assertThat(index.getHits()).isEqualTo(1);
+    assertThat(index.getMisses()).isZero();
+  }
+
+  @Test
+  public void should_hash_again_a_file_which_changed() throws Exception {
+    // Given
+    FileTime lastModified = Files.getLastModifiedTime(jar);
+    Files.write(jar, new byte[] { 4, 5, 6 });
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(lastModified.toMillis() + 2000));
+    FileHashIndex index = FileHashIndex.load(indexFile);
+
+    // When
+    String hash = index.hash(jar);
+
+    // Then
+    assertThat(hash).isEqualTo(BuildCache.hash(jar.toFile()));
+    assertThat(index.getHits()).isZero();
+    assertThat(index.getMisses()).isEqualTo(1);
+  }
+}
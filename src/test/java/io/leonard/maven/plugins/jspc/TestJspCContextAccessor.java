@@ -0,0 +1,65 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class TestJspCContextAccessor {
+
+  private static final String WEBAPP = "src/test/resources/unit/project_many_jsp/src/main/webapp";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void should_share_the_tld_scan_of_the_top_jspc_with_the_workers() throws Exception {
+    // Given
+    JspCContextAccessor topJspC = newJspC();
+    topJspC.initClassLoader();
+    topJspC.initServletContext();
+
+    // When
+    JspCContextAccessor workerJspC = newJspC();
+    workerJspC.initContext(topJspC);
+
+    // Then
+    assertThat(workerJspC.getTldCache()).isNotNull().isSameAs(topJspC.getTldCache());
+    assertThat(workerJspC.getContext()).isSameAs(topJspC.getContext());
+  }
+
+  @Test
+  public void should_compile_a_tag_file_once_for_all_the_workers() throws Exception {
+    // Given
+    JspCContextAccessor topJspC = newJspC();
+    topJspC.initClassLoader();
+    topJspC.initServletContext();
+    JspCContextAccessor firstWorkerJspC = newJspC();
+    firstWorkerJspC.initContext(topJspC);
+    JspCContextAccessor secondWorkerJspC = newJspC();
+    secondWorkerJspC.setForceCompile(true);
+    secondWorkerJspC.initContext(topJspC);
+
+    firstWorkerJspC.processFile("/jsp/01.jsp");
+    File tagClass = new File(folder.getRoot(), "org/apache/jsp/tag/web/response1_tag.class");
+    assertThat(tagClass).exists();
+    // older than the tag file, it would be compiled again if it was checked
+    assertThat(tagClass.setLastModified(1000L)).isTrue();
+
+    // When
+    secondWorkerJspC.processFile("/jsp/01.jsp");
+
+    // Then
+    assertThat(tagClass.lastModified()).isEqualTo(1000L);
+  }
+
+  private JspCContextAccessor newJspC() throws Exception {
+    JspCContextAccessor jspc = new JspCContextAccessor();
+    jspc.setUriroot(WEBAPP);
+    jspc.setOutputDir(folder.getRoot().getAbsolutePath());
+    jspc.setCompile(true);
+    return jspc;
+  }
+}
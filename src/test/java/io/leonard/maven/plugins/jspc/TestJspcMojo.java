@@ -1,6 +1,7 @@
 package io.leonard.maven.plugins.jspc;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -8,7 +9,9 @@ import java.nio.file.*;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.testing.MojoRule;
+import org.codehaus.plexus.util.FileUtils;
 import org.junit.*;
 
 /**
@@ -134,6 +137,24 @@ public class TestJspcMojo {
     assertThat(byteCodeVersion[0]).isEqualTo(JAVA_11_BYTECODE_VERSION);
   }
 
+  @Test
+  public void should_not_compile_the_next_jsps_when_executeMojo_on_project_stop_at_first_error() throws Exception {
+    // Given
+    File stopAtFirstErrorProject = new File("target/test-classes/unit/project_stop_at_first_error");
+    FileUtils.deleteDirectory(new File(stopAtFirstErrorProject, "target"));
+
+    // When
+    assertThatThrownBy(() -> rule.executeMojo(stopAtFirstErrorProject, "compile"))
+      .isInstanceOf(MojoExecutionException.class);
+
+    // Then
+    Path classesPath = Paths.get("target/test-classes/unit/project_stop_at_first_error/target/classes/jsp/jsp");
+    assertThat(classesPath.resolve("error_jsp.class")).doesNotExist();
+    assertThat(classesPath.resolve("index1_jsp.class")).doesNotExist();
+    assertThat(classesPath.resolve("index2_jsp.class")).doesNotExist();
+    assertThat(classesPath.resolve("index3_jsp.class")).doesNotExist();
+  }
+
   private BufferedReader getExpectedWebXmlReader(String projectName) throws FileNotFoundException {
     return new BufferedReader(new InputStreamReader(
         new FileInputStream(new File("target/test-classes/unit/" + projectName + "/src/assert/expectedWebXml.xml")), StandardCharsets.UTF_8));
@@ -0,0 +1,84 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.junit.*;
+
+/**
+ * Test {@link JspcMojo} with batchCompile
+ */
+public class TestJspcMojoBatchCompile {
+
+  @Rule
+  public MojoRule rule = new MojoRule();
+
+  private List<String> errors = new ArrayList<>();
+
+  @Test
+  public void should_return_same_compiled_jsp_as_JDTCompiler_reference_when_executeMojo_on_project_many_jsp_batch() throws Exception {
+    // Given
+    File manyJspProject = new File("target/test-classes/unit/project_many_jsp");
+    File manyJspProjectBatch = new File("target/test-classes/unit/project_many_jsp_batch");
+
+    // When
+    rule.executeMojo(manyJspProject, "compile");
+    rule.executeMojo(manyJspProjectBatch, "compile");
+
+    // Then
+    assertSameClassesAsReference("project_many_jsp_batch");
+  }
+
+  @Test
+  public void should_return_same_compiled_jsp_as_JDTCompiler_reference_when_executeMojo_on_project_many_jsp_pipeline() throws Exception {
+    // Given
+    File manyJspProject = new File("target/test-classes/unit/project_many_jsp");
+    File manyJspProjectPipeline = new File("target/test-classes/unit/project_many_jsp_pipeline");
+
+    // When
+    rule.executeMojo(manyJspProject, "compile");
+    rule.executeMojo(manyJspProjectPipeline, "compile");
+
+    // Then
+    assertSameClassesAsReference("project_many_jsp_pipeline");
+  }
+
+  @Test
+  public void should_report_the_jsp_line_when_batch_compilation_fails() throws Exception {
+    // Given
+    Mojo mojo = rule.lookupConfiguredMojo(new File("target/test-classes/unit/project_batch_error"), "compile");
+    mojo.setLog(new SystemStreamLog() {
+      @Override
+      public void error(CharSequence content) {
+        errors.add(content.toString());
+        super.error(content);
+      }
+    });
+
+    // When
+    assertThatThrownBy(mojo::execute).isInstanceOf(MojoExecutionException.class);
+
+    // Then
+    assertThat(errors).anySatisfy(error -> assertThat(error).contains("line: [4] in the jsp file: [/jsp/error.jsp]"));
+    assertThat(errors).anySatisfy(error -> assertThat(error).contains("int count = \"not a number\";"));
+    assertThat(Paths.get("target/test-classes/unit/project_batch_error/target/classes/jsp/jsp/index_jsp.class")).exists();
+    assertThat(Paths.get("target/test-classes/unit/project_batch_error/target/classes/jsp/jsp/error_jsp.class")).doesNotExist();
+  }
+
+  private void assertSameClassesAsReference(String project) throws Exception {
+    for (String jsp : new String[] { "_01_jsp", "_02_jsp", "_03_jsp", "_04_jsp" }) {
+      assertThat(Files.readAllBytes(Paths.get("target/test-classes/unit/" + project + "/target/classes/jsp/jsp/" + jsp + ".class")))
+        .isEqualTo(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp/target/classes/jsp/jsp/" + jsp + ".class")));
+    }
+    assertThat(Paths.get("target/test-classes/unit/" + project + "/target/classes/org/apache/jsp/tag/web/response1_tag.class")).exists();
+  }
+}
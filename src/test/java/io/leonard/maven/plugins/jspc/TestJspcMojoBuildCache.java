@@ -0,0 +1,137 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test {@link JspcMojo} with a build cache
+ */
+public class TestJspcMojoBuildCache {
+
+  private static final String PROJECT_PATH = "target/test-classes/unit/project_cache";
+  private static final String TARGET_PATH = PROJECT_PATH + "/target/classes/";
+  private static final String WEBAPP_PATH = "target/test-classes/unit/project_many_jsp/src/main/webapp";
+
+  @Rule
+  public MojoRule rule = new MojoRule();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private List<String> infos = new ArrayList<>();
+
+  private File webapp;
+
+  @Before
+  public void cleanPreviousBuild() throws Exception {
+    FileUtils.deleteDirectory(PROJECT_PATH + "/target");
+    FileUtils.deleteDirectory(PROJECT_PATH + "/jspc-cache");
+    // the tests modify the sources of the webapp
+    webapp = folder.newFolder("webapp");
+    FileUtils.copyDirectoryStructure(new File(WEBAPP_PATH), webapp);
+  }
+
+  @Test
+  public void should_restore_all_jsps_from_the_cache_after_a_clean() throws Exception {
+    // Given
+    execute();
+    byte[] compiledClass = Files.readAllBytes(Paths.get(TARGET_PATH + "jsp/jsp/_01_jsp.class"));
+    FileUtils.deleteDirectory(PROJECT_PATH + "/target");
+
+    // When
+    execute();
+
+    // Then
+    assertThat(infos).contains("Number of jsps restored from cache : 5");
+    assertThat(Files.readAllBytes(Paths.get(TARGET_PATH + "jsp/jsp/_01_jsp.class"))).isEqualTo(compiledClass);
+    assertThat(Paths.get(TARGET_PATH + "org/apache/jsp/tag/web/response1_tag.class")).exists();
+    List<String> webXml = Files.readAllLines(Paths.get(PROJECT_PATH + "/target/web.xml"));
+    assertThat(webXml).containsOnlyOnce("        <url-pattern>/jsp/01.jsp</url-pattern>");
+  }
+
+  @Test
+  public void should_compile_the_jsps_depending_on_a_modified_include() throws Exception {
+    // Given
+    execute();
+    FileUtils.deleteDirectory(PROJECT_PATH + "/target");
+    Path include = webapp.toPath().resolve("jsp/include3.jspf");
+    Files.write(include, "modified".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+    // When
+    execute();
+
+    // Then
+    assertThat(infos).contains("Number of jsps restored from cache : 3");
+    assertThat(Paths.get(TARGET_PATH + "jsp/jsp/_03_jsp.class")).exists();
+  }
+
+  @Test
+  public void should_not_restore_an_entry_writing_out_of_the_output_directory() throws Exception {
+    // Given
+    execute();
+    FileUtils.deleteDirectory(PROJECT_PATH + "/target");
+    List<Path> entries;
+    try (Stream<Path> walk = Files.walk(Paths.get(PROJECT_PATH + "/jspc-cache"))) {
+      entries = walk.filter(path -> path.toString().endsWith(".zip")).collect(Collectors.toList());
+    }
+    for (Path entry : entries) {
+      addZipEntry(entry, "../../escaped.class");
+    }
+
+    // When
+    execute();
+
+    // Then
+    assertThat(infos).contains("Number of jsps restored from cache : 0");
+    assertThat(Paths.get(PROJECT_PATH + "/escaped.class")).doesNotExist();
+    assertThat(Paths.get(TARGET_PATH + "jsp/jsp/_01_jsp.class")).exists();
+  }
+
+  private void addZipEntry(Path zipFile, String name) throws Exception {
+    Path tampered = Paths.get(zipFile + ".tampered");
+    try (ZipInputStream in = new ZipInputStream(Files.newInputStream(zipFile));
+        ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(tampered))) {
+      ZipEntry entry;
+      while ((entry = in.getNextEntry()) != null) {
+        out.putNextEntry(new ZipEntry(entry.getName()));
+        in.transferTo(out);
+        out.closeEntry();
+      }
+      out.putNextEntry(new ZipEntry(name));
+      out.write(new byte[] { 1 });
+      out.closeEntry();
+    }
+    Files.move(tampered, zipFile, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private void execute() throws Exception {
+    Mojo mojo = rule.lookupConfiguredMojo(new File(PROJECT_PATH), "compile");
+    rule.setVariableValueToObject(mojo, "webAppSourceDirectory", webapp.getPath());
+    rule.setVariableValueToObject(mojo, "webXml", new File(webapp, "WEB-INF/web.xml").getPath());
+    mojo.setLog(new SystemStreamLog() {
+      @Override
+      public void info(CharSequence content) {
+        infos.add(content.toString());
+        super.info(content);
+      }
+    });
+    mojo.execute();
+  }
+}
@@ -0,0 +1,65 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.apache.maven.plugin.testing.MojoRule;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test the flight recorder events of {@link JspcMojo}
+ */
+public class TestJspcMojoFlightRecording {
+
+  @Rule
+  public MojoRule rule = new MojoRule();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void should_record_the_events_of_the_build_when_executeMojo_on_project_many_jsp_ParallelJDTCompiler() throws Exception {
+    // Given
+    File manyJspProjectCompilerParallel = new File("target/test-classes/unit/project_many_jsp_ParallelJDTCompiler");
+    FileUtils.deleteDirectory(new File(manyJspProjectCompilerParallel, "target"));
+    File recordingFile = new File(folder.getRoot(), "build.jfr");
+
+    // When
+    try (Recording recording = new Recording()) {
+      recording.enable(JspCompileEvent.class);
+      recording.enable(ClassLookupEvent.class);
+      recording.enable(TldScanEvent.class);
+      recording.enable(WebXmlMergeEvent.class);
+      recording.start();
+      rule.executeMojo(manyJspProjectCompilerParallel, "compile");
+      recording.stop();
+      recording.dump(recordingFile.toPath());
+    }
+
+    // Then
+    List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile.toPath());
+    List<RecordedEvent> compiles = eventsOf(events, "io.leonard.jspc.JspCompile");
+    assertThat(compiles).extracting(event -> event.getString("jsp")).contains("/jsp/01.jsp", "/jsp/02.jsp");
+    assertThat(compiles).allMatch(event -> event.getThread() != null && event.getInt("worker") > 0)
+      .allMatch(event -> event.getDuration("compile").toNanos() > 0);
+    assertThat(eventsOf(events, "io.leonard.jspc.ClassLookup")).isNotEmpty()
+      .anyMatch(event -> "/jsp/01.jsp".equals(event.getString("jsp")) && "java.lang.String".equals(event.getString("className")));
+    assertThat(eventsOf(events, "io.leonard.jspc.TldScan")).hasSize(1)
+      .allMatch(event -> event.getInt("tlds") > 0);
+    assertThat(eventsOf(events, "io.leonard.jspc.WebXmlMerge")).extracting(event -> event.getString("file"))
+      .anyMatch(file -> file.endsWith("webfrag.xml"));
+  }
+
+  private static List<RecordedEvent> eventsOf(List<RecordedEvent> events, String name) {
+    return events.stream().filter(event -> event.getEventType().getName().equals(name)).collect(Collectors.toList());
+  }
+}
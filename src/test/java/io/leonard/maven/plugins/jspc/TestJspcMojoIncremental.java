@@ -0,0 +1,165 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test {@link JspcMojo} with incremental compilation
+ */
+public class TestJspcMojoIncremental {
+
+  private static final String PROJECT_PATH = "target/test-classes/unit/project_incremental";
+  private static final String TARGET_PATH = PROJECT_PATH + "/target/classes/jsp/jsp/";
+  private static final String WEBAPP_PATH = "target/test-classes/unit/project_many_jsp/src/main/webapp";
+  private static final byte[] MARKER = "not compiled again".getBytes(StandardCharsets.UTF_8);
+
+  @Rule
+  public MojoRule rule = new MojoRule();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File webapp;
+
+  @Before
+  public void cleanPreviousBuild() throws Exception {
+    FileUtils.deleteDirectory(PROJECT_PATH + "/target");
+    // the tests modify the sources of the webapp
+    webapp = folder.newFolder("webapp");
+    FileUtils.copyDirectoryStructure(new File(WEBAPP_PATH), webapp);
+  }
+
+  @Test
+  public void should_compile_only_the_jsps_depending_on_a_modified_include() throws Exception {
+    // Given
+    execute();
+    markClass("_01_jsp.class");
+    markClass("_03_jsp.class");
+    touch(webapp.toPath().resolve("jsp/include3.jspf"));
+
+    // When
+    execute();
+
+    // Then
+    assertThat(Files.readAllBytes(Paths.get(TARGET_PATH + "_01_jsp.class"))).isEqualTo(MARKER);
+    assertThat(Files.readAllBytes(Paths.get(TARGET_PATH + "_03_jsp.class"))).isNotEqualTo(MARKER);
+    List<String> webXml = Files.readAllLines(Paths.get(PROJECT_PATH + "/target/web.xml"));
+    assertThat(webXml).containsOnlyOnce("        <url-pattern>/jsp/01.jsp</url-pattern>");
+    assertThat(webXml).containsOnlyOnce("        <url-pattern>/jsp/03.jsp</url-pattern>");
+  }
+
+  @Test
+  public void should_compile_the_jsps_using_a_modified_tag_file() throws Exception {
+    // Given
+    execute();
+    markClass("_01_jsp.class");
+    markClass("_02_jsp.class");
+    touch(webapp.toPath().resolve("WEB-INF/tags/response1.tag"));
+
+    // When
+    execute();
+
+    // Then
+    assertThat(Files.readAllBytes(Paths.get(TARGET_PATH + "_01_jsp.class"))).isNotEqualTo(MARKER);
+    assertThat(Files.readAllBytes(Paths.get(TARGET_PATH + "_02_jsp.class"))).isEqualTo(MARKER);
+  }
+
+  @Test
+  public void should_skip_compilation_when_nothing_changed() throws Exception {
+    // Given
+    execute();
+    markClass("_04_jsp.class");
+
+    // When
+    execute();
+
+    // Then
+    assertThat(Files.readAllBytes(Paths.get(TARGET_PATH + "_04_jsp.class"))).isEqualTo(MARKER);
+    assertThat(Paths.get(PROJECT_PATH + "/target/jspc-build-state.txt")).exists();
+  }
+
+  @Test
+  public void should_compile_again_when_a_class_of_the_classes_directory_changed() throws Exception {
+    // Given
+    Path helper = Paths.get(PROJECT_PATH + "/target/classes/com/example/Helper.class");
+    Files.createDirectories(helper.getParent());
+    Files.write(helper, new byte[] { 1 });
+    execute();
+    markClass("_04_jsp.class");
+    Files.write(helper, new byte[] { 1, 2 });
+
+    // When
+    execute();
+
+    // Then
+    assertThat(Files.readAllBytes(Paths.get(TARGET_PATH + "_04_jsp.class"))).isNotEqualTo(MARKER);
+  }
+
+  @Test
+  public void should_ignore_the_files_written_by_the_plugin_in_the_classes_directory() throws Exception {
+    // Given
+    execute();
+    markClass("_04_jsp.class");
+    Path innerClass = Paths.get(TARGET_PATH + "_04_jsp$1.class");
+    Files.write(innerClass, MARKER);
+
+    // When
+    execute();
+
+    // Then
+    assertThat(Files.readAllBytes(Paths.get(TARGET_PATH + "_04_jsp.class"))).isEqualTo(MARKER);
+  }
+
+  @Test
+  public void should_delete_the_files_generated_for_a_removed_jsp() throws Exception {
+    // Given
+    execute();
+    Path innerClass = Paths.get(TARGET_PATH + "_04_jsp$1.class");
+    Path smap = Paths.get(TARGET_PATH + "_04_jsp.class.smap");
+    Files.write(innerClass, MARKER);
+    Files.write(smap, MARKER);
+    Files.delete(webapp.toPath().resolve("jsp/04.jsp"));
+
+    // When
+    execute();
+
+    // Then
+    assertThat(Paths.get(TARGET_PATH + "_04_jsp.class")).doesNotExist();
+    assertThat(innerClass).doesNotExist();
+    assertThat(smap).doesNotExist();
+    assertThat(Paths.get(TARGET_PATH + "_03_jsp.class")).exists();
+  }
+
+  private void execute() throws Exception {
+    Mojo mojo = rule.lookupConfiguredMojo(new File(PROJECT_PATH), "compile");
+    rule.setVariableValueToObject(mojo, "webAppSourceDirectory", webapp.getPath());
+    rule.setVariableValueToObject(mojo, "webXml", new File(webapp, "WEB-INF/web.xml").getPath());
+    mojo.execute();
+  }
+
+  /**
+   * Replace the content of a compiled class without changing its last
+   * modification time, to know whether it has been compiled again.
+   */
+  private void markClass(String className) throws Exception {
+    Path classPath = Paths.get(TARGET_PATH + className);
+    FileTime lastModified = Files.getLastModifiedTime(classPath);
+    Files.write(classPath, MARKER);
+    Files.setLastModifiedTime(classPath, lastModified);
+  }
+
+  private void touch(Path path) throws Exception {
+    Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 2000));
+  }
+}
@@ -8,6 +8,7 @@ import java.nio.file.*;
 import java.util.List;
 
 import org.apache.maven.plugin.testing.MojoRule;
+import org.codehaus.plexus.util.FileUtils;
 import org.junit.*;
 
 /**
@@ -64,4 +65,53 @@ public class TestJspcMojoMultithreading {
     List<String> webXml = Files.readAllLines(Paths.get("target/test-classes/unit/project_five_jsp_4_threads/target/web.xml"), Charset.defaultCharset());
     assertThat(webXml).containsOnlyOnce("        <url-pattern>/jsp/index.jsp</url-pattern>");
   }
+
+  @Test
+  public void should_declare_all_servlets_before_mappings_in_single_webfrag_when_executeMojo_on_project_five_jsp_with_4_threads() throws Exception {
+    // Given
+    File fiveJspProject4Threads = new File("target/test-classes/unit/project_five_jsp_4_threads");
+    FileUtils.deleteDirectory(new File(fiveJspProject4Threads, "target"));
+
+    // When
+    rule.executeMojo(fiveJspProject4Threads, "compile");
+
+    // Then
+    String webfrag = new String(Files.readAllBytes(Paths.get("target/test-classes/unit/project_five_jsp_4_threads/target/webfrag.xml")), Charset.defaultCharset());
+    assertThat(webfrag.split("<servlet>", -1)).hasSize(6);
+    assertThat(webfrag.lastIndexOf("<servlet>")).isLessThan(webfrag.indexOf("<servlet-mapping>"));
+    assertThat(Paths.get("target/test-classes/unit/project_five_jsp_4_threads/target/webfrag.xml.0")).doesNotExist();
+  }
+
+  @Test
+  public void should_return_same_compiled_jsp_as_monothread_reference_when_executeMojo_on_project_many_jsp_with_auto_threads() throws Exception {
+    // Given
+    File manyJspProject = new File("target/test-classes/unit/project_many_jsp");
+    File manyJspProjectAutoThreads = new File("target/test-classes/unit/project_many_jsp_auto_threads");
+    FileUtils.deleteDirectory(new File(manyJspProjectAutoThreads, "target"));
+
+    // When
+    rule.executeMojo(manyJspProject, "compile");
+    rule.executeMojo(manyJspProjectAutoThreads, "compile");
+
+    // Then
+    assertThat(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp_auto_threads/target/classes/jsp/jsp/_01_jsp.class")))
+      .isEqualTo(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp/target/classes/jsp/jsp/_01_jsp.class")));
+    assertThat(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp_auto_threads/target/classes/jsp/jsp/_04_jsp.class")))
+      .isEqualTo(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp/target/classes/jsp/jsp/_04_jsp.class")));
+  }
+
+  @Test
+  public void should_record_compile_time_of_each_jsp_when_executeMojo_on_project_many_jsp_with_4_threads() throws Exception {
+    // Given
+    File manyJspProject4Threads = new File("target/test-classes/unit/project_many_jsp_4_threads");
+    FileUtils.deleteDirectory(new File(manyJspProject4Threads, "target"));
+
+    // When
+    rule.executeMojo(manyJspProject4Threads, "compile");
+
+    // Then
+    CompileHistory history = CompileHistory.load(new File("target/test-classes/unit/project_many_jsp_4_threads/target/jspc-compile-history.txt"));
+    assertThat(history.getCompileTime("/jsp/01.jsp")).isNotNull();
+    assertThat(history.getCompileTime("/jsp/04.jsp")).isNotNull();
+  }
 }
@@ -0,0 +1,62 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.*;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+import org.apache.maven.plugin.testing.MojoRule;
+import org.junit.*;
+
+/**
+ * Test {@link JspcMojo} with outputJar
+ */
+public class TestJspcMojoOutputJar {
+
+  @Rule
+  public MojoRule rule = new MojoRule();
+
+  @Test
+  public void should_write_same_compiled_jsp_as_JDTCompiler_reference_in_jar_when_executeMojo_on_project_many_jsp_jar() throws Exception {
+    // Given
+    File manyJspProject = new File("target/test-classes/unit/project_many_jsp");
+    File manyJspProjectJar = new File("target/test-classes/unit/project_many_jsp_jar");
+
+    // When
+    rule.executeMojo(manyJspProject, "compile");
+    rule.executeMojo(manyJspProjectJar, "compile");
+
+    // Then
+    try (JarFile jar = new JarFile("target/test-classes/unit/project_many_jsp_jar/target/precompiled-jsp.jar")) {
+      for (String jsp : new String[] { "_01_jsp", "_02_jsp", "_03_jsp", "_04_jsp" }) {
+        ZipEntry entry = jar.getEntry("jsp/jsp/" + jsp + ".class");
+        assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+        assertThat(jar.getInputStream(entry).readAllBytes())
+          .isEqualTo(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp/target/classes/jsp/jsp/" + jsp + ".class")));
+        assertThat(Paths.get("target/test-classes/unit/project_many_jsp_jar/target/classes/jsp/jsp/" + jsp + ".class")).doesNotExist();
+      }
+      assertThat(jar.getEntry("org/apache/jsp/tag/web/response1_tag.class")).isNotNull();
+      assertThat(Paths.get("target/test-classes/unit/project_many_jsp_jar/target/classes/org/apache/jsp/tag/web/response1_tag.class")).doesNotExist();
+    }
+  }
+
+  @Test
+  public void should_write_classes_and_smaps_in_jar_when_executeMojo_on_project_many_jsp_jar_smap() throws Exception {
+    // Given
+    File manyJspProjectJarSmap = new File("target/test-classes/unit/project_many_jsp_jar_smap");
+
+    // When
+    rule.executeMojo(manyJspProjectJarSmap, "compile");
+
+    // Then
+    try (JarFile jar = new JarFile("target/test-classes/unit/project_many_jsp_jar_smap/target/precompiled-jsp.jar")) {
+      assertThat(jar.getEntry("jsp/jsp/_01_jsp.class").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+      assertThat(jar.getEntry("jsp/jsp/_01_jsp.class.smap")).isNotNull();
+      assertThat(jar.getEntry("org/apache/jsp/tag/web/response1_tag.class")).isNotNull();
+    }
+    assertThat(Paths.get("target/test-classes/unit/project_many_jsp_jar_smap/target/classes/jsp/jsp/_01_jsp.class")).doesNotExist();
+    assertThat(Paths.get("target/test-classes/unit/project_many_jsp_jar_smap/target/classes/jsp/jsp/_01_jsp.class.smap")).doesNotExist();
+  }
+}
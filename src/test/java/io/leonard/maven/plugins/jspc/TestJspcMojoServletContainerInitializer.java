@@ -0,0 +1,119 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletRegistration;
+
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.*;
+
+/**
+ * Test {@link JspcMojo} with servletContainerInitializer
+ */
+public class TestJspcMojoServletContainerInitializer {
+
+  @Rule
+  public MojoRule rule = new MojoRule();
+
+  private List<String> infos = new ArrayList<>();
+
+  @Test
+  public void should_write_servlets_table_and_initializer_when_executeMojo_on_project_many_jsp_initializer() throws Exception {
+    // Given
+    File manyJspProjectInitializer = new File("target/test-classes/unit/project_many_jsp_initializer");
+
+    // When
+    rule.executeMojo(manyJspProjectInitializer, "compile");
+
+    // Then
+    Path classes = Paths.get("target/test-classes/unit/project_many_jsp_initializer/target/classes");
+    assertThat(Files.readAllLines(classes.resolve(PrecompiledJspInitializer.SERVLETS_TABLE), StandardCharsets.UTF_8))
+      .containsExactlyInAnyOrder("jsp.jsp._01_jsp\t/jsp/01.jsp", "jsp.jsp._02_jsp\t/jsp/02.jsp",
+          "jsp.jsp._03_jsp\t/jsp/03.jsp", "jsp.jsp._04_jsp\t/jsp/04.jsp", "jsp.jsp.include3_jspf\t/jsp/include3.jspf");
+    assertThat(Files.readAllLines(classes.resolve("META-INF/services/jakarta.servlet.ServletContainerInitializer")))
+      .containsExactly(PrecompiledJspInitializer.class.getName());
+    assertThat(classes.resolve("io/leonard/maven/plugins/jspc/PrecompiledJspInitializer.class")).exists();
+    assertThat(Paths.get("target/test-classes/unit/project_many_jsp_initializer/target/web.xml")).doesNotExist();
+  }
+
+  @Test
+  public void should_restore_the_jsps_from_the_cache_when_the_initializer_is_already_written() throws Exception {
+    // Given
+    File manyJspProjectInitializer = new File("target/test-classes/unit/project_many_jsp_initializer");
+    FileUtils.deleteDirectory(new File(manyJspProjectInitializer, "target"));
+    File cacheDirectory = new File(manyJspProjectInitializer, "target/jspc-cache");
+    executeWithCache(manyJspProjectInitializer, cacheDirectory);
+    FileUtils.deleteDirectory(new File(manyJspProjectInitializer, "target/classes/jsp"));
+    infos.clear();
+
+    // When
+    executeWithCache(manyJspProjectInitializer, cacheDirectory);
+
+    // Then
+    assertThat(infos).contains("Number of jsps restored from cache : 5");
+  }
+
+  @Test
+  public void should_register_servlets_not_declared_by_web_xml_when_initializer_starts() throws Exception {
+    // Given
+    Path classes = Files.createTempDirectory("initializer");
+    Path table = classes.resolve(PrecompiledJspInitializer.SERVLETS_TABLE);
+    Files.createDirectories(table.getParent());
+    Files.write(table, Arrays.asList("jsp._01_jsp\t/01.jsp", "jsp._02_jsp\t/02.jsp"), StandardCharsets.UTF_8);
+    Map<String, List<String>> mappings = new LinkedHashMap<>();
+    ServletContext context = newServletContext(new URLClassLoader(new URL[] { classes.toUri().toURL() }), mappings);
+
+    // When
+    new PrecompiledJspInitializer().onStartup(Collections.emptySet(), context);
+
+    // Then
+    assertThat(mappings).containsOnlyKeys("jsp._02_jsp");
+    assertThat(mappings.get("jsp._02_jsp")).containsExactly("/02.jsp");
+  }
+
+  private void executeWithCache(File project, File cacheDirectory) throws Exception {
+    Mojo mojo = rule.lookupConfiguredMojo(project, "compile");
+    rule.setVariableValueToObject(mojo, "cacheDirectory", cacheDirectory);
+    mojo.setLog(new SystemStreamLog() {
+      @Override
+      public void info(CharSequence content) {
+        infos.add(content.toString());
+        super.info(content);
+      }
+    });
+    mojo.execute();
+  }
+
+  /**
+   * @return a context where jsp._01_jsp is already declared by the web.xml
+   */
+  private static ServletContext newServletContext(ClassLoader loader, Map<String, List<String>> mappings) {
+    return (ServletContext) Proxy.newProxyInstance(ServletContext.class.getClassLoader(),
+        new Class<?>[] { ServletContext.class }, (proxy, method, args) -> {
+          if (method.getName().equals("getClassLoader")) {
+            return loader;
+          }
+          if (method.getName().equals("addServlet") && !args[0].equals("jsp._01_jsp")) {
+            List<String> servletMappings = new ArrayList<>();
+            mappings.put((String) args[0], servletMappings);
+            return Proxy.newProxyInstance(ServletContext.class.getClassLoader(),
+                new Class<?>[] { ServletRegistration.Dynamic.class }, (registration, registrationMethod, patterns) -> {
+                  servletMappings.addAll(Arrays.asList((String[]) patterns[0]));
+                  return Collections.emptySet();
+                });
+          }
+          return null;
+        });
+  }
+}
@@ -6,6 +6,7 @@ import java.io.File;
 import java.nio.file.*;
 
 import org.apache.maven.plugin.testing.MojoRule;
+import org.codehaus.plexus.util.FileUtils;
 import org.junit.*;
 
 /**
@@ -13,6 +14,8 @@ import org.junit.*;
  */
 public class TestJspcMojoWithDifferentCompiler {
 
+  private final static int JAVA_17_BYTECODE_VERSION = 61;
+
   @Rule
   public MojoRule rule = new MojoRule();
 
@@ -36,4 +39,53 @@ public class TestJspcMojoWithDifferentCompiler {
     assertThat(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp_ParallelJDTCompiler/target/classes/jsp/jsp/_04_jsp.class")))
       .isEqualTo(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp/target/classes/jsp/jsp/_04_jsp.class")));
   }
+
+  @Test
+  public void should_write_the_times_of_each_phase_when_executeMojo_on_project_many_jsp_ParallelJDTCompiler() throws Exception {
+    // Given
+    File manyJspProjectCompilerParallel = new File("target/test-classes/unit/project_many_jsp_ParallelJDTCompiler");
+    FileUtils.deleteDirectory(new File(manyJspProjectCompilerParallel, "target"));
+
+    // When
+    rule.executeMojo(manyJspProjectCompilerParallel, "compile");
+
+    // Then
+    String json = new String(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp_ParallelJDTCompiler/target/jspc-timings.json")));
+    assertThat(json).containsPattern("\\{\"jsp\": \"/jsp/01.jsp\", [^{]*\"phasesMillis\": \\{\"parse\": [0-9.]+, "
+      + "\"generate\": [0-9.]+, \"compile\": [0-9.]+, \"write\": [0-9.]+\\}, \"allocatedBytes\": [0-9]+, "
+      + "\"phasesAllocatedBytes\": \\{\"parse\": [0-9]+, \"generate\": [0-9]+, \"compile\": [0-9]+, \"write\": [0-9]+\\}\\}");
+    assertThat(Files.readAllLines(Paths.get("target/test-classes/unit/project_many_jsp_ParallelJDTCompiler/target/jspc-timings.csv")))
+      .first().isEqualTo("jsp,thread,failed,queueWaitMillis,totalMillis,parseMillis,generateMillis,compileMillis,writeMillis,smapMillis,"
+        + "allocatedBytes,parseAllocatedBytes,generateAllocatedBytes,compileAllocatedBytes,writeAllocatedBytes,smapAllocatedBytes");
+  }
+
+  @Test
+  public void should_compile_from_the_java_files_when_executeMojo_on_project_many_jsp_ParallelJDTCompiler_keepSources() throws Exception {
+    // Given
+    File manyJspProject = new File("target/test-classes/unit/project_many_jsp");
+    File keepSourcesProject = new File("target/test-classes/unit/project_many_jsp_ParallelJDTCompiler_keepSources");
+
+    // When
+    rule.executeMojo(manyJspProject, "compile");
+    rule.executeMojo(keepSourcesProject, "compile");
+
+    // Then
+    assertThat(Paths.get("target/test-classes/unit/project_many_jsp_ParallelJDTCompiler_keepSources/target/classes/jsp/jsp/_01_jsp.java")).exists();
+    assertThat(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp_ParallelJDTCompiler_keepSources/target/classes/jsp/jsp/_01_jsp.class")))
+      .isEqualTo(Files.readAllBytes(Paths.get("target/test-classes/unit/project_many_jsp/target/classes/jsp/jsp/_01_jsp.class")));
+  }
+
+  @Test
+  public void should_return_one_compiled_jsp_in_bytecode_java17_when_executeMojo_on_project_one_jsp_compilerVersion_17_ParallelJDTCompiler() throws Exception {
+    // Given
+    File oneJspProject = new File("target/test-classes/unit/project_one_jsp_compilerVersion_17_ParallelJDTCompiler");
+
+    // When
+    rule.executeMojo(oneJspProject, "compile");
+
+    // Then
+    Path indexJspPath = Paths.get("target/test-classes/unit/project_one_jsp_compilerVersion_17_ParallelJDTCompiler/target/classes/jsp/jsp/index_jsp.class");
+    int[] byteCodeVersion = JspcMojoTestUtils.getClassVersion(indexJspPath);
+    assertThat(byteCodeVersion[0]).isEqualTo(JAVA_17_BYTECODE_VERSION);
+  }
 }
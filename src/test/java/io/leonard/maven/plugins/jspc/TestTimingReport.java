@@ -0,0 +1,108 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class TestTimingReport {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private TimingReport report;
+
+  private byte[] allocated;
+
+  @Before
+  public void processJsps() {
+    report = new TimingReport(3, 2);
+    JspTimings slow = report.jspTaken("/slow.jsp", 1);
+    slow.addPhase(CompilePhase.GENERATE, 2_000_000);
+    slow.addPhase(CompilePhase.COMPILE, 5_000_000);
+    slow.addPhase(CompilePhase.COMPILE, 1_000_000);
+    slow.addPhaseAllocatedBytes(CompilePhase.COMPILE, 3 * 1024 * 1024);
+    allocated = new byte[4 * 1024 * 1024];
+    report.jspProcessed(slow, 9_000_000, false);
+    JspTimings fast = report.jspTaken("/fast.jsp", 2);
+    report.jspProcessed(fast, 1_000_000, false);
+    JspTimings failed = report.jspTaken("/with,comma.jsp", 2);
+    report.jspProcessed(failed, 3_000_000, true);
+    report.finish();
+  }
+
+  @Test
+  public void should_list_the_slowest_jsps_first() {
+    // When
+    List<JspTimings> slowest = report.getSlowest(2);
+
+    // Then
+    assertThat(slowest).extracting(JspTimings::getJspUri).containsExactly("/slow.jsp", "/with,comma.jsp");
+    assertThat(slowest.get(0).getPhase(CompilePhase.COMPILE)).isEqualTo(6_000_000);
+    assertThat(slowest.get(0).getPhase(CompilePhase.PARSE)).isEqualTo(-1);
+  }
+
+  @Test
+  public void should_summarize_the_time_of_each_thread() {
+    // When
+    List<String> summary = report.getSummary(1);
+
+    // Then
+    assertThat(summary).anyMatch(line -> line.startsWith("Thread 1: 1 jsps, busy 9ms, idle "))
+        .anyMatch(line -> line.startsWith("Thread 2: 2 jsps, busy 4ms, idle "));
+    assertThat(summary).contains("Time by phase: generate=2ms compile=6ms",
+        "Slowest jsps:", "  /slow.jsp 9ms generate=2ms compile=6ms");
+  }
+
+  @Test
+  public void should_count_the_bytes_allocated_for_each_jsp() {
+    // When
+    List<JspTimings> mostAllocating = report.getMostAllocating(1);
+
+    // Then
+    assertThat(mostAllocating).extracting(JspTimings::getJspUri).containsExactly("/slow.jsp");
+    assertThat(mostAllocating.get(0).getAllocatedBytes()).isGreaterThanOrEqualTo(allocated.length);
+    assertThat(mostAllocating.get(0).getPhaseAllocatedBytes(CompilePhase.COMPILE)).isEqualTo(3 * 1024 * 1024);
+    assertThat(report.getSummary(1))
+        .anyMatch(line -> line.matches("Thread 1: 1 jsps, busy 9ms, idle -?[0-9]+ms, [4-9]\\.[0-9]MB allocated"))
+        .contains("Allocations by phase: compile=3.0MB", "Most allocating jsps:");
+  }
+
+  @Test
+  public void should_write_the_times_of_each_jsp_as_csv() throws Exception {
+    // Given
+    File csv = new File(folder.getRoot(), "timings.csv");
+
+    // When
+    report.writeCsv(csv);
+
+    // Then
+    List<String> lines = Files.readAllLines(csv.toPath());
+    assertThat(lines).hasSize(4);
+    assertThat(lines.get(0)).endsWith(",smapMillis,allocatedBytes,parseAllocatedBytes,generateAllocatedBytes,"
+        + "compileAllocatedBytes,writeAllocatedBytes,smapAllocatedBytes");
+    assertThat(lines.get(1)).startsWith("/slow.jsp,1,false,").contains(",9.000,,2.000,6.000,,,")
+        .endsWith(",,," + (3 * 1024 * 1024) + ",,");
+    assertThat(lines.get(3)).startsWith("\"/with,comma.jsp\",2,true,");
+  }
+
+  @Test
+  public void should_write_the_report_as_json() throws Exception {
+    // Given
+    File json = new File(folder.getRoot(), "timings.json");
+
+    // When
+    report.writeJson(json, 1);
+
+    // Then
+    String content = new String(Files.readAllBytes(json.toPath()));
+    assertThat(content).contains("\"jsps\": 3,", "\"threads\": 2,", "\"slowest\": [\"/slow.jsp\"]",
+        "\"phasesMillis\": {\"parse\": 0.000, \"generate\": 2.000, \"compile\": 6.000, \"write\": 0.000, \"smap\": 0.000}",
+        "\"phasesMillis\": {\"generate\": 2.000, \"compile\": 6.000}, \"allocatedBytes\": ",
+        "\"phasesAllocatedBytes\": {\"compile\": 3145728}}", "\"mostAllocating\": [\"/slow.jsp\"]");
+  }
+}
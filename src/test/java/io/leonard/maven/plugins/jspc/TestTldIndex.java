@@ -0,0 +1,89 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+import org.apache.taglibs.standard.tag.common.core.CatchTag;
+import org.apache.tomcat.util.descriptor.tld.TaglibXml;
+import org.apache.tomcat.util.descriptor.tld.TldParser;
+import org.apache.tomcat.util.descriptor.tld.TldResourcePath;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class TestTldIndex {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File jar;
+
+  private Map<String, TaglibXml> tlds;
+
+  @Before
+  public void parseJstlTlds() throws Exception {
+    jar = folder.newFile("jstl.jar");
+    Files.copy(new File(CatchTag.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toPath(),
+        jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    List<String> entryNames;
+    try (JarFile jarFile = new JarFile(jar)) {
+      entryNames = jarFile.stream().map(entry -> entry.getName())
+          .filter(name -> name.startsWith("META-INF/") && name.endsWith(".tld")).collect(Collectors.toList());
+    }
+    TldParser parser = new TldParser(true, false, true);
+    tlds = new LinkedHashMap<>();
+    for (String entryName : entryNames) {
+      tlds.put(entryName, parser.parse(new TldResourcePath(jar.toURI().toURL(), null, entryName)));
+    }
+  }
+
+  @Test
+  public void should_read_the_tlds_saved_by_the_previous_build() throws Exception {
+    // Given
+    File indexFile = new File(folder.getRoot(), "tld-index.txt");
+    TldIndex previousIndex = TldIndex.load(indexFile);
+    tlds.forEach((entryName, tld) -> previousIndex.put(jar, entryName, tld));
+    previousIndex.save(indexFile);
+
+    // When
+    TldIndex index = TldIndex.load(indexFile);
+
+    // Then
+    assertThat(tlds).isNotEmpty();
+    for (Map.Entry<String, TaglibXml> tld : tlds.entrySet()) {
+      assertThat(index.get(jar, tld.getKey())).usingRecursiveComparison().isEqualTo(tld.getValue());
+    }
+    assertThat(index.getHits()).isEqualTo(tlds.size());
+    assertThat(index.getMisses()).isZero();
+  }
+
+  @Test
+  public void should_parse_again_the_tlds_of_a_changed_jar() throws Exception {
+    // Given
+    File indexFile = new File(folder.getRoot(), "tld-index.txt");
+    TldIndex previousIndex = TldIndex.load(indexFile);
+    tlds.forEach((entryName, tld) -> previousIndex.put(jar, entryName, tld));
+    previousIndex.save(indexFile);
+
+    // When
+    assertThat(jar.setLastModified(jar.lastModified() - 60_000)).isTrue();
+    TldIndex index = TldIndex.load(indexFile);
+
+    // Then
+    assertThat(index.get(jar, tlds.keySet().iterator().next())).isNull();
+    assertThat(index.getMisses()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_escape_the_values() {
+    for (String value : Arrays.asList(null, "", "a\tb", "line 1\r\nline 2", "\\", "\\0", "\\t")) {
+      assertThat(TldIndex.unescape(TldIndex.escape(value))).isEqualTo(value);
+      assertThat(TldIndex.escape(value)).doesNotContain("\t", "\n", "\r");
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package io.leonard.maven.plugins.jspc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import org.xml.sax.SAXException;
+
+public class TestWebXmlValidator {
+
+  private static final String WEB_APP_3_1 = "http://xmlns.jcp.org/xml/ns/javaee/web-app_3_1.xsd";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void should_compile_the_bundled_schema_once() throws Exception {
+    assertThat(WebXmlValidator.getSchema(WEB_APP_3_1)).isSameAs(WebXmlValidator.getSchema(WEB_APP_3_1));
+  }
+
+  @Test
+  public void should_validate_web_xml_against_the_bundled_schema() throws Exception {
+    File webXml = write("<web-app xmlns=\"http://xmlns.jcp.org/xml/ns/javaee\" version=\"3.1\">\n"
+        + "  <servlet><servlet-name>a</servlet-name><servlet-class>A</servlet-class></servlet>\n" + "</web-app>");
+
+    WebXmlValidator.validate(webXml, WEB_APP_3_1);
+  }
+
+  @Test
+  public void should_report_invalid_web_xml() throws Exception {
+    File webXml = write("<web-app xmlns=\"http://xmlns.jcp.org/xml/ns/javaee\" version=\"3.1\">\n"
+        + "  <servlet><servlet-class>A</servlet-class></servlet>\n" + "</web-app>");
+
+    assertThatThrownBy(() -> WebXmlValidator.validate(webXml, WEB_APP_3_1)).isInstanceOf(SAXException.class);
+  }
+
+  @Test
+  public void should_read_the_bundled_dtd_of_web_xml() throws Exception {
+    File webXml = write("<!DOCTYPE web-app PUBLIC \"-//Sun Microsystems, Inc.//DTD Web Application 2.3//EN\" "
+        + "\"http://unknown.invalid/web-app_2_3.dtd\">\n<web-app>\n</web-app>");
+
+    WebXmlValidator.checkWellFormed(webXml);
+  }
+
+  private File write(String content) throws Exception {
+    File webXml = folder.newFile("web.xml");
+    Files.write(webXml.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return webXml;
+  }
+}
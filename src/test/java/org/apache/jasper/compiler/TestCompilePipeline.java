@@ -0,0 +1,80 @@
+package org.apache.jasper.compiler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.jasper.JasperException;
+import org.apache.jasper.JspC;
+import org.apache.jasper.JspCompilationContext;
+import org.apache.jasper.servlet.JspCServletContext;
+import org.apache.juli.logging.*;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCompilePipeline {
+
+  private final Log log = LogFactory.getLog(TestCompilePipeline.class);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private JspCompilationContext ctxt;
+
+  @Before
+  public void createContext() throws Exception {
+    File webapp = folder.newFolder("webapp");
+    Files.write(new File(webapp, "index.jsp").toPath(), "Hello".getBytes());
+    JspC options = new JspC();
+    options.setOutputDir(folder.newFolder("classes").getPath());
+    JspCServletContext context = new JspCServletContext(new PrintWriter(new StringWriter()), webapp.toURI().toURL(),
+        getClass().getClassLoader(), false, false);
+    ctxt = new JspCompilationContext("/index.jsp", options, context, null, new JspRuntimeContext(context, options));
+  }
+
+  @Test(timeout = 10000)
+  public void should_refuse_the_servlets_and_report_the_error_when_a_compiler_thread_fails() throws Exception {
+    // Given
+    CompilePipeline pipeline = new CompilePipeline(null, 1, 1) {
+      @Override
+      protected void compile(List<GeneratedServlet> compiledServlets) {
+        throw new OutOfMemoryError("no more memory");
+      }
+    };
+    pipeline.start();
+
+    // When
+    assertThatThrownBy(() -> {
+      for (int i = 0; i < 100; i++) {
+        pipeline.add(newServlet("org.apache.jsp.index" + i + "_jsp"));
+      }
+    }).isInstanceOf(JasperException.class).hasCauseInstanceOf(OutOfMemoryError.class);
+    List<String> errors = pipeline.compile();
+
+    // Then
+    assertThat(errors).anySatisfy(error -> assertThat(error).contains("no more memory"));
+  }
+
+  @Test(timeout = 10000)
+  public void should_stop_the_threads_when_shutdown_before_the_end() throws Exception {
+    // Given
+    CompilePipeline pipeline = new CompilePipeline(null, 2, 1);
+    pipeline.start();
+
+    // When
+    pipeline.shutdown();
+
+    // Then
+    while (Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().startsWith("jspc-"))) {
+      Thread.sleep(10);
+    }
+  }
+
+  private BatchCompilation.GeneratedServlet newServlet(String className) {
+    return new BatchCompilation.GeneratedServlet(ctxt, className, null, null, null, true,
+        "class Servlet {}".toCharArray(), null, log);
+  }
+}
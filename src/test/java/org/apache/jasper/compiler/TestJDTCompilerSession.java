@@ -0,0 +1,114 @@
+package org.apache.jasper.compiler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.*;
+
+import io.leonard.maven.plugins.jspc.ClassFileCache;
+import org.apache.jasper.JspC;
+import org.apache.juli.logging.*;
+import org.eclipse.jdt.core.compiler.CharOperation;
+import org.eclipse.jdt.internal.compiler.CompilationResult;
+import org.eclipse.jdt.internal.compiler.env.*;
+import org.junit.Test;
+
+public class TestJDTCompilerSession {
+
+  private final Log log = LogFactory.getLog(TestJDTCompilerSession.class);
+
+  private final JDTCompilerSession session = new JDTCompilerSession(new JDTCompilerConfiguration(new JspC(), log));
+
+  private final List<CompilationResult> results = new ArrayList<>();
+
+  private final Set<String> foundTypes = new HashSet<>();
+
+  @Test
+  public void should_keep_bindings_between_compilations() {
+    compile("A", "java.util.List<String> a = new java.util.ArrayList<>();", true);
+    compile("B", "java.util.List<String> b = new java.util.LinkedList<>();", true);
+
+    assertThat(results).hasSize(2).noneMatch(CompilationResult::hasErrors);
+    assertThat(results).allMatch(result -> result.getClassFiles().length == 1);
+    assertThat(session.getCompilations()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_not_look_up_known_types_again() {
+    compile("A", "java.util.List<String> a;", true);
+    assertThat(foundTypes).contains("java.util.List", "java.lang.String", "java.lang.Object");
+    foundTypes.clear();
+
+    compile("B", "java.util.List<String> b;", true);
+
+    assertThat(results).noneMatch(CompilationResult::hasErrors);
+    assertThat(foundTypes).doesNotContain("java.util.List", "java.lang.String", "java.lang.Object");
+  }
+
+  @Test
+  public void should_reset_when_bindings_must_not_be_kept() {
+    compile("A", "java.util.List<String> a;", true);
+    compile("Tag", "java.util.List<String> tag;", false);
+
+    assertThat(results).noneMatch(CompilationResult::hasErrors);
+    assertThat(session.getCompilations()).isZero();
+  }
+
+  @Test
+  public void should_report_errors_once_and_reset() {
+    compile("A", "java.util.List<String> a;", true);
+    compile("B", "java.util.List<String> b = 1;", true);
+    compile("C", "java.util.List<String> c;", true);
+
+    assertThat(results).hasSize(3);
+    assertThat(results.get(1).hasErrors()).isTrue();
+    assertThat(results.get(2).hasErrors()).isFalse();
+    assertThat(session.getCompilations()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_reset_after_max_compilations() {
+    for (int i = 0; i < JDTCompilerSession.MAX_COMPILATIONS; i++) {
+      compile("A" + i, "java.util.List<String> a;", true);
+    }
+
+    assertThat(results).hasSize(JDTCompilerSession.MAX_COMPILATIONS).noneMatch(CompilationResult::hasErrors);
+    assertThat(session.getCompilations()).isZero();
+  }
+
+  private void compile(String className, String field, boolean keepBindings) {
+    String targetClassName = "jsp." + className;
+    char[] source = ("package jsp; public class " + className + " { " + field + " }").toCharArray();
+    ICompilationUnit unit = new ParallelJDTCompiler.JspCompilationUnit(className + ".java", targetClassName,
+        "UTF-8", source, log);
+    INameEnvironment env = new ParallelJDTCompiler.JspNameEnvironment(Collections.singletonMap(targetClassName, unit),
+        getClass().getClassLoader(), new ClassFileCache(0, Collections.emptyList()), log);
+    session.compile(unit, recordFoundTypes(env), results::add, keepBindings);
+  }
+
+  private INameEnvironment recordFoundTypes(INameEnvironment env) {
+    return new INameEnvironment() {
+
+      @Override
+      public NameEnvironmentAnswer findType(char[][] compoundTypeName) {
+        foundTypes.add(CharOperation.toString(compoundTypeName));
+        return env.findType(compoundTypeName);
+      }
+
+      @Override
+      public NameEnvironmentAnswer findType(char[] typeName, char[][] packageName) {
+        foundTypes.add(CharOperation.toString(CharOperation.arrayConcat(packageName, typeName)));
+        return env.findType(typeName, packageName);
+      }
+
+      @Override
+      public boolean isPackage(char[][] parentPackageName, char[] packageName) {
+        return env.isPackage(parentPackageName, packageName);
+      }
+
+      @Override
+      public void cleanup() {
+        env.cleanup();
+      }
+    };
+  }
+}
@@ -0,0 +1,11 @@
+<html>
+
+  <%
+    int count = "not a number";
+  %>
+
+	<body>
+		Count <%=count %>
+	</body>
+
+</html>
@@ -0,0 +1,15 @@
+<%--
+  This jsp does not compile. It is larger than the other jsps so that it is
+  the first one taken from the queue, since it is estimated as the most costly.
+--%>
+<html>
+
+  <%
+    int count = "not a number";
+  %>
+
+	<body>
+		Count <%=count %>
+	</body>
+
+</html>
@@ -0,0 +1,12 @@
+<html>
+
+  <%
+    String hello = "world";
+  %>
+	
+	<body>
+		Hello <%=hello %>
+	</body>  
+
+</html>
+